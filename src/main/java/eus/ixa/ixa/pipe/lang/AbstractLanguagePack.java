@@ -0,0 +1,58 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Language pack with the default behaviour: non breakers read from the
+ * lang-nonbreaker.txt file in resources, no contraction rules of its own,
+ * ASCII quotes and no specific normalization.
+ */
+public abstract class AbstractLanguagePack implements LanguagePack {
+
+  private final String language;
+
+  /**
+   * Construct a language pack.
+   * @param language the language code
+   */
+  protected AbstractLanguagePack(final String language) {
+    this.language = language;
+  }
+
+  public String getLanguage() {
+    return language;
+  }
+
+  public InputStream getNonBreakerInputStream() {
+    return getClass().getResourceAsStream("/" + language + "-nonbreaker.txt");
+  }
+
+  public Map<String, String> getContractionRules() {
+    return Collections.emptyMap();
+  }
+
+  public QuoteConvention getQuoteConvention() {
+    return QuoteConvention.ASCII;
+  }
+
+  public Map<Character, String> getNormalizationTable() {
+    return Collections.emptyMap();
+  }
+
+}
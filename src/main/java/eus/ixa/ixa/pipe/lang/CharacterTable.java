@@ -0,0 +1,89 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable table replacing characters by strings in one pass. The
+ * characters are kept sorted for binary search.
+ */
+public final class CharacterTable {
+
+  private final char[] chars;
+  private final String[] replacements;
+
+  /**
+   * Compile a table.
+   * @param table the characters and their replacements
+   */
+  public CharacterTable(final Map<Character, String> table) {
+    chars = new char[table.size()];
+    int i = 0;
+    for (final Character c : table.keySet()) {
+      chars[i++] = c;
+    }
+    Arrays.sort(chars);
+    replacements = new String[chars.length];
+    for (i = 0; i < chars.length; i++) {
+      replacements[i] = table.get(chars[i]);
+    }
+  }
+
+  /**
+   * Construct a table from its sorted characters, as stored by
+   * {@link LanguagePackSnapshot}.
+   * @param chars the sorted characters
+   * @param replacements the replacement of each character
+   */
+  CharacterTable(final char[] chars, final String[] replacements) {
+    this.chars = chars;
+    this.replacements = replacements;
+  }
+
+  char[] getChars() {
+    return chars;
+  }
+
+  String[] getReplacements() {
+    return replacements;
+  }
+
+  /**
+   * Replace the characters of a string found in the table.
+   * @param string the string
+   * @return the string with the replacements, the same string if none
+   */
+  public String apply(final String string) {
+    StringBuilder sb = null;
+    int copied = 0;
+    for (int i = 0; i < string.length(); i++) {
+      final int index = Arrays.binarySearch(chars, string.charAt(i));
+      if (index >= 0) {
+        if (sb == null) {
+          sb = new StringBuilder(string.length() + 8);
+        }
+        sb.append(string, copied, i).append(replacements[index]);
+        copied = i + 1;
+      }
+    }
+    if (sb == null) {
+      return string;
+    }
+    return sb.append(string, copied, string.length()).toString();
+  }
+
+}
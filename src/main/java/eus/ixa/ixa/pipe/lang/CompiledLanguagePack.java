@@ -0,0 +1,284 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import eus.ixa.ixa.pipe.tok.Normalizer;
+import eus.ixa.ixa.pipe.tok.StringUtils;
+
+/**
+ * A language pack compiled into the structures used by the segmenter, the
+ * tokenizer and the normalizer. Instances are immutable and shared by every
+ * document of the same language.
+ */
+public final class CompiledLanguagePack {
+
+  private final String language;
+  /**
+   * The class of the pack this was compiled from.
+   */
+  private final String packClassName;
+  /**
+   * Non breakers which are plain words.
+   */
+  private final Set<String> nonBreakerWords;
+  /**
+   * Non breakers which are regular expressions, null if there are none.
+   */
+  private final String nonBreakerRegex;
+  private final Pattern nonBreakerPattern;
+  private final Pattern[] contractionPatterns;
+  private final String[] contractionReplacements;
+  private final boolean pennTreebankQuotes;
+  private final CharacterTable characters;
+  private final CharacterTable quotes;
+
+  /**
+   * Compile a language pack reading its non breakers file.
+   * @param pack the language pack
+   */
+  CompiledLanguagePack(final LanguagePack pack) {
+    this(pack, splitNonBreakers(StringUtils
+        .createDisjunctRegexFromList(readNonBreakers(pack))),
+        getCharacterTable(pack), getQuoteTable(pack));
+  }
+
+  /**
+   * Compile a language pack from its already compiled non breakers and
+   * tables.
+   * @param pack the language pack
+   * @param nonBreakers the non breaker words and the regular expression of the
+   *          rest of non breakers, maybe null
+   * @param characters the character normalization table
+   * @param quotes the quote normalization table
+   */
+  CompiledLanguagePack(final LanguagePack pack,
+      final Map.Entry<Set<String>, String> nonBreakers,
+      final CharacterTable characters, final CharacterTable quotes) {
+    language = pack.getLanguage();
+    packClassName = pack.getClass().getName();
+    nonBreakerWords = nonBreakers.getKey();
+    nonBreakerRegex = nonBreakers.getValue();
+    nonBreakerPattern = nonBreakerRegex == null ? null : Pattern
+        .compile(nonBreakerRegex);
+    final Map<String, String> rules = pack.getContractionRules();
+    contractionPatterns = new Pattern[rules.size()];
+    contractionReplacements = new String[rules.size()];
+    int i = 0;
+    for (final Map.Entry<String, String> rule : rules.entrySet()) {
+      contractionPatterns[i] = Pattern.compile(rule.getKey(),
+          Pattern.UNICODE_CHARACTER_CLASS);
+      contractionReplacements[i++] = rule.getValue();
+    }
+    pennTreebankQuotes = pack.getQuoteConvention() == LanguagePack.QuoteConvention.PENN_TREEBANK;
+    this.characters = characters;
+    this.quotes = quotes;
+  }
+
+  static CharacterTable getCharacterTable(final LanguagePack pack) {
+    final Map<Character, String> characterTable = new HashMap<Character, String>(
+        Normalizer.getCharacterNormalization());
+    characterTable.putAll(pack.getNormalizationTable());
+    return new CharacterTable(characterTable);
+  }
+
+  static CharacterTable getQuoteTable(final LanguagePack pack) {
+    return new CharacterTable(Normalizer.getQuoteNormalization(pack
+        .getQuoteConvention()));
+  }
+
+  static List<String> readNonBreakers(final LanguagePack pack) {
+    final List<String> nonBreakerList = new ArrayList<String>();
+    final InputStream nonBreakerInputStream = pack.getNonBreakerInputStream();
+    if (nonBreakerInputStream == null) {
+      System.err.println("ERROR: Not nonbreaker file for language "
+          + pack.getLanguage() + " in src/main/resources!!");
+      System.exit(1);
+    }
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        nonBreakerInputStream));
+    String line;
+    try {
+      while ((line = breader.readLine()) != null) {
+        line = line.trim();
+        if (!line.startsWith("#")) {
+          nonBreakerList.add(line);
+        }
+      }
+      breader.close();
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+    return nonBreakerList;
+  }
+
+  /**
+   * Split the alternatives of the non breakers regular expression into plain
+   * words, looked up in a set, and a regular expression with the rest.
+   * @param regex the disjunction of non breakers
+   * @return the words and the regular expression, null if every alternative
+   *         is a plain word
+   */
+  static Map.Entry<Set<String>, String> splitNonBreakers(final String regex) {
+    final Set<String> words = new HashSet<String>();
+    final StringBuilder rest = new StringBuilder();
+    int depth = 0;
+    boolean inClass = false;
+    int start = 0;
+    for (int i = 0; i <= regex.length(); i++) {
+      final char c = i < regex.length() ? regex.charAt(i) : '|';
+      if (c == '\\') {
+        i++;
+      } else if (inClass) {
+        inClass = c != ']';
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|' && depth == 0) {
+        final String alternative = regex.substring(start, i);
+        final String word = toWord(alternative);
+        if (word != null) {
+          words.add(word);
+        } else {
+          rest.append(rest.length() == 0 ? "(" : "|").append(alternative);
+        }
+        start = i + 1;
+      }
+    }
+    return new AbstractMap.SimpleImmutableEntry<Set<String>, String>(words,
+        rest.length() == 0 ? null : rest.append(')').toString());
+  }
+
+  /**
+   * Get the word matched by a regular expression without metacharacters.
+   * @param alternative the regular expression
+   * @return the word or null if the expression is not a plain word
+   */
+  private static String toWord(final String alternative) {
+    final StringBuilder word = new StringBuilder(alternative.length());
+    for (int i = 0; i < alternative.length(); i++) {
+      final char c = alternative.charAt(i);
+      if (c == '\\') {
+        if (i + 1 < alternative.length() && alternative.charAt(i + 1) == '.') {
+          word.append('.');
+          i++;
+        } else {
+          return null;
+        }
+      } else if ("[](){}?*+^$.|".indexOf(c) != -1) {
+        return null;
+      } else {
+        word.append(c);
+      }
+    }
+    return word.toString();
+  }
+
+  /**
+   * Get the language code.
+   * @return the language
+   */
+  public String getLanguage() {
+    return language;
+  }
+
+  /**
+   * Check whether a word (without its final period) is a non breaking prefix.
+   * @param word the word
+   * @return true if the word is a non breaker
+   */
+  public boolean isNonBreaker(final String word) {
+    return nonBreakerWords.contains(word) || nonBreakerPattern != null
+        && nonBreakerPattern.matcher(word).matches();
+  }
+
+  String getPackClassName() {
+    return packClassName;
+  }
+
+  Set<String> getNonBreakerWords() {
+    return nonBreakerWords;
+  }
+
+  String getNonBreakerRegex() {
+    return nonBreakerRegex;
+  }
+
+  CharacterTable getCharacterTable() {
+    return characters;
+  }
+
+  CharacterTable getQuoteTable() {
+    return quotes;
+  }
+
+  /**
+   * Get the contraction rules of the language.
+   * @return the patterns, in order of application
+   */
+  public Pattern[] getContractionPatterns() {
+    return contractionPatterns.clone();
+  }
+
+  /**
+   * Get the replacements of the contraction rules.
+   * @return the replacements, in the order of the patterns
+   */
+  public String[] getContractionReplacements() {
+    return contractionReplacements.clone();
+  }
+
+  /**
+   * Whether the language follows the Penn TreeBank quote convention.
+   * @return true if directional quotes are used
+   */
+  public boolean isPennTreebankQuotes() {
+    return pennTreebankQuotes;
+  }
+
+  /**
+   * Normalize the non canonical characters of a token.
+   * @param token the token
+   * @return the normalized token
+   */
+  public String normalizeCharacters(final String token) {
+    return characters.apply(token);
+  }
+
+  /**
+   * Normalize the non ambiguous quotes of a token.
+   * @param token the token
+   * @return the normalized token
+   */
+  public String normalizeQuotes(final String token) {
+    return quotes.apply(token);
+  }
+
+}
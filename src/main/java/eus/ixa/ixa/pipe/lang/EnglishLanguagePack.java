@@ -0,0 +1,58 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import eus.ixa.ixa.pipe.tok.Normalizer;
+
+/**
+ * English language pack: negative contractions, Penn TreeBank quotes and
+ * escaped fractions.
+ */
+public class EnglishLanguagePack extends AbstractLanguagePack {
+
+  public EnglishLanguagePack() {
+    super("en");
+  }
+
+  @Override
+  public Map<String, String> getContractionRules() {
+    final Map<String, String> rules = new LinkedHashMap<String, String>();
+    // split negative contractions: don't -> do n't
+    rules.put("(\\p{Alpha})(n" + Normalizer.TO_ASCII_SINGLE_QUOTE + ")([t])",
+        "$1 $2$3");
+    return rules;
+  }
+
+  @Override
+  public QuoteConvention getQuoteConvention() {
+    return QuoteConvention.PENN_TREEBANK;
+  }
+
+  @Override
+  public Map<Character, String> getNormalizationTable() {
+    final Map<Character, String> table = new HashMap<Character, String>();
+    table.put('\u00BC', "1\\/4");
+    table.put('\u2153', "1\\/3");
+    table.put('\u00BD', "1\\/2");
+    table.put('\u00BE', "3\\/4");
+    table.put('\u00A3', "#");
+    return table;
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Service provider interface bundling the language dependent resources and
+ * rules of ixa-pipe-tok. Implementations are discovered with the
+ * {@link java.util.ServiceLoader}, so a language is added by listing its pack
+ * in {@code META-INF/services/eus.ixa.ixa.pipe.lang.LanguagePack}. Every pack
+ * is compiled once by {@link LanguagePacks}.
+ */
+public interface LanguagePack {
+
+  /**
+   * Quote conventions for normalization.
+   */
+  public enum QuoteConvention {
+    /**
+     * Directional quotes as in the Penn TreeBank: `` '' ` '.
+     */
+    PENN_TREEBANK,
+    /**
+     * Every quote is converted to its ASCII counterpart.
+     */
+    ASCII
+  }
+
+  /**
+   * Get the ISO 639-1 code of the language.
+   * @return the language code
+   */
+  public String getLanguage();
+
+  /**
+   * Get the non breaking prefixes, one per line, with lines starting with #
+   * as comments. A period after them does not end a sentence.
+   * @return the input stream of the non breakers
+   */
+  public InputStream getNonBreakerInputStream();
+
+  /**
+   * Get the contraction rules of the language, applied after the common
+   * apostrophe rules: regular expressions and their replacements.
+   * @return the contraction rules, in order of application
+   */
+  public Map<String, String> getContractionRules();
+
+  /**
+   * Get the quote convention of the language.
+   * @return the quote convention
+   */
+  public QuoteConvention getQuoteConvention();
+
+  /**
+   * Get the character normalization table of the language, which overrides
+   * the language independent normalization of the Normalizer.
+   * @return the characters and their normalized strings
+   */
+  public Map<Character, String> getNormalizationTable();
+
+}
@@ -0,0 +1,104 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Startup benchmark comparing the compilation of the language packs from
+ * their non breaker files with their decoding from the
+ * {@link LanguagePackSnapshot}. The first round is reported apart because it
+ * is the one paid by a freshly started JVM.
+ *
+ * Usage: java -cp ixa-pipe-tok.jar eus.ixa.ixa.pipe.lang.LanguagePackBenchmark
+ * [rounds]
+ */
+public final class LanguagePackBenchmark {
+
+  private LanguagePackBenchmark() {
+  }
+
+  public static void main(final String[] args) throws IOException {
+    final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    final List<LanguagePack> packs = new ArrayList<LanguagePack>();
+    for (final LanguagePack pack : ServiceLoader.load(LanguagePack.class)) {
+      packs.add(pack);
+    }
+    final InputStream snapshotStream = LanguagePackBenchmark.class
+        .getResourceAsStream(LanguagePackSnapshot.RESOURCE);
+    if (snapshotStream == null) {
+      System.err.println("ERROR: No " + LanguagePackSnapshot.RESOURCE
+          + " in the classpath, run mvn process-classes first!!");
+      System.exit(1);
+    }
+    final byte[] snapshotBytes = readFully(snapshotStream);
+
+    long textFirst = 0;
+    long snapshotFirst = 0;
+    long textTotal = 0;
+    long snapshotTotal = 0;
+    for (int round = 0; round <= rounds; round++) {
+      long start = System.nanoTime();
+      for (final LanguagePack pack : packs) {
+        new CompiledLanguagePack(pack);
+      }
+      final long text = System.nanoTime() - start;
+      start = System.nanoTime();
+      final LanguagePackSnapshot snapshot = LanguagePackSnapshot
+          .read(new ByteArrayInputStream(snapshotBytes));
+      for (final LanguagePack pack : packs) {
+        if (snapshot.compile(pack) == null) {
+          System.err.println("ERROR: Language " + pack.getLanguage()
+              + " not in the snapshot!!");
+          System.exit(1);
+        }
+      }
+      final long binary = System.nanoTime() - start;
+      if (round == 0) {
+        textFirst = text;
+        snapshotFirst = binary;
+      } else {
+        textTotal += text;
+        snapshotTotal += binary;
+      }
+    }
+    System.out.println("Languages: " + packs.size() + ", snapshot size: "
+        + snapshotBytes.length + " bytes");
+    System.out.printf("%-20s %12s %12s%n", "", "first (ms)", "average (ms)");
+    System.out.printf("%-20s %12.3f %12.3f%n", "non breaker files",
+        textFirst / 1e6, textTotal / 1e6 / Math.max(1, rounds));
+    System.out.printf("%-20s %12.3f %12.3f%n", "snapshot",
+        snapshotFirst / 1e6, snapshotTotal / 1e6 / Math.max(1, rounds));
+  }
+
+  private static byte[] readFully(final InputStream inputStream)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      bytes.write(buffer, 0, read);
+    }
+    inputStream.close();
+    return bytes.toByteArray();
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Binary snapshot of the compiled non breakers and character tables of the
+ * language packs, generated at build time and bundled in the jar as
+ * {@value #RESOURCE}. The snapshot is read once and each language is decoded
+ * the first time it is requested, which avoids parsing the non breaker files
+ * and building the disjunction of every prefix at startup.
+ *
+ * The format is a header (magic number, version and the pack class, offset
+ * and length of each language) followed by a block per language: the non
+ * breaker words, the regular expression of the remaining non breakers, the
+ * character table and the quote table. A block is only used for a pack of
+ * the class it was generated from, so a pack in the classpath replacing a
+ * bundled language is compiled from its own resources.
+ */
+public final class LanguagePackSnapshot {
+
+  /**
+   * The resource of the snapshot in the classpath.
+   */
+  public static final String RESOURCE = "/language-packs.bin";
+  private static final int MAGIC = 0x49584c50;
+  private static final int VERSION = 2;
+
+  private static LanguagePackSnapshot instance;
+  private static boolean loaded;
+
+  private final byte[] data;
+  private final Map<String, Block> index;
+
+  /**
+   * The block of a language in the snapshot.
+   */
+  private static class Block {
+    private final String packClassName;
+    private int offset;
+    private final int length;
+
+    Block(final String packClassName, final int offset, final int length) {
+      this.packClassName = packClassName;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  private LanguagePackSnapshot(final byte[] data, final Map<String, Block> index) {
+    this.data = data;
+    this.index = index;
+  }
+
+  /**
+   * Get the snapshot bundled in the classpath.
+   * @return the snapshot or null if there is none or it is not readable
+   */
+  static synchronized LanguagePackSnapshot getInstance() {
+    if (!loaded) {
+      loaded = true;
+      final InputStream snapshotStream = LanguagePackSnapshot.class
+          .getResourceAsStream(RESOURCE);
+      if (snapshotStream != null) {
+        try {
+          instance = read(snapshotStream);
+        } catch (final IOException e) {
+          System.err.println("WARNING: Could not read " + RESOURCE
+              + ", compiling the language packs: " + e.getMessage());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Read a snapshot, decoding only its header.
+   * @param snapshotStream the stream of the snapshot
+   * @return the snapshot
+   * @throws IOException if the snapshot is not valid
+   */
+  static LanguagePackSnapshot read(final InputStream snapshotStream)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+    final byte[] buffer = new byte[8192];
+    int read;
+    try {
+      while ((read = snapshotStream.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+    } finally {
+      snapshotStream.close();
+    }
+    final byte[] data = bytes.toByteArray();
+    final DataInputStream header = new DataInputStream(
+        new ByteArrayInputStream(data));
+    if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+      throw new IOException("not a language pack snapshot of version "
+          + VERSION);
+    }
+    final int noLanguages = header.readInt();
+    final Map<String, Block> index = new HashMap<String, Block>();
+    for (int i = 0; i < noLanguages; i++) {
+      final String language = header.readUTF();
+      index.put(language, new Block(header.readUTF(), header.readInt(),
+          header.readInt()));
+    }
+    final int dataStart = data.length - header.available();
+    for (final Block block : index.values()) {
+      block.offset += dataStart;
+      if (block.offset + block.length > data.length) {
+        throw new IOException("truncated language pack snapshot");
+      }
+    }
+    return new LanguagePackSnapshot(data, index);
+  }
+
+  /**
+   * Compile a language pack from the snapshot.
+   * @param pack the language pack
+   * @return the compiled pack or null if the language is not in the snapshot
+   *         or its block was generated from another pack class
+   */
+  CompiledLanguagePack compile(final LanguagePack pack) {
+    final Block block = index.get(pack.getLanguage().toLowerCase());
+    if (block == null
+        || !block.packClassName.equals(pack.getClass().getName())) {
+      return null;
+    }
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+        data, block.offset, block.length));
+    try {
+      final int noWords = in.readInt();
+      final Set<String> words = new HashSet<String>(noWords * 2);
+      for (int i = 0; i < noWords; i++) {
+        words.add(in.readUTF());
+      }
+      final String regex = in.readUTF();
+      final Map.Entry<Set<String>, String> nonBreakers = new AbstractMap.SimpleImmutableEntry<Set<String>, String>(
+          words, regex.isEmpty() ? null : regex);
+      final CharacterTable characters = readTable(in);
+      final CharacterTable quotes = readTable(in);
+      return new CompiledLanguagePack(pack, nonBreakers, characters, quotes);
+    } catch (final IOException e) {
+      System.err.println("WARNING: Corrupted snapshot for language "
+          + pack.getLanguage() + ", compiling its language pack: "
+          + e.getMessage());
+      return null;
+    }
+  }
+
+  private static CharacterTable readTable(final DataInputStream in)
+      throws IOException {
+    final int size = in.readInt();
+    final char[] chars = new char[size];
+    final String[] replacements = new String[size];
+    for (int i = 0; i < size; i++) {
+      chars[i] = in.readChar();
+      replacements[i] = in.readUTF();
+    }
+    return new CharacterTable(chars, replacements);
+  }
+
+  /**
+   * Write the snapshot of a set of compiled language packs.
+   * @param compiledPacks the compiled packs
+   * @param outputStream the output stream, which is closed
+   * @throws IOException if the snapshot cannot be written
+   */
+  static void write(final Iterable<CompiledLanguagePack> compiledPacks,
+      final OutputStream outputStream) throws IOException {
+    final Map<String, byte[]> blocks = new LinkedHashMap<String, byte[]>();
+    final Map<String, String> packClassNames = new HashMap<String, String>();
+    for (final CompiledLanguagePack compiledPack : compiledPacks) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream block = new DataOutputStream(bytes);
+      block.writeInt(compiledPack.getNonBreakerWords().size());
+      for (final String word : compiledPack.getNonBreakerWords()) {
+        block.writeUTF(word);
+      }
+      final String regex = compiledPack.getNonBreakerRegex();
+      block.writeUTF(regex == null ? "" : regex);
+      writeTable(compiledPack.getCharacterTable(), block);
+      writeTable(compiledPack.getQuoteTable(), block);
+      block.flush();
+      blocks.put(compiledPack.getLanguage().toLowerCase(), bytes.toByteArray());
+      packClassNames.put(compiledPack.getLanguage().toLowerCase(),
+          compiledPack.getPackClassName());
+    }
+    final DataOutputStream out = new DataOutputStream(outputStream);
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(blocks.size());
+      int offset = 0;
+      for (final Map.Entry<String, byte[]> block : blocks.entrySet()) {
+        out.writeUTF(block.getKey());
+        out.writeUTF(packClassNames.get(block.getKey()));
+        out.writeInt(offset);
+        out.writeInt(block.getValue().length);
+        offset += block.getValue().length;
+      }
+      for (final byte[] block : blocks.values()) {
+        out.write(block);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void writeTable(final CharacterTable table,
+      final DataOutputStream out) throws IOException {
+    final char[] chars = table.getChars();
+    final String[] replacements = table.getReplacements();
+    out.writeInt(chars.length);
+    for (int i = 0; i < chars.length; i++) {
+      out.writeChar(chars[i]);
+      out.writeUTF(replacements[i]);
+    }
+  }
+
+  /**
+   * Generate the snapshot of every language pack in the classpath. It is run
+   * by the build in the process-classes phase.
+   * @param args the output directory, usually target/classes
+   * @throws IOException if the snapshot cannot be written
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("ERROR: Usage: LanguagePackSnapshot outputDirectory");
+      System.exit(1);
+    }
+    final Map<String, CompiledLanguagePack> compiledPacks = new LinkedHashMap<String, CompiledLanguagePack>();
+    for (final LanguagePack pack : ServiceLoader.load(LanguagePack.class,
+        LanguagePackSnapshot.class.getClassLoader())) {
+      compiledPacks.put(pack.getLanguage().toLowerCase(),
+          new CompiledLanguagePack(pack));
+    }
+    final File snapshotFile = new File(args[0], RESOURCE.substring(1));
+    write(compiledPacks.values(), new FileOutputStream(snapshotFile));
+    System.out.println("Wrote snapshot of languages " + compiledPacks.keySet()
+        + " to " + snapshotFile);
+  }
+
+}
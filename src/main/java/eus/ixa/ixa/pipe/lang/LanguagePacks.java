@@ -0,0 +1,93 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Registry of the language packs found in the classpath. Each pack is compiled
+ * the first time its language is requested and then shared. Packs included in
+ * the {@link LanguagePackSnapshot} are decoded from it; the rest are compiled
+ * from their non breaker files.
+ */
+public final class LanguagePacks {
+
+  private static Map<String, LanguagePack> packs;
+  private static final Map<String, CompiledLanguagePack> compiledPacks = new HashMap<String, CompiledLanguagePack>();
+
+  /**
+   * This class is to be used statically.
+   */
+  private LanguagePacks() {
+  }
+
+  /**
+   * Get the compiled language pack of a language.
+   * @param lang the language code
+   * @return the compiled pack or null if there is no pack for the language
+   */
+  public static synchronized CompiledLanguagePack get(final String lang) {
+    final String key = lang.toLowerCase();
+    CompiledLanguagePack compiledPack = compiledPacks.get(key);
+    if (compiledPack == null) {
+      final LanguagePack pack = getPacks().get(key);
+      if (pack == null) {
+        return null;
+      }
+      final LanguagePackSnapshot snapshot = LanguagePackSnapshot.getInstance();
+      if (snapshot != null) {
+        compiledPack = snapshot.compile(pack);
+      }
+      if (compiledPack == null) {
+        compiledPack = new CompiledLanguagePack(pack);
+      }
+      compiledPacks.put(key, compiledPack);
+    }
+    return compiledPack;
+  }
+
+  /**
+   * Get the language pack of a language, as found in the classpath.
+   * @param lang the language code
+   * @return the pack or null if there is no pack for the language
+   */
+  public static synchronized LanguagePack getPack(final String lang) {
+    return getPacks().get(lang.toLowerCase());
+  }
+
+  /**
+   * Get the languages of the available packs.
+   * @return the sorted language codes
+   */
+  public static synchronized Set<String> getLanguages() {
+    return Collections.unmodifiableSet(getPacks().keySet());
+  }
+
+  private static Map<String, LanguagePack> getPacks() {
+    if (packs == null) {
+      packs = new TreeMap<String, LanguagePack>();
+      for (final LanguagePack pack : ServiceLoader.load(LanguagePack.class)) {
+        packs.put(pack.getLanguage().toLowerCase(), pack);
+      }
+    }
+    return packs;
+  }
+
+}
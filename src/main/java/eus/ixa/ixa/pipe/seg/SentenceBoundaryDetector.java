@@ -0,0 +1,689 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.seg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import eus.ixa.ixa.pipe.tok.CharClasses;
+import eus.ixa.ixa.pipe.tok.NonPeriodBreaker;
+
+/**
+ * Single pass sentence boundary detector. The text is scanned once from left
+ * to right and a boundary is decided at every candidate punctuation mark (?!.)
+ * and paragraph mark by looking at a small window around it. The rules are
+ * the following, in order of application:
+ * <ol>
+ * <li>End of sentence marker, paragraph marks and link or uppercase, possibly
+ * after final and initial punctuation.
+ * <li>Spurious paragraphs (followed by lowercase, digits or punctuation) are
+ * removed.
+ * <li>End of sentence marker, space and initial punctuation, uppercase, dashes
+ * or link.
+ * <li>Words ending with a period followed by a word containing uppercase or
+ * digits, with the exceptions managed by the NonPeriodBreaker.
+ * </ol>
+ *
+ * Paragraph marks discarded by the rules are overwritten with spaces in the
+ * text so that they are not tokenized afterwards. This class is not thread
+ * safe.
+ */
+public class SentenceBoundaryDetector {
+
+  /**
+   * The paragraph mark character.
+   */
+  private static final char PARAGRAPH_MARK = '¶';
+  /**
+   * Element code for a line break inserted by a rule.
+   */
+  private static final int INSERTED_BREAK = -1;
+  /**
+   * Element code for an empty word.
+   */
+  private static final int NO_ELEMENT = -2;
+  /**
+   * Number of restart offsets kept, a power of two.
+   */
+  private static final int RESTARTS = 128;
+
+  /**
+   * The nonbreaker decides when to split strings followed by periods.
+   */
+  private final NonPeriodBreaker nonBreaker;
+  private final boolean isHardParagraph;
+
+  private char[] text;
+  private int textStart;
+  private int textEnd;
+  /**
+   * Sentence boundaries found so far.
+   */
+  private int[] breaks = new int[64];
+  private int noBreaks;
+  /**
+   * Pending regions ahead of the scanner whose characters were removed by a
+   * rule; triples of start, end and whether a line break was inserted.
+   */
+  private int[] removed = new int[24];
+  private int removedHead;
+  private int removedTail;
+  /**
+   * Everything before this offset has already been decided by a rule.
+   */
+  private int handledUntil;
+  /**
+   * End of the last removed spurious paragraph following an alphanumeric.
+   */
+  private int lastAlnumParagraph;
+  /**
+   * The last offsets from which the text can be detected again, see
+   * {@link #getRestartOffset(int)}, in a ring so that no allocation is done
+   * for them.
+   */
+  private final int[] restarts = new int[RESTARTS];
+  private int noRestarts;
+
+  // the word being scanned
+  private boolean inWord;
+  private int wordStart;
+  private int wordEnd;
+  private boolean wordIsClean;
+  private boolean wordHasUpperOrDigit;
+  private boolean wordStartsWithDigit;
+  private int lastElement;
+  private int previousElement;
+  private int lastCharIndex;
+
+  // the previous word if it is a candidate to be followed by a boundary
+  private boolean hasCandidate;
+  private int candidateEnd;
+  private boolean candidateIsNonBreaker;
+  private boolean candidateIsNonBreakerDigit;
+  private boolean candidateIsAcronym;
+
+  /**
+   * Construct a detector.
+   *
+   * @param nonBreaker
+   *          the non breaker for the language
+   * @param isHardParagraph
+   *          whether every paragraph starts a new sentence
+   */
+  public SentenceBoundaryDetector(final NonPeriodBreaker nonBreaker,
+      final boolean isHardParagraph) {
+    this.nonBreaker = nonBreaker;
+    this.isHardParagraph = isHardParagraph;
+  }
+
+  /**
+   * Detect the sentences of a text in which line breaks have been replaced by
+   * spaces and paragraphs by paragraph marks.
+   *
+   * @param chars
+   *          the text; discarded paragraph marks are replaced by spaces
+   * @return the sentence spans, without leading or trailing whitespace
+   */
+  public List<Span> detect(final char[] chars) {
+    text = chars;
+    textStart = 0;
+    textEnd = chars.length;
+    while (textStart < textEnd && chars[textStart] <= ' ') {
+      textStart++;
+    }
+    while (textEnd > textStart && chars[textEnd - 1] <= ' ') {
+      textEnd--;
+    }
+    noBreaks = 0;
+    noRestarts = 0;
+    removedHead = 0;
+    removedTail = 0;
+    handledUntil = textStart;
+    lastAlnumParagraph = textStart;
+    inWord = false;
+    hasCandidate = false;
+
+    int i = textStart;
+    while (i < textEnd) {
+      if (removedHead < removedTail && removed[removedHead] <= i) {
+        if (removed[removedHead + 2] != 0) {
+          addInsertedBreak(removed[removedHead]);
+        } else {
+          wordIsClean = false;
+        }
+        i = Math.max(i, removed[removedHead + 1]);
+        removedHead += 3;
+        continue;
+      }
+      final char c = chars[i];
+      if (!inWord && removedHead == removedTail && i >= handledUntil
+          && i >= lastAlnumParagraph && c > ' ' && c != PARAGRAPH_MARK
+          && !CharClasses.isWhiteSpace(c)) {
+        addRestart(i);
+      }
+      if (c == ' ') {
+        closeWord();
+        i++;
+      } else if (c == PARAGRAPH_MARK && i >= handledUntil) {
+        if (isHardParagraph) {
+          i = hardParagraph(i);
+        } else {
+          paragraph(i);
+        }
+      } else if (c == '\n') {
+        addInsertedBreak(i);
+        i++;
+      } else {
+        i = addChar(i);
+        if (isEndOfSentenceMarker(c)
+            && (i == textEnd || !isEndOfSentenceMarker(chars[i]))) {
+          if (isHardParagraph || !paragraphBreak(i - 1)) {
+            punctuationBreak(i - 1);
+          }
+        }
+      }
+    }
+    closeWord();
+    return getSpans();
+  }
+
+  /**
+   * Get the last offset of the text detected, not after a given one, from
+   * which detecting the rest of the text again finds the same sentences: the
+   * scanner was there between words, with no rule pending ahead, and it is
+   * neither whitespace nor a paragraph mark, so that no rule looks behind it.
+   * Callers detecting a growing text detect it again from there. Only the
+   * last offsets are kept.
+   *
+   * @param limit
+   *          the offset
+   * @return the offset or -1 if there is none kept
+   */
+  public int getRestartOffset(final int limit) {
+    for (int i = noRestarts - 1; i >= Math.max(0, noRestarts - RESTARTS); i--) {
+      if (restarts[i & (RESTARTS - 1)] <= limit) {
+        return restarts[i & (RESTARTS - 1)];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Paragraph marks after an end of sentence marker: followed by a link or by
+   * uppercase, maybe with final punctuation before the marks and initial
+   * punctuation after them.
+   *
+   * @param p
+   *          the offset of the end of sentence marker
+   * @return whether a boundary was found
+   */
+  private boolean paragraphBreak(final int p) {
+    final int marks = skipSpaces(p + 1);
+    final int marksEnd = skipParagraphMarks(marks);
+    if (marksEnd > marks && (marksEnd - marks) % 2 == 0) {
+      final int next = skipSpaces(marksEnd);
+      if (isLink(next)) {
+        // the paragraph is discarded because links are lowercase
+        addRemoved(p + 1, marksEnd - 2, true);
+        blank(marks, marksEnd);
+        handledUntil = marksEnd;
+        return true;
+      }
+      if (isUpperCase(skipInitialPunct(next))) {
+        addRemoved(p + 1, marksEnd - 2, true);
+        blank(marks, marksEnd - 2);
+        if (text[next] == '#') {
+          blank(marksEnd - 2, marksEnd);
+        } else {
+          addRemoved(marksEnd, next, false);
+        }
+        handledUntil = marksEnd;
+        return true;
+      }
+    }
+    // end of sentence marker inside quotes or brackets
+    final int finalPunct = skipParagraphMarks(p + 1);
+    final int breakPoint = skipFinalPunct(finalPunct);
+    if (breakPoint == finalPunct) {
+      return false;
+    }
+    final int paraEnd = skipParagraphMarks(breakPoint);
+    if (paraEnd == breakPoint || (paraEnd - breakPoint) % 2 != 0) {
+      return false;
+    }
+    final int initialPunct = skipInitialPunct(paraEnd);
+    final int upper = skipParagraphMarks(initialPunct);
+    if ((upper - initialPunct) % 2 != 0 || !isUpperCase(upper)) {
+      return false;
+    }
+    if (finalPunct - (p + 1) >= 2 && isSpuriousParagraphFollower(finalPunct)) {
+      blank(p + 1 + (finalPunct - (p + 1)) % 2, finalPunct);
+    }
+    addRemoved(breakPoint, paraEnd - 2, true);
+    blank(breakPoint, paraEnd - 2);
+    if (text[paraEnd] == '#') {
+      blank(paraEnd - 2, paraEnd);
+    }
+    handledUntil = upper;
+    return true;
+  }
+
+  /**
+   * End of sentence marker followed by sentence starters: initial punctuation
+   * and uppercase, links or dashes.
+   *
+   * @param p
+   *          the offset of the end of sentence marker
+   */
+  private void punctuationBreak(final int p) {
+    final int next = skipSpaceRun(p + 1);
+    final boolean spaced = next > p + 1;
+    final char c = text[p];
+    // ?! or multidots followed by sentence starters
+    if (spaced
+        && (c == '?' || c == '!' || p > textStart && text[p - 1] == '.')
+        && isUpperCase(skipInitialPunct(next))) {
+      addRemoved(p + 1, next, true);
+      return;
+    }
+    // end of sentence inside quotes or brackets
+    final int finalPunctEnd = skipFinalPunct(next);
+    if (finalPunctEnd > next) {
+      final int starter = skipSpaceRun(finalPunctEnd);
+      if (starter > finalPunctEnd
+          && isUpperCase(skipSpaces(skipInitialPunct(starter)))) {
+        addRemoved(finalPunctEnd, starter, true);
+        return;
+      }
+    }
+    if (spaced) {
+      final int initialPunctEnd = skipInitialPunct(next);
+      if (initialPunctEnd > next
+          && isUpperCase(skipSpaces(initialPunctEnd))) {
+        addRemoved(p + 1, next, true);
+        return;
+      }
+    }
+    if (isLink(next)) {
+      addRemoved(p + 1, next, true);
+      return;
+    }
+    if (spaced) {
+      int dash = next;
+      while (dash < textEnd && text[dash] == '-') {
+        dash++;
+      }
+      if (dash > next) {
+        int bracket = skipSpaceRun(dash);
+        while (bracket < textEnd && text[bracket] == '(') {
+          bracket++;
+        }
+        if (isUpperCase(bracket)) {
+          addRemoved(p + 1, next, true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decide whether a run of paragraph marks which does not follow an end of
+   * sentence marker is spurious.
+   *
+   * @param i
+   *          the start of the paragraph marks
+   */
+  private void paragraph(final int i) {
+    final int marksEnd = skipParagraphMarks(i);
+    handledUntil = marksEnd;
+    if ((marksEnd - i) % 2 == 0) {
+      int before = i;
+      while (before > textStart
+          && CharClasses.isWhiteSpace(text[before - 1])) {
+        before--;
+      }
+      if (before > textStart) {
+        final int cp = Character.codePointBefore(text, before, textStart);
+        final int next = skipWhiteSpace(marksEnd);
+        if (before - Character.charCount(cp) >= lastAlnumParagraph
+            && CharClasses.isAlphaNumeric(cp) && next < textEnd) {
+          final int nextCp = Character.codePointAt(text, next, textEnd);
+          if (CharClasses.is(nextCp, CharClasses.LOWER | CharClasses.DIGIT)) {
+            blank(before, next);
+            lastAlnumParagraph = next + Character.charCount(nextCp);
+            handledUntil = next;
+            return;
+          }
+        }
+      }
+    }
+    if (isSpuriousParagraphFollower(marksEnd) && marksEnd - i >= 2) {
+      final int next = skipWhiteSpace(marksEnd);
+      blank(i + (marksEnd - i) % 2, next);
+      handledUntil = next;
+    }
+  }
+
+  /**
+   * Every paragraph starts a new sentence.
+   *
+   * @param i
+   *          the start of the paragraph marks
+   * @return the offset after the paragraph marks
+   */
+  private int hardParagraph(int i) {
+    final int marksEnd = skipParagraphMarks(i);
+    while (i < marksEnd) {
+      if (i + 1 < marksEnd) {
+        addInsertedBreak(i);
+        addChar(i++);
+      }
+      addChar(i++);
+    }
+    return i;
+  }
+
+  /**
+   * Whether a run of paragraph marks is followed, maybe after some whitespace,
+   * by lowercase or punctuation that cannot start a sentence.
+   *
+   * @param marksEnd
+   *          the offset after the paragraph marks
+   * @return true if the paragraph is spurious
+   */
+  private boolean isSpuriousParagraphFollower(final int marksEnd) {
+    final int next = skipWhiteSpace(marksEnd);
+    if (next >= textEnd) {
+      return false;
+    }
+    final int cp = Character.codePointAt(text, next, textEnd);
+    return CharClasses.isLower(cp) || CharClasses.isNonStarterPunct(text[next]);
+  }
+
+  /**
+   * Skip spaces and spurious paragraph marks that are going to be removed.
+   * Paragraph marks in this position never follow an alphanumeric.
+   *
+   * @param i
+   *          the offset
+   * @return the offset of the first character which is not a space
+   */
+  private int skipSpaceRun(final int i) {
+    final int next = skipSpaces(i);
+    if (!isHardParagraph && next >= handledUntil) {
+      final int marksEnd = skipParagraphMarks(next);
+      if (marksEnd > next && (marksEnd - next) % 2 == 0
+          && isSpuriousParagraphFollower(marksEnd)) {
+        return skipWhiteSpace(marksEnd);
+      }
+    }
+    return next;
+  }
+
+  private int skipSpaces(int i) {
+    while (i < textEnd && text[i] == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipWhiteSpace(int i) {
+    while (i < textEnd && CharClasses.isWhiteSpace(text[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipParagraphMarks(int i) {
+    while (i < textEnd && text[i] == PARAGRAPH_MARK) {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipInitialPunct(int i) {
+    while (i < textEnd && CharClasses.isInitialPunct(text[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipFinalPunct(int i) {
+    while (i < textEnd && CharClasses.isFinalPunct(text[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private boolean isUpperCase(final int i) {
+    return i < textEnd
+        && CharClasses.isUpper(Character.codePointAt(text, i, textEnd));
+  }
+
+  private boolean isLink(final int i) {
+    return startsWith(i, "http") || startsWith(i, "www")
+        || startsWith(i, "ftp");
+  }
+
+  private boolean startsWith(final int i, final String prefix) {
+    if (textEnd - i < prefix.length()) {
+      return false;
+    }
+    for (int j = 0; j < prefix.length(); j++) {
+      if (text[i + j] != prefix.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Overwrite with spaces the characters discarded by a rule.
+   */
+  private void blank(final int from, final int to) {
+    Arrays.fill(text, from, to, ' ');
+  }
+
+  /**
+   * Register a region ahead of the scanner whose characters were removed,
+   * maybe replaced by a line break.
+   */
+  private void addRemoved(final int from, final int to, final boolean isBreak) {
+    blank(from, to);
+    if (removedTail + 3 > removed.length) {
+      System.arraycopy(removed, removedHead, removed, 0, removedTail
+          - removedHead);
+      removedTail -= removedHead;
+      removedHead = 0;
+      if (removedTail + 3 > removed.length) {
+        removed = Arrays.copyOf(removed, removed.length * 2);
+      }
+    }
+    removed[removedTail++] = from;
+    removed[removedTail++] = to;
+    removed[removedTail++] = isBreak ? 1 : 0;
+  }
+
+  /**
+   * Add a character to the current word.
+   *
+   * @param i
+   *          the offset of the character
+   * @return the offset of the next character
+   */
+  private int addChar(final int i) {
+    final int cp = Character.codePointAt(text, i, textEnd);
+    if (!inWord) {
+      startWord(i);
+      wordStartsWithDigit = CharClasses.isDigit(cp);
+    }
+    if (!CharClasses.isAlphaNumeric(cp) && cp != '.' && cp != '-') {
+      wordIsClean = false;
+    }
+    if (CharClasses.is(cp, CharClasses.UPPER | CharClasses.DIGIT)) {
+      wordHasUpperOrDigit = true;
+    }
+    previousElement = lastElement;
+    lastElement = cp;
+    lastCharIndex = i;
+    wordEnd = i + Character.charCount(cp);
+    return wordEnd;
+  }
+
+  /**
+   * Add a sentence boundary which is also a line break inside a word.
+   *
+   * @param i
+   *          the offset of the boundary
+   */
+  private void addInsertedBreak(final int i) {
+    if (!inWord) {
+      startWord(i);
+      wordStartsWithDigit = false;
+    }
+    wordIsClean = false;
+    previousElement = lastElement;
+    lastElement = INSERTED_BREAK;
+    wordEnd = i;
+    addBreak(i);
+  }
+
+  private void startWord(final int i) {
+    inWord = true;
+    wordStart = i;
+    wordIsClean = true;
+    wordHasUpperOrDigit = false;
+    lastElement = NO_ELEMENT;
+  }
+
+  /**
+   * The current word is finished: decide whether the previous word ends a
+   * sentence and keep the current one if it is a candidate.
+   */
+  private void closeWord() {
+    if (!inWord) {
+      return;
+    }
+    inWord = false;
+    if (hasCandidate) {
+      if (!candidateIsNonBreaker && !candidateIsAcronym
+          && wordHasUpperOrDigit
+          && !(candidateIsNonBreakerDigit && wordStartsWithDigit)) {
+        addBreak(candidateEnd);
+      }
+    }
+    final boolean endsWithPeriod = lastElement == '.';
+    hasCandidate = endsWithPeriod
+        || (isLineTerminator(lastElement) && previousElement == '.');
+    if (!hasCandidate) {
+      return;
+    }
+    candidateEnd = wordEnd;
+    final int lastPeriod = lastElement == INSERTED_BREAK ? lastCharIndex
+        : lastCharIndex - (endsWithPeriod ? 0 : 1);
+    if (wordIsClean && endsWithPeriod && lastPeriod > wordStart) {
+      final String word = new String(text, wordStart, lastPeriod - wordStart);
+      candidateIsNonBreaker = nonBreaker.isNonBreaker(word);
+      candidateIsNonBreakerDigit = nonBreaker.isNonBreakerDigit(word);
+    } else {
+      candidateIsNonBreaker = false;
+      candidateIsNonBreakerDigit = false;
+    }
+    candidateIsAcronym = isAcronym(lastPeriod);
+  }
+
+  /**
+   * General acronyms: a period, uppercase letters or dashes and one or more
+   * periods at the end of the word.
+   *
+   * @param lastPeriod
+   *          the offset of the last period of the word
+   * @return whether the word ends as an acronym
+   */
+  private boolean isAcronym(final int lastPeriod) {
+    int i = lastPeriod;
+    while (i >= wordStart && text[i] == '.') {
+      i--;
+    }
+    final int upperEnd = i;
+    while (i >= wordStart) {
+      if (text[i] == '-') {
+        i--;
+      } else {
+        final int cp = Character.codePointBefore(text, i + 1, wordStart);
+        if (!CharClasses.isUpper(cp)) {
+          break;
+        }
+        i -= Character.charCount(cp);
+      }
+    }
+    return i < upperEnd && i >= wordStart && text[i] == '.';
+  }
+
+  private void addRestart(final int offset) {
+    restarts[noRestarts++ & (RESTARTS - 1)] = offset;
+  }
+
+  private void addBreak(final int offset) {
+    if (noBreaks == breaks.length) {
+      breaks = Arrays.copyOf(breaks, breaks.length * 2);
+    }
+    breaks[noBreaks++] = offset;
+  }
+
+  /**
+   * Build the sentence spans from the boundaries. Sentences with only
+   * whitespace are dropped, so they take no sentence number: the NAF sent
+   * attributes of the following sentences are one lower for each of them
+   * than with the former regex segmenter, which kept them as empty
+   * sentences.
+   *
+   * @return the list of spans
+   */
+  private List<Span> getSpans() {
+    Arrays.sort(breaks, 0, noBreaks);
+    final List<Span> spans = new ArrayList<Span>(noBreaks + 1);
+    int start = textStart;
+    for (int i = 0; i < noBreaks; i++) {
+      addSpan(spans, start, breaks[i]);
+      start = Math.max(start, breaks[i]);
+    }
+    addSpan(spans, start, textEnd);
+    text = null;
+    return spans;
+  }
+
+  private void addSpan(final List<Span> spans, int start, int end) {
+    while (start < end && text[start] <= ' ') {
+      start++;
+    }
+    while (end > start && text[end - 1] <= ' ') {
+      end--;
+    }
+    if (start < end) {
+      spans.add(new Span(start, end));
+    }
+  }
+
+  private static boolean isEndOfSentenceMarker(final char c) {
+    return c == '.' || c == '?' || c == '!';
+  }
+
+  private static boolean isLineTerminator(final int c) {
+    return c == INSERTED_BREAK || c == '\n' || c == '\r' || c == '\u0085'
+        || c == '\u2028' || c == '\u2029';
+  }
+
+}
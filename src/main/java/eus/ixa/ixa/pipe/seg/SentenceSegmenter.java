@@ -16,8 +16,17 @@
 
 package eus.ixa.ixa.pipe.seg;
 
+import java.util.List;
+
 public interface SentenceSegmenter {
 
   public String[] segmentSentence();
 
+  /**
+   * Segment the text into sentence spans. The offsets refer to the text
+   * built by the segmenter, where every line break is a single character.
+   * @return the sentence spans
+   */
+  public List<Span> segmentSpans();
+
 }
@@ -0,0 +1,98 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.seg;
+
+/**
+ * A span of characters in the text being segmented. The start offset is
+ * inclusive and the end offset is exclusive.
+ */
+public class Span {
+
+  private final int start;
+  private final int end;
+
+  /**
+   * Creates a new span.
+   *
+   * @param start
+   *          the start offset (inclusive)
+   * @param end
+   *          the end offset (exclusive)
+   */
+  public Span(final int start, final int end) {
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid span: [" + start + ".."
+          + end + ")");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Get the start offset.
+   * @return the start offset
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * Get the end offset.
+   * @return the end offset
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Get the length of the span.
+   * @return the length
+   */
+  public int length() {
+    return end - start;
+  }
+
+  /**
+   * Get the text covered by this span.
+   * @param text the text the span refers to
+   * @return the covered text
+   */
+  public String getCoveredText(final char[] text) {
+    return new String(text, start, end - start);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof Span)) {
+      return false;
+    }
+    final Span other = (Span) o;
+    return start == other.start && end == other.end;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * start + end;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + ".." + end + ")";
+  }
+
+}
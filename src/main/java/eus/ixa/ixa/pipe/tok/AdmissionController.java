@@ -0,0 +1,412 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+
+/**
+ * Admission control of the tokenizer servers. At most maxConcurrentRequests
+ * documents, adding up to at most maxBytesInFlight bytes, are tokenized at
+ * the same time; up to maxQueuedRequests more wait in first come first served
+ * order for at most queueTimeout milliseconds. Any other request is refused
+ * at once with a {@link BusyException}, so clients learn about the overload
+ * instead of timing out.
+ *
+ * The controller also keeps the queue depth and wait time statistics used to
+ * size deployments.
+ */
+public class AdmissionController {
+
+  /**
+   * Message of the requests refused because of overload.
+   */
+  public static final String BUSY_MESSAGE = "Server busy, try again later!!";
+  /**
+   * Default maximum number of queued requests.
+   */
+  public static final int DEFAULT_MAX_QUEUED_REQUESTS = 64;
+  /**
+   * Default maximum number of bytes being tokenized.
+   */
+  public static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 64L * 1024 * 1024;
+  /**
+   * Default milliseconds a request waits in the queue.
+   */
+  public static final long DEFAULT_QUEUE_TIMEOUT = 30000;
+  /**
+   * Bytes added at once to a growing reservation.
+   */
+  private static final long RESERVATION_STEP = 64 * 1024;
+
+  private final int maxConcurrentRequests;
+  private final int maxQueuedRequests;
+  private final long maxBytesInFlight;
+  private final long queueTimeout;
+  private final Deque<Ticket> queue = new ArrayDeque<Ticket>();
+
+  private int activeRequests;
+  private long bytesInFlight;
+  private int peakQueuedRequests;
+  private long admittedRequests;
+  private long rejectedRequests;
+  private long queuedRequests;
+  private long totalWaitNanos;
+  private long maxWaitNanos;
+
+  /**
+   * Construct an admission controller from the maxConcurrentRequests,
+   * maxQueuedRequests, maxBytesInFlight and queueTimeout properties.
+   * 
+   * @param properties
+   *          the properties
+   */
+  public AdmissionController(final Properties properties) {
+    this(Integer.parseInt(properties.getProperty("maxConcurrentRequests",
+        Integer.toString(getDefaultMaxConcurrentRequests()))), Integer
+        .parseInt(properties.getProperty("maxQueuedRequests",
+            Integer.toString(DEFAULT_MAX_QUEUED_REQUESTS))), Long
+        .parseLong(properties.getProperty("maxBytesInFlight",
+            Long.toString(DEFAULT_MAX_BYTES_IN_FLIGHT))), Long
+        .parseLong(properties.getProperty("queueTimeout",
+            Long.toString(DEFAULT_QUEUE_TIMEOUT))));
+  }
+
+  /**
+   * Construct an admission controller.
+   * 
+   * @param maxConcurrentRequests
+   *          the requests tokenized at the same time
+   * @param maxQueuedRequests
+   *          the requests waiting their turn
+   * @param maxBytesInFlight
+   *          the bytes of the requests tokenized at the same time
+   * @param queueTimeout
+   *          the milliseconds a request waits its turn
+   */
+  public AdmissionController(final int maxConcurrentRequests,
+      final int maxQueuedRequests, final long maxBytesInFlight,
+      final long queueTimeout) {
+    if (maxConcurrentRequests < 1 || maxQueuedRequests < 0
+        || maxBytesInFlight < 1 || queueTimeout < 0) {
+      throw new IllegalArgumentException("Invalid admission limits");
+    }
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.maxQueuedRequests = maxQueuedRequests;
+    this.maxBytesInFlight = maxBytesInFlight;
+    this.queueTimeout = queueTimeout;
+  }
+
+  /**
+   * Get the default number of concurrent requests, one per processor.
+   * @return the number of processors
+   */
+  public static int getDefaultMaxConcurrentRequests() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Admit a request, waiting in the queue if the limits are reached. Every
+   * admission must be followed by a {@link #release(long)} with the same
+   * bytes.
+   * 
+   * @param bytes
+   *          the size of the request
+   * @throws BusyException
+   *           if the queue is full, the wait times out or the request is
+   *           larger than the limit of bytes in flight
+   */
+  public synchronized void admit(final long bytes) throws BusyException {
+    if (bytes > maxBytesInFlight) {
+      rejectedRequests++;
+      throw new BusyException("Document of " + bytes
+          + " bytes is larger than the limit of " + maxBytesInFlight
+          + " bytes!!", true);
+    }
+    if (queue.isEmpty() && fits(bytes)) {
+      start(bytes, 0);
+      return;
+    }
+    if (queue.size() >= maxQueuedRequests) {
+      rejectedRequests++;
+      throw new BusyException(BUSY_MESSAGE, false);
+    }
+    final Ticket ticket = new Ticket(bytes);
+    queue.addLast(ticket);
+    queuedRequests++;
+    peakQueuedRequests = Math.max(peakQueuedRequests, queue.size());
+    final long deadline = ticket.arrival + queueTimeout * 1000000L;
+    boolean interrupted = false;
+    while (!ticket.admitted) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || interrupted) {
+        queue.remove(ticket);
+        rejectedRequests++;
+        // the head of the queue may fit now
+        admitQueued();
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+        throw new BusyException(BUSY_MESSAGE, false);
+      }
+      try {
+        wait(remaining / 1000000L, (int) (remaining % 1000000L));
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+  }
+
+  /**
+   * Admit a request as {@link #admit(long)} does and get the reservation of
+   * its bytes, which grows as the request is read.
+   * 
+   * @param bytes
+   *          the size of the request known beforehand, 0 if not known
+   * @return the reservation, to be released once the request is done
+   * @throws BusyException
+   *           if the request is not admitted
+   */
+  public Reservation reserve(final long bytes) throws BusyException {
+    admit(bytes);
+    return new Reservation(bytes);
+  }
+
+  /**
+   * Add bytes to an admitted request. It does not wait: an admitted request
+   * waiting for bytes could hold back the requests which would free them.
+   * 
+   * @param bytes
+   *          the bytes already admitted
+   * @param more
+   *          the bytes to add
+   * @throws BusyException
+   *           if the request becomes larger than the limit of bytes in flight
+   *           or the bytes in flight reach it
+   */
+  private synchronized void grow(final long bytes, final long more)
+      throws BusyException {
+    if (bytes + more > maxBytesInFlight) {
+      rejectedRequests++;
+      throw new BusyException("Document larger than the limit of "
+          + maxBytesInFlight + " bytes!!", true);
+    }
+    if (bytesInFlight + more > maxBytesInFlight) {
+      rejectedRequests++;
+      throw new BusyException(BUSY_MESSAGE, false);
+    }
+    bytesInFlight += more;
+  }
+
+  /**
+   * Release an admitted request, admitting the queued requests which fit.
+   * @param bytes the size of the request
+   */
+  public synchronized void release(final long bytes) {
+    activeRequests--;
+    bytesInFlight -= bytes;
+    admitQueued();
+  }
+
+  private void admitQueued() {
+    boolean admitted = false;
+    while (!queue.isEmpty() && fits(queue.peekFirst().bytes)) {
+      final Ticket ticket = queue.removeFirst();
+      start(ticket.bytes, System.nanoTime() - ticket.arrival);
+      ticket.admitted = true;
+      admitted = true;
+    }
+    if (admitted) {
+      notifyAll();
+    }
+  }
+
+  private boolean fits(final long bytes) {
+    return activeRequests < maxConcurrentRequests
+        && bytesInFlight + bytes <= maxBytesInFlight;
+  }
+
+  private void start(final long bytes, final long waitNanos) {
+    activeRequests++;
+    bytesInFlight += bytes;
+    admittedRequests++;
+    totalWaitNanos += waitNanos;
+    maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+  }
+
+  /**
+   * Get the number of requests being tokenized.
+   * @return the active requests
+   */
+  public synchronized int getActiveRequests() {
+    return activeRequests;
+  }
+
+  /**
+   * Get the number of requests waiting their turn.
+   * @return the queue depth
+   */
+  public synchronized int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * Get the number of bytes of the requests being tokenized.
+   * @return the bytes in flight
+   */
+  public synchronized long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  /**
+   * Get the number of requests admitted since startup.
+   * @return the admitted requests
+   */
+  public synchronized long getAdmittedRequests() {
+    return admittedRequests;
+  }
+
+  /**
+   * Get the number of requests which waited in the queue since startup.
+   * @return the queued requests
+   */
+  public synchronized long getQueuedRequests() {
+    return queuedRequests;
+  }
+
+  /**
+   * Get the time waited in the queue by the admitted requests.
+   * @return the nanoseconds
+   */
+  public synchronized long getTotalWaitNanos() {
+    return totalWaitNanos;
+  }
+
+  /**
+   * Get the status of the controller: limits, queue depth and wait times.
+   * @return the status as a JSON object
+   */
+  public synchronized String getStatus() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\"activeRequests\":").append(activeRequests)
+        .append(",\"maxConcurrentRequests\":").append(maxConcurrentRequests)
+        .append(",\"queueDepth\":").append(queue.size())
+        .append(",\"peakQueueDepth\":").append(peakQueuedRequests)
+        .append(",\"maxQueuedRequests\":").append(maxQueuedRequests)
+        .append(",\"bytesInFlight\":").append(bytesInFlight)
+        .append(",\"maxBytesInFlight\":").append(maxBytesInFlight)
+        .append(",\"admittedRequests\":").append(admittedRequests)
+        .append(",\"queuedRequests\":").append(queuedRequests)
+        .append(",\"rejectedRequests\":").append(rejectedRequests)
+        .append(",\"averageWaitMillis\":")
+        .append(admittedRequests == 0 ? 0 : totalWaitNanos / admittedRequests / 1000000.0)
+        .append(",\"maxWaitMillis\":").append(maxWaitNanos / 1000000.0)
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * A queued request.
+   */
+  private static class Ticket {
+    private final long bytes;
+    private final long arrival = System.nanoTime();
+    private boolean admitted;
+
+    Ticket(final long bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * The bytes reserved by an admitted request.
+   */
+  public class Reservation {
+    private long bytes;
+    private boolean released;
+
+    Reservation(final long bytes) {
+      this.bytes = bytes;
+    }
+
+    /**
+     * Make sure that the bytes read so far are reserved. The reservation grows
+     * in steps, so the controller is not called for every read.
+     * 
+     * @param used
+     *          the bytes read
+     * @throws BusyException
+     *           if the request is too large or the bytes in flight reach the
+     *           limit; the reservation is released then
+     */
+    public void ensure(final long used) throws BusyException {
+      if (used <= bytes || released) {
+        return;
+      }
+      final long more = Math.max(used - bytes,
+          Math.min(RESERVATION_STEP, maxBytesInFlight - bytes));
+      try {
+        grow(bytes, more);
+      } catch (final BusyException e) {
+        release();
+        throw e;
+      }
+      bytes += more;
+    }
+
+    /**
+     * Get the bytes reserved.
+     * @return the bytes
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Release the request; later calls do nothing.
+     */
+    public void release() {
+      if (!released) {
+        released = true;
+        AdmissionController.this.release(bytes);
+      }
+    }
+  }
+
+  /**
+   * A request refused because the server is overloaded or the request is
+   * too large.
+   */
+  public static class BusyException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+    private final boolean tooLarge;
+
+    BusyException(final String message, final boolean tooLarge) {
+      super(message);
+      this.tooLarge = tooLarge;
+    }
+
+    /**
+     * Whether the request will never be admitted because of its size.
+     * @return true if the request is larger than the limit
+     */
+    public boolean isTooLarge() {
+      return tooLarge;
+    }
+  }
+
+}
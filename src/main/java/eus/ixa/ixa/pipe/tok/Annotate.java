@@ -22,11 +22,10 @@ import ixa.kaflib.WF;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
 import java.util.List;
 import java.util.Properties;
 
-import com.google.common.io.CharStreams;
-
 import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
 
 /**
@@ -57,6 +56,22 @@ public class Annotate {
    * The sentence splitter.
    */
   private final RuleBasedSegmenter segmenter;
+  /**
+   * Nanoseconds spent segmenting the last time.
+   */
+  private long segmentationNanos;
+  /**
+   * Nanoseconds spent tokenizing the last time.
+   */
+  private long tokenizationNanos;
+  /**
+   * Number of tokens of the last tokenization.
+   */
+  private int noTokens;
+  /**
+   * Whether the progress is left out of stderr.
+   */
+  private final boolean quiet;
 
   public Annotate(final BufferedReader breader, final Properties properties) {
     //System.err.println("-> TEXT START!!");
@@ -66,18 +81,109 @@ public class Annotate {
     //System.err.println("-> SEGMENTER UP!!");
     toker = new RuleBasedTokenizer(text, properties);
     //System.err.println("-> TOKENIZER UP!!");
+    quiet = Boolean.parseBoolean(properties.getProperty("quiet"));
+  }
+
+  /**
+   * Print the progress in stderr unless quiet.
+   * 
+   * @param message
+   *          the message
+   */
+  private void progress(final String message) {
+    if (!quiet) {
+      System.err.println(message);
+    }
+  }
+
+  /**
+   * Segment the text into sentences, timing it.
+   * 
+   * @return the sentences
+   */
+  private String[] segment() {
+    final long start = System.nanoTime();
+    final String[] sentences = segmenter.segmentSentence();
+    segmentationNanos = System.nanoTime() - start;
+    return sentences;
+  }
+
+  /**
+   * Tokenize the sentences, timing it and counting the tokens.
+   * 
+   * @param sentences
+   *          the sentences
+   * @return the tokens of each sentence
+   */
+  private List<List<Token>> tokenize(final String[] sentences) {
+    final long start = System.nanoTime();
+    final List<List<Token>> tokens = toker.tokenize(sentences);
+    tokenizationNanos = System.nanoTime() - start;
+    noTokens = 0;
+    for (final List<Token> sentence : tokens) {
+      noTokens += sentence.size();
+    }
+    return tokens;
+  }
+
+  /**
+   * Get the time spent segmenting by the last tokenizeTo method called.
+   * 
+   * @return the nanoseconds
+   */
+  public long getSegmentationNanos() {
+    return segmentationNanos;
+  }
+
+  /**
+   * Get the time spent tokenizing by the last tokenizeTo method called.
+   * 
+   * @return the nanoseconds
+   */
+  public long getTokenizationNanos() {
+    return tokenizationNanos;
+  }
+
+  /**
+   * Get the number of tokens of the last tokenizeTo method called, paragraph
+   * marks included.
+   * 
+   * @return the number of tokens
+   */
+  public int getNoTokens() {
+    return noTokens;
   }
 
   public void tokenizeToKAF(final KAFDocument kaf) throws IOException {
     
     int noSents = 0;
-    int  noParas = 1;
 
     //System.err.println("-> Segmenting.....");
-    final String[] sentences = segmenter.segmentSentence();
+    final String[] sentences = segment();
     //System.err.println("-> Tokenizing...");
-    final List<List<Token>> tokens = toker.tokenize(sentences);
+    final List<List<Token>> tokens = tokenize(sentences);
     //System.err.println("-> [DONE]!");
+    final TokenizerPipeline.SentenceHandler wfs = toKAF(kaf);
+    for (final List<Token> tokenizedSentence : tokens) {
+      wfs.handle(new TokenizedSentence(++noSents, tokenizedSentence));
+    }
+  }
+
+  /**
+   * Tokenize and segment the input text as a new document of a token arena,
+   * numbering sentences and paragraphs as in {@link #tokenizeToKAF}.
+   * 
+   * @param arena
+   *          the token arena
+   * @return the document number in the arena
+   */
+  public int tokenizeToArena(final TokenArena arena) {
+
+    int noSents = 0;
+    int noParas = 1;
+    final int document = arena.startDocument();
+    final String[] sentences = segment();
+    final List<List<Token>> tokens = tokenize(sentences);
     for (final List<Token> tokenizedSentence : tokens) {
       noSents = noSents + 1;
       for (final Token token : tokenizedSentence) {
@@ -87,12 +193,11 @@ public class Annotate {
             ++noSents;
           }
         } else {
-          final WF wf = kaf.newWF(token.startOffset(), token.getTokenValue(), noSents);
-          wf.setLength(token.tokenLength());
-          wf.setPara(noParas);
+          arena.add(token, noSents, noParas);
         }
       }
     }
+    return document;
   }
 
   /**
@@ -104,17 +209,10 @@ public class Annotate {
   public String tokenizeToCoNLL() {
 
     final StringBuilder sb = new StringBuilder();
-    final String[] sentences = segmenter.segmentSentence();
-    final List<List<Token>> tokens = toker.tokenize(sentences);
+    final String[] sentences = segment();
+    final List<List<Token>> tokens = tokenize(sentences);
     for (final List<Token> tokSentence : tokens) {
-      for (final Token token : tokSentence) {
-        String tokenValue = token.getTokenValue();
-        if (tokenValue.equals(RuleBasedSegmenter.PARAGRAPH)) {
-          tokenValue = "*<P>*";
-        }
-        sb.append(tokenValue.trim()).append("\n");
-      }
-      sb.append("\n");
+      appendCoNLL(tokSentence, false, sb);
     }
     return sb.toString();
   }
@@ -129,19 +227,10 @@ public class Annotate {
   public String tokenizeToCoNLLOffsets() {
 
     final StringBuilder sb = new StringBuilder();
-    final String[] sentences = segmenter.segmentSentence();
-    final List<List<Token>> tokens = toker.tokenize(sentences);
+    final String[] sentences = segment();
+    final List<List<Token>> tokens = tokenize(sentences);
     for (final List<Token> tokSentence : tokens) {
-      for (final Token token : tokSentence) {
-        String tokenValue = token.getTokenValue();
-        if (tokenValue.equals(RuleBasedSegmenter.PARAGRAPH)) {
-          tokenValue = "*<P>*";
-        }
-        sb.append(tokenValue.trim()).append(" ")
-            .append(token.startOffset()).append(" ")
-            .append(token.tokenLength()).append("\n");
-      }
-      sb.append("\n");
+      appendCoNLL(tokSentence, true, sb);
     }
     return sb.toString();
   }
@@ -155,49 +244,259 @@ public class Annotate {
   public String tokenizeToText() {
 
     final StringBuilder sb = new StringBuilder();
-    System.err.println("-> Segmenting.....");
-    final String[] sentences = segmenter.segmentSentence();
-    System.err.println("-> Tokenizing.....");
-    final List<List<Token>> tokens = toker.tokenize(sentences);
-    System.err.println("-> [DONE]!");
+    progress("-> Segmenting.....");
+    final String[] sentences = segment();
+    progress("-> Tokenizing.....");
+    final List<List<Token>> tokens = tokenize(sentences);
+    progress("-> [DONE]!");
     for (final List<Token> tokSentence : tokens) {
-      for (final Token token : tokSentence) {
-        String tokenValue = token.getTokenValue();
-        if (tokenValue.equals(RuleBasedSegmenter.PARAGRAPH)) {
-          sb.append("*<P>*").append("\n");
-        } else {
-          sb.append(tokenValue.trim()).append(" ");
-        }
+      appendText(tokSentence, sb);
+    }
+    return sb.toString().trim();
+  }
+
+  /**
+   * Append a tokenized sentence in conll format: one token per line, with
+   * its offset and length if required, and a newline to end the sentence.
+   * 
+   * @param tokens
+   *          the tokens of the sentence
+   * @param offsets
+   *          whether to append the offset and length of the tokens
+   * @param sb
+   *          the output
+   */
+  static void appendCoNLL(final List<Token> tokens, final boolean offsets,
+      final StringBuilder sb) {
+    for (final Token token : tokens) {
+      String tokenValue = token.getTokenValue();
+      if (tokenValue.equals(RuleBasedSegmenter.PARAGRAPH)) {
+        tokenValue = "*<P>*";
+      }
+      sb.append(tokenValue.trim());
+      if (offsets) {
+        sb.append(" ").append(token.startOffset()).append(" ")
+            .append(token.tokenLength());
       }
       sb.append("\n");
     }
-    return sb.toString().trim();
+    sb.append("\n");
   }
 
-  public static void tokensToKAF(final Reader breader, final KAFDocument kaf)
-      throws IOException {
-    int noSents = 0;
-    int noParas = 1;
-    final List<String> sentences = CharStreams.readLines(breader);
-    for (final String sentence : sentences) {
-      noSents = noSents + 1;
-      final String[] tokens = sentence.split(" ");
-      for (final String token : tokens) {
-        if (token.equals(RuleBasedSegmenter.PARAGRAPH)) {
-          ++noParas;
-          // TODO sentences without end markers;
-          // crap rule
-          while (noParas > noSents) {
-            ++noSents;
-          }
+  /**
+   * Append a tokenized sentence as running text in one line.
+   * 
+   * @param tokens
+   *          the tokens of the sentence
+   * @param sb
+   *          the output
+   */
+  static void appendText(final List<Token> tokens, final StringBuilder sb) {
+    for (final Token token : tokens) {
+      final String tokenValue = token.getTokenValue();
+      if (tokenValue.equals(RuleBasedSegmenter.PARAGRAPH)) {
+        sb.append("*<P>*").append("\n");
+      } else {
+        sb.append(tokenValue.trim()).append(" ");
+      }
+    }
+    sb.append("\n");
+  }
+
+  /**
+   * Get a handler writing the sentences of a {@link TokenizerPipeline} in
+   * conll format, as {@link #tokenizeToCoNLL()} and
+   * {@link #tokenizeToCoNLLOffsets()} do.
+   * 
+   * @param writer
+   *          the output
+   * @param offsets
+   *          whether to write the offset and length of the tokens
+   * @return the handler
+   */
+  public static TokenizerPipeline.SentenceHandler toCoNLL(
+      final Writer writer, final boolean offsets) {
+    return new TokenizerPipeline.SentenceHandler() {
+      private final StringBuilder sb = new StringBuilder();
+
+      public void handle(final TokenizedSentence sentence) throws IOException {
+        sb.setLength(0);
+        appendCoNLL(sentence.getTokens(), offsets, sb);
+        writer.append(sb);
+      }
+    };
+  }
+
+  /**
+   * Get a handler writing the sentences of a {@link TokenizerPipeline} as
+   * running text, one sentence per line, as {@link #tokenizeToText()} does:
+   * the whitespace at the start and at the end of the output is left out.
+   * 
+   * @param writer
+   *          the output
+   * @return the handler
+   */
+  public static TokenizerPipeline.SentenceHandler toText(final Writer writer) {
+    return new TokenizerPipeline.SentenceHandler() {
+      private final StringBuilder sb = new StringBuilder();
+      /**
+       * Whitespace written only if more text follows.
+       */
+      private final StringBuilder pending = new StringBuilder();
+      private boolean started;
+
+      public void handle(final TokenizedSentence sentence) throws IOException {
+        sb.setLength(0);
+        appendText(sentence.getTokens(), sb);
+        // trim as String.trim does
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) <= ' ') {
+          end--;
+        }
+        if (end == 0) {
+          pending.append(sb);
+          return;
+        }
+        int start = 0;
+        if (started) {
+          writer.append(pending);
         } else {
-          // TODO add offset
-          final WF wf = kaf.newWF(0, token, noSents);
-          wf.setPara(noParas);
-          //wf.setSent(noSents);
+          while (sb.charAt(start) <= ' ') {
+            start++;
+          }
+          started = true;
+        }
+        writer.append(sb, start, end);
+        pending.setLength(0);
+        pending.append(sb, end, sb.length());
+      }
+    };
+  }
+
+  /**
+   * Get a handler adding the sentences of a {@link TokenizerPipeline} as WF
+   * elements of a NAF document, numbering sentences and paragraphs as
+   * {@link #tokenizeToKAF(KAFDocument)} does.
+   * 
+   * @param kaf
+   *          the naf document
+   * @return the handler
+   */
+  public static TokenizerPipeline.SentenceHandler toKAF(final KAFDocument kaf) {
+    return new TokenizerPipeline.SentenceHandler() {
+      private int noSents = 0;
+      private int noParas = 1;
+
+      public void handle(final TokenizedSentence sentence) {
+        noSents = noSents + 1;
+        for (final Token token : sentence.getTokens()) {
+          if (token.getTokenValue().equals(RuleBasedSegmenter.PARAGRAPH)) {
+            ++noParas;
+            if (noSents < noParas) {
+              ++noSents;
+            }
+          } else {
+            final WF wf = kaf.newWF(token.startOffset(),
+                token.getTokenValue(), noSents);
+            wf.setLength(token.tokenLength());
+            wf.setPara(noParas);
+          }
         }
       }
+    };
+  }
+
+  /**
+   * Read already tokenized text, one sentence per line, into the WF elements
+   * of a NAF document. The offsets are those of the tokens in the tokenized
+   * text.
+   * 
+   * @param breader
+   *          the tokenized text
+   * @param kaf
+   *          the naf document
+   * @throws IOException
+   *           if io problems
+   */
+  public static void tokensToKAF(final Reader breader, final KAFDocument kaf)
+      throws IOException {
+    final PreTokenizedReader tokens = new PreTokenizedReader(breader);
+    while (tokens.next()) {
+      if (!tokens.isParagraph()) {
+        final WF wf = kaf.newWF(tokens.getOffset(), tokens.getToken(),
+            tokens.getSentence());
+        wf.setPara(tokens.getParagraph());
+      }
+    }
+  }
+
+  /**
+   * Read already tokenized text, one sentence per line, and write it in CoNLL
+   * format as it is read.
+   * 
+   * @param breader
+   *          the tokenized text
+   * @param writer
+   *          the output
+   * @param offsets
+   *          whether to print the offset and length of the tokens
+   * @throws IOException
+   *           if io problems
+   */
+  public static void tokensToCoNLL(final Reader breader, final Writer writer,
+      final boolean offsets) throws IOException {
+    final PreTokenizedReader tokens = new PreTokenizedReader(breader);
+    boolean first = true;
+    while (tokens.next()) {
+      if (tokens.isSentenceStart() && !first) {
+        writer.write("\n");
+      }
+      first = false;
+      final String token = tokens.isParagraph() ? "*<P>*" : tokens.getToken();
+      writer.write(token);
+      if (offsets) {
+        writer.append(' ').append(Integer.toString(tokens.getOffset()))
+            .append(' ').append(Integer.toString(tokens.getToken().length()));
+      }
+      writer.write("\n");
+    }
+    if (!first) {
+      writer.write("\n");
+    }
+  }
+
+  /**
+   * Read already tokenized text, one sentence per line, and write it one
+   * sentence per line as it is read.
+   * 
+   * @param breader
+   *          the tokenized text
+   * @param writer
+   *          the output
+   * @throws IOException
+   *           if io problems
+   */
+  public static void tokensToText(final Reader breader, final Writer writer)
+      throws IOException {
+    final PreTokenizedReader tokens = new PreTokenizedReader(breader);
+    boolean first = true;
+    while (tokens.next()) {
+      if (!first) {
+        writer.write(tokens.isSentenceStart() || tokens.isParagraph() ? "\n"
+            : " ");
+      }
+      first = false;
+      if (tokens.isParagraph()) {
+        writer.write("*<P>*\n");
+        first = true;
+      } else {
+        writer.write(tokens.getToken());
+      }
+    }
+    if (!first) {
+      writer.write("\n");
     }
   }
 
+
 }
@@ -16,19 +16,32 @@
 
 package eus.ixa.ixa.pipe.tok;
 
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
 import ixa.kaflib.KAFDocument;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 
 import net.sourceforge.argparse4j.ArgumentParsers;
@@ -41,6 +54,9 @@ import net.sourceforge.argparse4j.inf.Subparsers;
 
 import org.jdom2.JDOMException;
 
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
 /**
  * ixa-pipe-tok provides several configuration parameters:
  * 
@@ -99,6 +115,14 @@ public class CLI {
    * Sends queries to the serverParser for annotation.
    */
   private Subparser clientParser;
+  /**
+   * Parser to start the HTTP server.
+   */
+  private Subparser httpParser;
+  /**
+   * Parser to benchmark the tokenizer.
+   */
+  private Subparser benchParser;
 
   public CLI() {
     annotateParser = subParsers.addParser("tok").help("Tagging CLI");
@@ -107,6 +131,10 @@ public class CLI {
     loadServerParameters();
     clientParser = subParsers.addParser("client").help("Send queries to the TCP socket server");
     loadClientParameters();
+    httpParser = subParsers.addParser("http").help("Start HTTP server");
+    loadHttpParameters();
+    benchParser = subParsers.addParser("bench").help("Benchmark the tokenizer");
+    loadBenchParameters();
   }
 
   public static void main(final String[] args) throws IOException,
@@ -132,16 +160,41 @@ public class CLI {
       parsedArguments = argParser.parseArgs(args);
       System.err.println("CLI options: " + parsedArguments);
       if (args[0].equals("tok")) {
-        annotate(System.in, System.out);
+        final InputStream input;
+        final OutputStream output;
+        try {
+          input = CompressedStreams.openInput(parsedArguments
+              .getString("input"));
+          output = CompressedStreams.openOutput(parsedArguments
+              .getString("output"));
+        } catch (final IOException e) {
+          System.err.println("ERROR: " + e.getMessage());
+          System.exit(1);
+          return;
+        }
+        annotate(input, output);
       } else if (args[0].equals("server")) {
         server();
       } else if (args[0].equals("client")) {
-        client(System.in, System.out);
+        final OutputStream output;
+        try {
+          output = CompressedStreams.openOutput(parsedArguments
+              .getString("output"));
+        } catch (final IOException e) {
+          System.err.println("ERROR: " + e.getMessage());
+          System.exit(1);
+          return;
+        }
+        client(System.in, output);
+      } else if (args[0].equals("http")) {
+        http();
+      } else if (args[0].equals("bench")) {
+        bench();
       }
     } catch (final ArgumentParserException e) {
       argParser.handleError(e);
       System.out.println("Run java -jar target/ixa-pipe-tok-" + version
-          + ".jar (tok|server|client) -help for details");
+          + ".jar (tok|server|client|http|bench) -help for details");
       System.exit(1);
     }
   }
@@ -155,61 +208,220 @@ public class CLI {
     final String kafVersion = parsedArguments.getString("kafversion");
     final Boolean inputKafRaw = parsedArguments.getBoolean("inputkaf");
     final Boolean noTok = parsedArguments.getBoolean("notok");
+    final Boolean splice = parsedArguments.getBoolean("splice");
     final String hardParagraph = parsedArguments.getString("hardParagraph");
-    final Properties properties = setAnnotateProperties(lang, normalize, untokenizable, hardParagraph);
+    final String maxSentenceLength = parsedArguments.getString("maxSentenceLength");
+    final String sentenceWorkBudget = parsedArguments.getString("sentenceWorkBudget");
+    final Properties properties = setAnnotateProperties(lang, normalize, untokenizable, hardParagraph, maxSentenceLength, sentenceWorkBudget);
+    properties.setProperty("intern", String.valueOf(parsedArguments.getBoolean("intern")));
+    final Boolean profile = parsedArguments.getBoolean("profile");
+    RuleProfiler.setEnabled(profile);
 
     BufferedReader breader = null;
     final BufferedWriter bwriter = new BufferedWriter(new OutputStreamWriter(
-        System.out, "UTF-8"));
+        outputStream, "UTF-8"));
     KAFDocument kaf;
+    NAFSplicer splicer = null;
 
-    if (noTok) {
+    if (parsedArguments.getString("inputFormat").equalsIgnoreCase("jsonl")) {
+      if (noTok || inputKafRaw) {
+        System.err.println("ERROR: --inputFormat jsonl cannot be used with --notok or --inputkaf!");
+        System.exit(1);
+      }
+      final JsonlTokenizer jsonlTokenizer = new JsonlTokenizer(properties,
+          Integer.parseInt(parsedArguments.getString("workers")),
+          Integer.parseInt(parsedArguments.getString("queueSize")));
+      final BufferedReader jsonlReader = new BufferedReader(
+          new InputStreamReader(inputStream, "UTF-8"));
+      final long start = System.nanoTime();
+      try {
+        final long noDocs = jsonlTokenizer.tokenize(jsonlReader, bwriter);
+        final double seconds = (System.nanoTime() - start) / 1000000000.0;
+        System.err.printf(
+            "ixa-pipe-tok tokenized %d documents at %.2f documents per second.%n",
+            noDocs, noDocs / seconds);
+      } catch (final IOException e) {
+        bwriter.flush();
+        System.err.println("ERROR: " + e.getMessage());
+        System.exit(1);
+      }
+      jsonlReader.close();
+    } else if (noTok) {
       final BufferedReader noTokReader = new BufferedReader(
-          new InputStreamReader(System.in, "UTF-8"));
-      kaf = new KAFDocument(lang, kafVersion);
-      final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
-          "text", "ixa-pipe-tok-notok-" + lang, version + "-" + commit);
-      newLp.setBeginTimestamp();
-      Annotate.tokensToKAF(noTokReader, kaf);
-      newLp.setEndTimestamp();
-      bwriter.write(kaf.toString());
+          new InputStreamReader(inputStream, "UTF-8"));
+      if (outputFormat.equalsIgnoreCase("conll")) {
+        Annotate.tokensToCoNLL(noTokReader, bwriter,
+            !parsedArguments.getBoolean("offsets"));
+      } else if (outputFormat.equalsIgnoreCase("oneline")) {
+        Annotate.tokensToText(noTokReader, bwriter);
+      } else {
+        kaf = new KAFDocument(lang, kafVersion);
+        final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
+            "text", "ixa-pipe-tok-notok-" + lang, version + "-" + commit);
+        newLp.setBeginTimestamp();
+        Annotate.tokensToKAF(noTokReader, kaf);
+        newLp.setEndTimestamp();
+        bwriter.write(kaf.toString());
+      }
       noTokReader.close();
     } else {
       if (inputKafRaw) {
         final BufferedReader kafReader = new BufferedReader(
-            new InputStreamReader(System.in, "UTF-8"));
+            new InputStreamReader(inputStream, "UTF-8"));
         // read KAF from standard input
-        kaf = KAFDocument.createFromStream(kafReader);
-        final String text = kaf.getRawText();
+        final String text;
+        if (isNAFOutput(outputFormat) && splice) {
+          // the input is copied adding the text layer
+          splicer = new NAFSplicer(kafReader);
+          kaf = new KAFDocument(lang, kafVersion);
+          text = splicer.getRawText();
+        } else if (isNAFOutput(outputFormat)) {
+          kaf = KAFDocument.createFromStream(kafReader);
+          text = kaf.getRawText();
+        } else {
+          // only the raw layer is needed
+          kaf = null;
+          text = NAFRawReader.read(kafReader).getRawText();
+        }
         final StringReader stringReader = new StringReader(text);
         breader = new BufferedReader(stringReader);
       } else {
         kaf = new KAFDocument(lang, kafVersion);
-        breader = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        breader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
       }
-      final Annotate annotator = new Annotate(breader, properties);
-      if (outputFormat.equalsIgnoreCase("conll")) {
-        if (parsedArguments.getBoolean("offsets")) {
-          bwriter.write(annotator.tokenizeToCoNLL());
+      final int workers = Integer.parseInt(parsedArguments.getString("workers"));
+      if (workers > 0) {
+        final TokenizerPipeline pipeline = new TokenizerPipeline(properties,
+            workers, Integer.parseInt(parsedArguments.getString("queueSize")),
+            TokenizerPipeline.DEFAULT_CHUNK_SIZE);
+        final long start = System.nanoTime();
+        final long noTokens;
+        if (outputFormat.equalsIgnoreCase("conll")) {
+          noTokens = pipeline.tokenize(breader, Annotate.toCoNLL(bwriter,
+              !parsedArguments.getBoolean("offsets")));
+        } else if (outputFormat.equalsIgnoreCase("oneline")) {
+          noTokens = pipeline.tokenize(breader, Annotate.toText(bwriter));
         } else {
-          bwriter.write(annotator.tokenizeToCoNLLOffsets());
+          final KAFDocument.LinguisticProcessor newLp = kaf
+              .addLinguisticProcessor("text", "ixa-pipe-tok-" + lang, version
+                  + "-" + commit);
+          newLp.setBeginTimestamp();
+          noTokens = pipeline.tokenize(breader, Annotate.toKAF(kaf));
+          newLp.setEndTimestamp();
+          if (splicer != null) {
+            splicer.write(kaf, bwriter);
+          } else {
+            bwriter.write(kaf.toString());
+          }
         }
-      } else if (outputFormat.equalsIgnoreCase("oneline")) {
-        bwriter.write(annotator.tokenizeToText());
+        final double seconds = (System.nanoTime() - start) / 1000000000.0;
+        System.err.printf(
+            "ixa-pipe-tok tokenized %d tokens at %.2f tokens per second with %d workers.%n",
+            noTokens, noTokens / seconds, workers);
       } else {
-        final KAFDocument.LinguisticProcessor newLp = kaf
-            .addLinguisticProcessor("text", "ixa-pipe-tok-" + lang, version
-                + "-" + commit);
-        newLp.setBeginTimestamp();
-        annotator.tokenizeToKAF(kaf);
-        newLp.setEndTimestamp();
-        bwriter.write(kaf.toString());
+        final Annotate annotator = new Annotate(breader, properties);
+        if (outputFormat.equalsIgnoreCase("conll")) {
+          if (parsedArguments.getBoolean("offsets")) {
+            bwriter.write(annotator.tokenizeToCoNLL());
+          } else {
+            bwriter.write(annotator.tokenizeToCoNLLOffsets());
+          }
+        } else if (outputFormat.equalsIgnoreCase("oneline")) {
+          bwriter.write(annotator.tokenizeToText());
+        } else {
+          final KAFDocument.LinguisticProcessor newLp = kaf
+              .addLinguisticProcessor("text", "ixa-pipe-tok-" + lang, version
+                  + "-" + commit);
+          newLp.setBeginTimestamp();
+          annotator.tokenizeToKAF(kaf);
+          newLp.setEndTimestamp();
+          if (splicer != null) {
+            splicer.write(kaf, bwriter);
+          } else {
+            bwriter.write(kaf.toString());
+          }
+        }
       }
       breader.close();
     }
     bwriter.close();
+    if (profile) {
+      System.err.print("-> Rule profile:\n" + RuleProfiler.getReport());
+    }
   }
   
+  /**
+   * Whether the output is a NAF document, which keeps the layers of the input
+   * NAF document.
+   * @param outputFormat the output format
+   * @return true unless the output format is conll or oneline
+   */
+  static boolean isNAFOutput(final String outputFormat) {
+    return !outputFormat.equalsIgnoreCase("conll")
+        && !outputFormat.equalsIgnoreCase("oneline");
+  }
+
+  /**
+   * Benchmark the tokenizer on generated or given documents for each
+   * language.
+   * @throws IOException if the documents cannot be read
+   */
+  public final void bench() throws IOException {
+    final String langs = parsedArguments.getString("lang");
+    final String outputFormat = parsedArguments.getString("outputFormat");
+    final String corpus = parsedArguments.getString("corpus");
+    final boolean json = parsedArguments.getBoolean("json");
+    final int noDocuments = Integer.parseInt(parsedArguments.getString("documents"));
+    final int documentSize = Integer.parseInt(parsedArguments.getString("documentSize"));
+    final List<String> languages = new ArrayList<String>();
+    if (langs.equalsIgnoreCase("all")) {
+      languages.addAll(LanguagePacks.getLanguages());
+    } else {
+      for (final String lang : langs.split(",")) {
+        if (LanguagePacks.get(lang.trim()) == null) {
+          System.err.println("ERROR: No language pack for language " + lang
+              + "!!");
+          System.exit(1);
+        }
+        languages.add(lang.trim());
+      }
+    }
+    final Properties properties = setAnnotateProperties(languages.get(0),
+        parsedArguments.getString("normalize"), "no", "no",
+        Integer.toString(RuleBasedTokenizer.DEFAULT_MAX_SENTENCE_LENGTH),
+        Integer.toString(RuleBasedTokenizer.DEFAULT_SENTENCE_WORK_BUDGET));
+    final TokenizerBenchmark benchmark = new TokenizerBenchmark(properties,
+        outputFormat, Double.parseDouble(parsedArguments.getString("warmup")),
+        Double.parseDouble(parsedArguments.getString("duration")));
+
+    List<String> documents = null;
+    if (corpus != null) {
+      if (!new File(corpus).exists()) {
+        System.err.println("ERROR: Corpus " + corpus + " does not exist!!");
+        System.exit(1);
+      }
+      documents = new ArrayList<String>();
+      for (final File[] file : getFiles(Collections.singletonList(corpus))) {
+        documents.add(readFile(file[0]));
+      }
+      if (documents.isEmpty()) {
+        System.err.println("ERROR: No documents in " + corpus + "!!");
+        System.exit(1);
+      }
+    }
+    if (!json) {
+      System.out.println(TokenizerBenchmark.Result.getTextHeader());
+    }
+    for (final String lang : languages) {
+      final List<String> langDocuments = documents != null ? documents
+          : TokenizerBenchmark.generateCorpus(lang, noDocuments, documentSize,
+              lang.hashCode());
+      final TokenizerBenchmark.Result result = benchmark.run(lang,
+          langDocuments);
+      System.out.println(json ? result.toJson() : result.toText());
+    }
+  }
+
   /**
    * Set up the TCP socket for annotation.
    */
@@ -226,10 +438,52 @@ public class CLI {
     final String hardParagraph = parsedArguments.getString("hardParagraph");
     final String offsets = String.valueOf(parsedArguments.getBoolean("offsets"));
     final String outputFormat = parsedArguments.getString("outputFormat");
-    Properties serverProperties = setServerProperties(port, lang, normalize, untokenizable, kafversion, inputkaf, notok, outputFormat, offsets, hardParagraph);
+    final String maxSentenceLength = parsedArguments.getString("maxSentenceLength");
+    final String sentenceWorkBudget = parsedArguments.getString("sentenceWorkBudget");
+    Properties serverProperties = setServerProperties(port, lang, normalize, untokenizable, kafversion, inputkaf, notok, outputFormat, offsets, hardParagraph, maxSentenceLength, sentenceWorkBudget);
+    serverProperties.setProperty("splice", String.valueOf(parsedArguments.getBoolean("splice")));
+    serverProperties.setProperty("intern", String.valueOf(parsedArguments.getBoolean("intern")));
+    serverProperties.setProperty("profile", String.valueOf(parsedArguments.getBoolean("profile")));
+    serverProperties.setProperty("metricsPort", parsedArguments.getString("metricsPort"));
+    serverProperties.setProperty("keepAliveTimeout", parsedArguments.getString("keepAliveTimeout"));
+    serverProperties.setProperty("maxIdleConnections", parsedArguments.getString("maxIdleConnections"));
+    serverProperties.setProperty("warmupIterations", parsedArguments.getString("warmupIterations"));
+    serverProperties.setProperty("warmupSeconds", parsedArguments.getString("warmupSeconds"));
+    setAdmissionProperties(serverProperties);
     new RuleBasedTokenizerServer(serverProperties);
   }
   
+  /**
+   * Start the HTTP server for annotation.
+   */
+  public final void http() {
+
+    final String port = parsedArguments.getString("port");
+    final String lang = parsedArguments.getString("lang");
+    final String normalize = parsedArguments.getString("normalize");
+    final String untokenizable = parsedArguments.getString("untokenizable");
+    final String kafversion = parsedArguments.getString("kafversion");
+    final String hardParagraph = parsedArguments.getString("hardParagraph");
+    final String offsets = String.valueOf(parsedArguments.getBoolean("offsets"));
+    final String outputFormat = parsedArguments.getString("outputFormat");
+    final String maxSentenceLength = parsedArguments.getString("maxSentenceLength");
+    final String sentenceWorkBudget = parsedArguments.getString("sentenceWorkBudget");
+    final Properties serverProperties = setServerProperties(port, lang, normalize, untokenizable, kafversion, "false", "false", outputFormat, offsets, hardParagraph, maxSentenceLength, sentenceWorkBudget);
+    serverProperties.setProperty("splice", String.valueOf(parsedArguments.getBoolean("splice")));
+    serverProperties.setProperty("intern", String.valueOf(parsedArguments.getBoolean("intern")));
+    setAdmissionProperties(serverProperties);
+    try {
+      new RuleBasedTokenizerHttpServer(serverProperties).start();
+    } catch (final IllegalArgumentException e) {
+      System.err.println("ERROR: Invalid server options: " + e.getMessage());
+      System.exit(1);
+    } catch (final IOException e) {
+      System.err.println("ERROR: Could not start the HTTP server on port "
+          + port + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
   /**
    * The client to query the TCP server for annotation.
    * 
@@ -243,11 +497,19 @@ public class CLI {
 
     String host = parsedArguments.getString("host");
     String port = parsedArguments.getString("port");
+    final List<String> inputs = parsedArguments.getList("inputs");
+    if (!inputs.isEmpty() || parsedArguments.getBoolean("jsonl")
+        || parsedArguments.getString("servers") != null) {
+      clientBatch(inputs, outputStream);
+      return;
+    }
+    if (port == null) {
+      System.err.println("ERROR: Choose the server with --port or --servers!");
+      System.exit(1);
+    }
     try (Socket socketClient = new Socket(host, Integer.parseInt(port));
-        BufferedReader inFromUser = new BufferedReader(new InputStreamReader(
-            System.in, "UTF-8"));
         BufferedWriter outToUser = new BufferedWriter(new OutputStreamWriter(
-            System.out, "UTF-8"));
+            outputStream, "UTF-8"));
         BufferedWriter outToServer = new BufferedWriter(new OutputStreamWriter(
             socketClient.getOutputStream(), "UTF-8"));
         BufferedReader inFromServer = new BufferedReader(new InputStreamReader(
@@ -255,9 +517,20 @@ public class CLI {
 
       // send data to server socket
       StringBuilder inText = new StringBuilder();
-      String line;
-      while ((line = inFromUser.readLine()) != null) {
-        inText.append(line).append("\n");
+      if (parsedArguments.getBoolean("status")) {
+        inText.append(RuleBasedTokenizerServer.STATUS).append("\n");
+      } else if (parsedArguments.getBoolean("profile")) {
+        inText.append(RuleBasedTokenizerServer.PROFILE).append("\n");
+      } else {
+        // the input is read only here, as its compression is detected
+        final BufferedReader inFromUser = new BufferedReader(
+            new InputStreamReader(CompressedStreams.decompress(inputStream),
+                "UTF-8"));
+        String line;
+        while ((line = inFromUser.readLine()) != null) {
+          inText.append(line).append("\n");
+        }
+        inFromUser.close();
       }
       inText.append("<ENDOFDOCUMENT>").append("\n");
       outToServer.write(inText.toString());
@@ -285,11 +558,261 @@ public class CLI {
   }
 
 
+  /**
+   * Send many documents through a pool of connections to one or more TCP
+   * servers, writing the results in the order of the documents.
+   * 
+   * @param inputs
+   *          the files and directories, standard input if empty
+   * @param outputStream
+   *          the output unless there is an output directory
+   */
+  private void clientBatch(final List<String> inputs,
+      final OutputStream outputStream) {
+    final boolean jsonl = parsedArguments.getBoolean("jsonl");
+    final String outputDir = parsedArguments.getString("outputDir");
+    try {
+      final List<InetSocketAddress> servers = getServers();
+      final RuleBasedTokenizerClient client = new RuleBasedTokenizerClient(
+          servers, Integer.parseInt(parsedArguments.getString("concurrency")),
+          Integer.parseInt(parsedArguments.getString("pipelineDepth")));
+      final BufferedWriter outToUser = new BufferedWriter(
+          new OutputStreamWriter(outputStream, "UTF-8"));
+      Iterator<RuleBasedTokenizerClient.Document> documents;
+      if (jsonl) {
+        documents = new JsonlDocuments(inputs.isEmpty() ? new BufferedReader(
+            new InputStreamReader(CompressedStreams.decompress(System.in),
+                "UTF-8")) : null, getFiles(inputs));
+      } else if (inputs.isEmpty()) {
+        documents = Collections.singletonList(
+            new RuleBasedTokenizerClient.Document("-", CharStreams
+                .toString(new InputStreamReader(CompressedStreams
+                    .decompress(System.in), "UTF-8")))).iterator();
+      } else {
+        documents = new FileDocuments(getFiles(inputs));
+      }
+      client.tokenize(documents, new RuleBasedTokenizerClient.ResultHandler() {
+        public void handle(final RuleBasedTokenizerClient.Document document,
+            final String result) throws IOException {
+          if (jsonl) {
+            final StringBuilder sb = new StringBuilder("{\"id\":");
+            if (document.getId() instanceof String) {
+              Json.appendString(sb, (String) document.getId());
+            } else {
+              sb.append(document.getId());
+            }
+            Json.appendString(sb.append(",\"result\":"), result).append("}\n");
+            outToUser.write(sb.toString());
+          } else if (outputDir != null && document.getId() instanceof File[]) {
+            final File[] fileAndRoot = (File[]) document.getId();
+            final File outputFile = new File(outputDir, fileAndRoot[1].toURI()
+                .relativize(fileAndRoot[0].toURI()).getPath());
+            Files.createParentDirs(outputFile);
+            final Writer writer = CompressedStreams.newWriter(outputFile);
+            try {
+              writer.write(result);
+            } finally {
+              writer.close();
+            }
+          } else {
+            outToUser.write(result);
+            outToUser.write("\n");
+          }
+        }
+      });
+      outToUser.close();
+    } catch (final IllegalArgumentException e) {
+      System.err.println("ERROR: " + e.getMessage());
+      System.exit(1);
+    } catch (final IOException e) {
+      System.err.println("ERROR: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Get the servers of the --servers option or else of --host and --port.
+   * @return the server addresses
+   */
+  private List<InetSocketAddress> getServers() {
+    final List<InetSocketAddress> servers = new ArrayList<InetSocketAddress>();
+    final String serverList = parsedArguments.getString("servers");
+    if (serverList == null) {
+      final String port = parsedArguments.getString("port");
+      if (port == null) {
+        throw new IllegalArgumentException("Choose the server with --port or --servers!");
+      }
+      servers.add(new InetSocketAddress(parsedArguments.getString("host"),
+          Integer.parseInt(port)));
+      return servers;
+    }
+    for (final String server : serverList.split(",")) {
+      final int colon = server.lastIndexOf(':');
+      if (colon <= 0) {
+        throw new IllegalArgumentException("Server " + server
+            + " is not host:port!");
+      }
+      servers.add(new InetSocketAddress(server.substring(0, colon).trim(),
+          Integer.parseInt(server.substring(colon + 1).trim())));
+    }
+    return servers;
+  }
+
+  /**
+   * Expand the directories of the inputs, in alphabetical order.
+   * @param inputs the files and directories
+   * @return each file with the input it comes from
+   */
+  private static List<File[]> getFiles(final List<String> inputs) {
+    final List<File[]> files = new ArrayList<File[]>();
+    for (final String input : inputs) {
+      final File root = new File(input);
+      if (!root.exists()) {
+        throw new IllegalArgumentException("Input " + input + " does not exist!");
+      }
+      addFiles(root, root.isDirectory() ? root : root.getAbsoluteFile()
+          .getParentFile(), files);
+    }
+    return files;
+  }
+
+  private static void addFiles(final File file, final File root,
+      final List<File[]> files) {
+    if (file.isDirectory()) {
+      final File[] children = file.listFiles();
+      Arrays.sort(children);
+      for (final File child : children) {
+        addFiles(child, root, files);
+      }
+    } else {
+      files.add(new File[] { file.getAbsoluteFile(), root.getAbsoluteFile() });
+    }
+  }
+
+  /**
+   * Read a file in UTF-8, decompressing it if needed.
+   * @param file the file
+   * @return the text
+   * @throws IOException if the file cannot be read
+   */
+  private static String readFile(final File file) throws IOException {
+    final Reader reader = CompressedStreams.newReader(file);
+    try {
+      return CharStreams.toString(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Documents read lazily from files, identified by the file and its input.
+   */
+  private static class FileDocuments implements
+      Iterator<RuleBasedTokenizerClient.Document> {
+    private final Iterator<File[]> files;
+
+    FileDocuments(final List<File[]> files) {
+      this.files = files.iterator();
+    }
+
+    public boolean hasNext() {
+      return files.hasNext();
+    }
+
+    public RuleBasedTokenizerClient.Document next() {
+      final File[] fileAndRoot = files.next();
+      try {
+        return new RuleBasedTokenizerClient.Document(fileAndRoot,
+            readFile(fileAndRoot[0]));
+      } catch (final IOException e) {
+        throw new IllegalStateException("Could not read " + fileAndRoot[0], e);
+      }
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Documents read lazily from JSON lines with text and optional id members.
+   */
+  private static class JsonlDocuments implements
+      Iterator<RuleBasedTokenizerClient.Document> {
+    private final Iterator<File[]> files;
+    private BufferedReader reader;
+    private RuleBasedTokenizerClient.Document next;
+    private long noLines;
+
+    JsonlDocuments(final BufferedReader reader, final List<File[]> files) {
+      this.reader = reader;
+      this.files = files.iterator();
+    }
+
+    public boolean hasNext() {
+      try {
+        while (next == null) {
+          if (reader == null) {
+            if (!files.hasNext()) {
+              return false;
+            }
+            reader = CompressedStreams.newReader(files.next()[0]);
+          }
+          final String line = reader.readLine();
+          if (line == null) {
+            reader.close();
+            reader = null;
+            continue;
+          }
+          noLines++;
+          if (!line.trim().isEmpty()) {
+            next = parse(line);
+          }
+        }
+        return true;
+      } catch (final IOException e) {
+        throw new IllegalStateException("Could not read the JSON lines", e);
+      }
+    }
+
+    private RuleBasedTokenizerClient.Document parse(final String line) {
+      Object json;
+      try {
+        json = Json.parse(line);
+      } catch (final ParseException e) {
+        throw new IllegalArgumentException("Line " + noLines + ": "
+            + e.getMessage());
+      }
+      if (!(json instanceof Map) || !(((Map<?, ?>) json).get("text") instanceof String)) {
+        throw new IllegalArgumentException("Line " + noLines
+            + " is not a JSON object with text!");
+      }
+      final Map<?, ?> fields = (Map<?, ?>) json;
+      final Object id = fields.get("id") == null ? Long.valueOf(noLines)
+          : fields.get("id");
+      return new RuleBasedTokenizerClient.Document(id,
+          (String) fields.get("text"));
+    }
+
+    public RuleBasedTokenizerClient.Document next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final RuleBasedTokenizerClient.Document document = next;
+      next = null;
+      return document;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   private void loadAnnotateParameters() {
     // specify language (for language dependent treatment of apostrophes)
     annotateParser
         .addArgument("-l", "--lang")
-        .choices("de", "en", "es", "eu", "fr", "gl", "it", "nl")
+        .choices(LanguagePacks.getLanguages())
         .required(true)
         .help(
             "It is REQUIRED to choose a language to perform annotation with ixa-pipe-tok.\n");
@@ -325,11 +848,26 @@ public class CLI {
         .action(Arguments.storeTrue())
         .help(
             "Use this option if input is a KAF/NAF document with <raw> layer.\n");
+    annotateParser
+        .addArgument("--splice")
+        .action(Arguments.storeTrue())
+        .help(
+            "With --inputkaf and NAF output, copy the input document adding the text layer instead of serializing it again.\n");
     annotateParser
         .addArgument("--notok")
         .action(Arguments.storeTrue())
         .help(
             "Build a KAF document from an already tokenized sentence per line file.\n");
+    annotateParser
+        .addArgument("--intern")
+        .action(Arguments.storeTrue())
+        .help(
+            "Share one instance of repeated token values, reporting the memory saved.\n");
+    annotateParser
+        .addArgument("--profile")
+        .action(Arguments.storeTrue())
+        .help(
+            "Report the time, invocations, matches and characters processed by each rule at exit.\n");
     annotateParser
         .addArgument("--hardParagraph")
         .choices("yes", "no")
@@ -339,6 +877,38 @@ public class CLI {
     annotateParser.addArgument("--kafversion")
          .setDefault("v1.naf")
         .help("Set kaf document version.\n");
+    annotateParser.addArgument("--inputFormat")
+        .choices("text", "jsonl")
+        .setDefault("text")
+        .required(false)
+        .help("Read plain text or NAF, or JSON lines, each a document with text and optional id and lang members, writing "
+            + "a JSON line with the id, lang and sentences of tokens with offsets per document.\n");
+    annotateParser.addArgument("--input")
+        .required(false)
+        .help("Read this file instead of standard input; gzip input is detected and decompressed.\n");
+    annotateParser.addArgument("--output")
+        .required(false)
+        .help("Write this file instead of standard output, gzip compressed if it ends with .gz.\n");
+    annotateParser
+        .addArgument("--maxSentenceLength")
+        .setDefault(Integer.toString(RuleBasedTokenizer.DEFAULT_MAX_SENTENCE_LENGTH))
+        .required(false)
+        .help("Longer sentences are tokenized splitting only whitespace and punctuation; 0 for no limit.\n");
+    annotateParser
+        .addArgument("--sentenceWorkBudget")
+        .setDefault(Integer.toString(RuleBasedTokenizer.DEFAULT_SENTENCE_WORK_BUDGET))
+        .required(false)
+        .help("Characters the rules may read per character of a sentence before it is tokenized splitting only whitespace and punctuation; 0 for no limit.\n");
+    annotateParser
+        .addArgument("--workers")
+        .setDefault("0")
+        .required(false)
+        .help("Tokenize in a pipeline of a reader, a segmenter, this many tokenizer threads and an ordered writer; 0 to tokenize the whole text at once.\n");
+    annotateParser
+        .addArgument("--queueSize")
+        .setDefault(Integer.toString(TokenizerPipeline.DEFAULT_QUEUE_SIZE))
+        .required(false)
+        .help("Chunks of text read and batches of sentences segmented ahead of the writer in the pipeline.\n");
   }
   
   /**
@@ -352,7 +922,7 @@ public class CLI {
     // specify language (for language dependent treatment of apostrophes)
     serverParser
         .addArgument("-l", "--lang")
-        .choices("de", "en", "es", "eu", "fr", "gl", "it", "nl")
+        .choices(LanguagePacks.getLanguages())
         .required(true)
         .help(
             "It is REQUIRED to choose a language to perform annotation with ixa-pipe-tok.\n");
@@ -388,11 +958,46 @@ public class CLI {
         .action(Arguments.storeTrue())
         .help(
             "Use this option if input is a KAF/NAF document with <raw> layer.\n");
+    serverParser
+        .addArgument("--splice")
+        .action(Arguments.storeTrue())
+        .help(
+            "With --inputkaf and NAF output, copy the input document adding the text layer instead of serializing it again.\n");
     serverParser
         .addArgument("--notok")
         .action(Arguments.storeTrue())
         .help(
             "Build a KAF document from an already tokenized sentence per line file.\n");
+    serverParser
+        .addArgument("--intern")
+        .action(Arguments.storeTrue())
+        .help(
+            "Share one instance of repeated token values, reporting the memory saved.\n");
+    serverParser
+        .addArgument("--profile")
+        .action(Arguments.storeTrue())
+        .help(
+            "Report the time, invocations, matches and characters processed by each rule at exit or on a <PROFILE> request.\n");
+    serverParser.addArgument("--warmupIterations")
+        .required(false)
+        .setDefault(Integer.toString(ServerWarmup.DEFAULT_ITERATIONS))
+        .help("Maximum iterations over the warm up corpus before listening, fewer if the throughput levels off (0 for no warm up).\n");
+    serverParser.addArgument("--warmupSeconds")
+        .required(false)
+        .setDefault(Integer.toString(ServerWarmup.DEFAULT_SECONDS))
+        .help("Maximum seconds of warm up before listening.\n");
+    serverParser.addArgument("--keepAliveTimeout")
+        .required(false)
+        .setDefault(Integer.toString(RuleBasedTokenizerServer.DEFAULT_KEEP_ALIVE_TIMEOUT))
+        .help("Milliseconds a kept alive connection waits for its next document before it is closed (0 for ever).\n");
+    serverParser.addArgument("--maxIdleConnections")
+        .required(false)
+        .setDefault(Integer.toString(RuleBasedTokenizerServer.DEFAULT_MAX_IDLE_CONNECTIONS))
+        .help("Maximum kept alive connections waiting for their next document; beyond them a connection keeps its permit for one more document and is closed after its result.\n");
+    serverParser.addArgument("--metricsPort")
+        .required(false)
+        .setDefault("0")
+        .help("Serve metrics in the Prometheus text format at this port, path /metrics (0 for none).\n");
     serverParser
         .addArgument("--hardParagraph")
         .choices("yes", "no")
@@ -402,29 +1007,202 @@ public class CLI {
     serverParser.addArgument("--kafversion")
          .setDefault("v1.naf")
         .help("Set kaf document version.\n");
+    serverParser
+        .addArgument("--maxSentenceLength")
+        .setDefault(Integer.toString(RuleBasedTokenizer.DEFAULT_MAX_SENTENCE_LENGTH))
+        .required(false)
+        .help("Longer sentences are tokenized splitting only whitespace and punctuation; 0 for no limit.\n");
+    serverParser
+        .addArgument("--sentenceWorkBudget")
+        .setDefault(Integer.toString(RuleBasedTokenizer.DEFAULT_SENTENCE_WORK_BUDGET))
+        .required(false)
+        .help("Characters the rules may read per character of a sentence before it is tokenized splitting only whitespace and punctuation; 0 for no limit.\n");
+    loadAdmissionParameters(serverParser);
   }
   
   private void loadClientParameters() {
     
     clientParser.addArgument("-p", "--port")
-        .required(true)
+        .required(false)
         .help("Port of the TCP server.\n");
     clientParser.addArgument("--host")
         .required(false)
         .setDefault("localhost")
         .help("Hostname or IP where the TCP server is running.\n");
+    clientParser.addArgument("--status")
+        .action(Arguments.storeTrue())
+        .help("Get the queue depth and wait times of the server instead of sending a document.\n");
+    clientParser.addArgument("--profile")
+        .action(Arguments.storeTrue())
+        .help("Get the rule profile of a server started with --profile instead of sending a document.\n");
+    clientParser.addArgument("inputs")
+        .nargs("*")
+        .help("Files or directories to tokenize, each file a document; standard input if none.\n");
+    clientParser.addArgument("--jsonl")
+        .action(Arguments.storeTrue())
+        .help("Read JSON lines with text and id members and write JSON lines with id and result.\n");
+    clientParser.addArgument("--servers")
+        .required(false)
+        .help("Comma separated host:port list of servers sharing the documents.\n");
+    clientParser.addArgument("--concurrency")
+        .setDefault("4")
+        .help("Connections to the servers.\n");
+    clientParser.addArgument("--pipelineDepth")
+        .setDefault("2")
+        .help("Documents sent through a connection before reading its results.\n");
+    clientParser.addArgument("--outputDir")
+        .required(false)
+        .help("Write the result of each input file to this directory instead of standard output.\n");
+    clientParser.addArgument("--output")
+        .required(false)
+        .help("Write this file instead of standard output, gzip compressed if it ends with .gz.\n");
   }
 
-  private Properties setAnnotateProperties(final String lang, final String normalize, final String untokenizable, final String hardParagraph) {
+  /**
+   * Create the parameters available for benchmarking.
+   */
+  private void loadBenchParameters() {
+    benchParser.addArgument("-l", "--lang")
+        .setDefault("all")
+        .help("Comma separated languages to benchmark, all by default.\n");
+    benchParser.addArgument("-o", "--outputFormat")
+        .choices("naf", "conll", "oneline")
+        .setDefault("naf")
+        .help("Output format whose annotation path is measured.\n");
+    benchParser.addArgument("-n", "--normalize")
+        .choices("alpino", "ancora", "ctag", "default", "ptb", "tiger",
+            "tutpenn")
+        .setDefault("default")
+        .help("Set normalization method according to corpus.\n");
+    benchParser.addArgument("--corpus")
+        .required(false)
+        .help("File or directory of plain text files, each file a document, used for every language instead of generated documents.\n");
+    benchParser.addArgument("--documents")
+        .setDefault(Integer.toString(TokenizerBenchmark.DEFAULT_DOCUMENTS))
+        .help("Number of generated documents per language.\n");
+    benchParser.addArgument("--documentSize")
+        .setDefault(Integer.toString(TokenizerBenchmark.DEFAULT_DOCUMENT_SIZE))
+        .help("Characters of each generated document.\n");
+    benchParser.addArgument("--warmup")
+        .setDefault("5")
+        .help("Seconds tokenizing before measuring, for each language.\n");
+    benchParser.addArgument("--duration")
+        .setDefault("10")
+        .help("Seconds measured for each language.\n");
+    benchParser.addArgument("--json")
+        .action(Arguments.storeTrue())
+        .help("Print the results as JSON lines.\n");
+  }
+
+  private void loadAdmissionParameters(final Subparser parser) {
+    parser
+        .addArgument("--maxConcurrentRequests")
+        .setDefault(Integer.toString(AdmissionController.getDefaultMaxConcurrentRequests()))
+        .required(false)
+        .help("Documents tokenized at the same time; it defaults to the number of processors.\n");
+    parser
+        .addArgument("--maxQueuedRequests")
+        .setDefault(Integer.toString(AdmissionController.DEFAULT_MAX_QUEUED_REQUESTS))
+        .required(false)
+        .help("Documents waiting their turn; the server answers busy to the rest.\n");
+    parser
+        .addArgument("--maxBytesInFlight")
+        .setDefault(Long.toString(AdmissionController.DEFAULT_MAX_BYTES_IN_FLIGHT))
+        .required(false)
+        .help("Bytes of the documents tokenized at the same time.\n");
+    parser
+        .addArgument("--queueTimeout")
+        .setDefault(Long.toString(AdmissionController.DEFAULT_QUEUE_TIMEOUT))
+        .required(false)
+        .help("Milliseconds a document waits its turn before the server answers busy.\n");
+  }
+
+  /**
+   * Create the available parameters for the HTTP server. Input format,
+   * language, output format and offsets can be set per request.
+   */
+  private void loadHttpParameters() {
+
+    httpParser.addArgument("-p", "--port")
+        .required(true)
+        .help("Port to be assigned to the HTTP server.\n");
+    httpParser
+        .addArgument("-l", "--lang")
+        .choices(LanguagePacks.getLanguages())
+        .required(true)
+        .help(
+            "Default language of the requests without lang parameter.\n");
+    httpParser
+        .addArgument("-n", "--normalize")
+        .choices("alpino", "ancora", "ctag", "default", "ptb", "tiger",
+            "tutpenn")
+        .required(false)
+        .setDefault("default")
+        .help(
+            "Set normalization method according to corpus; the default option does not escape "
+                + "brackets or forward slashes. See README for more details.\n");
+    httpParser
+        .addArgument("-u","--untokenizable")
+        .choices("yes", "no")
+        .setDefault("no")
+        .required(false)
+        .help("Print untokenizable characters.\n");
+    httpParser
+        .addArgument("-o", "--outputFormat")
+        .choices("conll", "oneline", "naf")
+        .setDefault("naf")
+        .required(false)
+        .help(
+            "Default output format of the requests without outputFormat parameter.\n");
+    httpParser
+        .addArgument("--offsets")
+        .action(Arguments.storeFalse())
+        .help(
+            "Do not print offset and lenght information of tokens in CoNLL format.\n");
+    httpParser
+        .addArgument("--splice")
+        .action(Arguments.storeTrue())
+        .help(
+            "With NAF input and output, copy the input document adding the text layer instead of serializing it again.\n");
+    httpParser
+        .addArgument("--intern")
+        .action(Arguments.storeTrue())
+        .help(
+            "Share one instance of repeated token values, reporting the memory saved.\n");
+    httpParser
+        .addArgument("--hardParagraph")
+        .choices("yes", "no")
+        .setDefault("no")
+        .required(false)
+        .help("Do not segment paragraphs. Ever.\n");
+    httpParser.addArgument("--kafversion")
+         .setDefault("v1.naf")
+        .help("Set kaf document version.\n");
+    httpParser
+        .addArgument("--maxSentenceLength")
+        .setDefault(Integer.toString(RuleBasedTokenizer.DEFAULT_MAX_SENTENCE_LENGTH))
+        .required(false)
+        .help("Longer sentences are tokenized splitting only whitespace and punctuation; 0 for no limit.\n");
+    httpParser
+        .addArgument("--sentenceWorkBudget")
+        .setDefault(Integer.toString(RuleBasedTokenizer.DEFAULT_SENTENCE_WORK_BUDGET))
+        .required(false)
+        .help("Characters the rules may read per character of a sentence before it is tokenized splitting only whitespace and punctuation; 0 for no limit.\n");
+    loadAdmissionParameters(httpParser);
+  }
+
+  private Properties setAnnotateProperties(final String lang, final String normalize, final String untokenizable, final String hardParagraph, final String maxSentenceLength, final String sentenceWorkBudget) {
     final Properties annotateProperties = new Properties();
     annotateProperties.setProperty("language", lang);
     annotateProperties.setProperty("normalize", normalize);
     annotateProperties.setProperty("untokenizable", untokenizable);
     annotateProperties.setProperty("hardParagraph", hardParagraph);
+    annotateProperties.setProperty("maxSentenceLength", maxSentenceLength);
+    annotateProperties.setProperty("sentenceWorkBudget", sentenceWorkBudget);
     return annotateProperties;
   }
     
-    private Properties setServerProperties(final String port, final String lang, final String normalize, final String untokenizable, final String kafversion, final String inputkaf, final String notok, final String outputFormat, final String offsets, final String hardParagraph) {
+    private Properties setServerProperties(final String port, final String lang, final String normalize, final String untokenizable, final String kafversion, final String inputkaf, final String notok, final String outputFormat, final String offsets, final String hardParagraph, final String maxSentenceLength, final String sentenceWorkBudget) {
       final Properties serverProperties = new Properties();
       serverProperties.setProperty("port", port);
       serverProperties.setProperty("language", lang);
@@ -436,7 +1214,16 @@ public class CLI {
       serverProperties.setProperty("outputFormat", outputFormat);
       serverProperties.setProperty("offsets", offsets);
       serverProperties.setProperty("hardParagraph", hardParagraph);
+      serverProperties.setProperty("maxSentenceLength", maxSentenceLength);
+      serverProperties.setProperty("sentenceWorkBudget", sentenceWorkBudget);
       return serverProperties;
   }
 
+  private void setAdmissionProperties(final Properties serverProperties) {
+    serverProperties.setProperty("maxConcurrentRequests", parsedArguments.getString("maxConcurrentRequests"));
+    serverProperties.setProperty("maxQueuedRequests", parsedArguments.getString("maxQueuedRequests"));
+    serverProperties.setProperty("maxBytesInFlight", parsedArguments.getString("maxBytesInFlight"));
+    serverProperties.setProperty("queueTimeout", parsedArguments.getString("queueTimeout"));
+  }
+
 }
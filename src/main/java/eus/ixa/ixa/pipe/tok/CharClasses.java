@@ -0,0 +1,239 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+
+/**
+ * Character classes used by the hand written rules of the segmenter, the
+ * tokenizer and the normalizer, precomputed for the Basic Multilingual Plane
+ * in a table of flags; supplementary code points are classified with
+ * {@link Character}. The Unicode classes have the meaning they have in
+ * patterns compiled with {@link java.util.regex.Pattern#UNICODE_CHARACTER_CLASS}
+ * and the punctuation classes are those of the segmenter and tokenizer
+ * patterns.
+ */
+public final class CharClasses {
+
+  /**
+   * \p{Alpha}.
+   */
+  public static final int ALPHA = 1;
+  /**
+   * \p{Lu}.
+   */
+  public static final int UPPER = 1 << 1;
+  /**
+   * \p{Lower}.
+   */
+  public static final int LOWER = 1 << 2;
+  /**
+   * \p{Digit}.
+   */
+  public static final int DIGIT = 1 << 3;
+  /**
+   * Letters and digits, as {@link Character#isLetterOrDigit(int)}.
+   */
+  public static final int LETTER_OR_DIGIT = 1 << 4;
+  /**
+   * \s.
+   */
+  public static final int WHITESPACE = 1 << 5;
+  /**
+   * Whitespace and the characters removed by the asciiHex and
+   * generalBlankPunctuation rules of the tokenizer.
+   */
+  public static final int BLANK = 1 << 6;
+  /**
+   * {@link RuleBasedSegmenter#INITIAL_PUNCT}.
+   */
+  public static final int INITIAL_PUNCT = 1 << 7;
+  /**
+   * {@link RuleBasedSegmenter#FINAL_PUNCT}.
+   */
+  public static final int FINAL_PUNCT = 1 << 8;
+  /**
+   * Punctuation which does not start a sentence, after which a period is not
+   * split by the {@link NonPeriodBreaker}.
+   */
+  public static final int NON_STARTER_PUNCT = 1 << 9;
+
+  private static final short[] BMP = new short[Character.MAX_VALUE + 1];
+  static {
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      BMP[c] = (short) compute(c);
+    }
+    addAll(RuleBasedSegmenter.INITIAL_PUNCT, INITIAL_PUNCT);
+    addAll(RuleBasedSegmenter.FINAL_PUNCT, FINAL_PUNCT);
+    addAll("[\\!#\\$%&\\(\\)\\*\\+,-\\/:;=>\\?@\\[\\\\\\]\\^\\{\\|\\}~]",
+        NON_STARTER_PUNCT);
+  }
+
+  private CharClasses() {
+  }
+
+  /**
+   * Compute the Unicode classes of a code point.
+   */
+  private static int compute(final int cp) {
+    int flags = 0;
+    if (Character.isAlphabetic(cp)) {
+      flags |= ALPHA;
+    }
+    if (Character.getType(cp) == Character.UPPERCASE_LETTER) {
+      flags |= UPPER;
+    }
+    if (Character.isLowerCase(cp)) {
+      flags |= LOWER;
+    }
+    if (Character.isDigit(cp)) {
+      flags |= DIGIT;
+    }
+    if (Character.isLetterOrDigit(cp)) {
+      flags |= LETTER_OR_DIGIT;
+    }
+    final boolean whiteSpace = cp >= '\t' && cp <= '\r' || cp == '\u0085'
+        || Character.isSpaceChar(cp);
+    if (whiteSpace) {
+      flags |= WHITESPACE;
+    }
+    if (cp <= '\u0020' || cp >= '\u007F' && cp <= '\u00A0'
+        || cp >= '\u2000' && cp <= '\u200F' || cp >= '\u2028'
+        && cp <= '\u202F' || cp >= '\u205F' && cp <= '\u206F'
+        || Character.isWhitespace(cp)) {
+      flags |= BLANK;
+    }
+    return flags;
+  }
+
+  /**
+   * Add a flag to the characters of a bracketed character class without
+   * negation, made of characters, escaped characters and ranges.
+   */
+  private static void addAll(final String characterClass, final int flag) {
+    final int end = characterClass.length() - 1;
+    int previous = -1;
+    for (int i = 1; i < end; i++) {
+      char c = characterClass.charAt(i);
+      if (c == '-' && previous != -1 && i + 1 < end) {
+        c = characterClass.charAt(++i);
+        if (c == '\\') {
+          c = characterClass.charAt(++i);
+        }
+        for (int r = previous + 1; r <= c; r++) {
+          BMP[r] |= flag;
+        }
+        previous = -1;
+        continue;
+      }
+      if (c == '\\') {
+        c = characterClass.charAt(++i);
+      }
+      BMP[c] |= flag;
+      previous = c;
+    }
+  }
+
+  /**
+   * Whether a code point belongs to any of the classes.
+   * @param cp the code point
+   * @param classes the classes, joined with |
+   * @return true if the code point is in some class
+   */
+  public static boolean is(final int cp, final int classes) {
+    if (cp <= Character.MAX_VALUE) {
+      return (BMP[cp] & classes) != 0;
+    }
+    // the punctuation classes are in the BMP
+    return (compute(cp) & classes) != 0;
+  }
+
+  public static boolean isAlpha(final int cp) {
+    return is(cp, ALPHA);
+  }
+
+  public static boolean isUpper(final int cp) {
+    return is(cp, UPPER);
+  }
+
+  public static boolean isLower(final int cp) {
+    return is(cp, LOWER);
+  }
+
+  public static boolean isDigit(final int cp) {
+    return is(cp, DIGIT);
+  }
+
+  /**
+   * \p{Alpha} or \p{Digit}.
+   * @param cp the code point
+   * @return true if the code point is alphanumeric
+   */
+  public static boolean isAlphaNumeric(final int cp) {
+    return is(cp, ALPHA | DIGIT);
+  }
+
+  public static boolean isLetterOrDigit(final int cp) {
+    return is(cp, LETTER_OR_DIGIT);
+  }
+
+  public static boolean isWhiteSpace(final int cp) {
+    return is(cp, WHITESPACE);
+  }
+
+  public static boolean isBlank(final int cp) {
+    return is(cp, BLANK);
+  }
+
+  public static boolean isInitialPunct(final int cp) {
+    return is(cp, INITIAL_PUNCT);
+  }
+
+  public static boolean isFinalPunct(final int cp) {
+    return is(cp, FINAL_PUNCT);
+  }
+
+  public static boolean isNonStarterPunct(final int cp) {
+    return is(cp, NON_STARTER_PUNCT);
+  }
+
+  /**
+   * Whether a string contains a code point of any of the classes.
+   * @param string the string
+   * @param classes the classes, joined with |
+   * @return true if some code point is in some class
+   */
+  public static boolean contains(final String string, final int classes) {
+    for (int i = 0; i < string.length();) {
+      final int cp = string.codePointAt(i);
+      if (is(cp, classes)) {
+        return true;
+      }
+      i += Character.charCount(cp);
+    }
+    return false;
+  }
+
+  /**
+   * Whether a string starts with a code point of any of the classes.
+   * @param string the string
+   * @param classes the classes, joined with |
+   * @return true if the first code point is in some class
+   */
+  public static boolean startsWith(final String string, final int classes) {
+    return !string.isEmpty() && is(string.codePointAt(0), classes);
+  }
+
+}
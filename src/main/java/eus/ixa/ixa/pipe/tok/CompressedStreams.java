@@ -0,0 +1,553 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Compressed input and output. Compressed input is detected by its magic
+ * bytes and compressed output is chosen by the extension of the file name.
+ * Decompression runs in a thread of its own reading ahead of the consumer,
+ * and compression in a thread of its own behind the producer, both handing
+ * over blocks through a bounded queue.
+ * 
+ * Gzip, including concatenated members, is supported through the JDK. Other
+ * formats are recognized to report them, as no pure Java implementation is
+ * bundled.
+ */
+public final class CompressedStreams {
+
+  /**
+   * Size of the blocks handed over between threads.
+   */
+  public static final int BLOCK_SIZE = 64 * 1024;
+  /**
+   * Blocks read ahead or waiting to be written.
+   */
+  public static final int QUEUE_SIZE = 16;
+  /**
+   * A magic byte which is a digit from 1 to 9.
+   */
+  private static final int DIGIT = -1;
+  /**
+   * The longest magic bytes.
+   */
+  private static final int MAGIC_LENGTH = 10;
+
+  /**
+   * The compression formats.
+   */
+  public enum Codec {
+    NONE(null, null), GZIP("gzip", ".gz", new int[] { 0x1f, 0x8b }), ZSTD(
+        "zstd", ".zst", new int[] { 0x28, 0xb5, 0x2f, 0xfd }), XZ("xz", ".xz",
+        new int[] { 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00 }),
+    // "BZh", the block size and the magic of the first block, or that of the
+    // end of an empty stream
+    BZIP2("bzip2", ".bz2", new int[] { 0x42, 0x5a, 0x68, DIGIT, 0x31, 0x41,
+        0x59, 0x26, 0x53, 0x59 }, new int[] { 0x42, 0x5a, 0x68, DIGIT, 0x17,
+        0x72, 0x45, 0x38, 0x50, 0x90 });
+
+    private final String name;
+    private final String extension;
+    private final int[][] magics;
+
+    private Codec(final String name, final String extension,
+        final int[]... magics) {
+      this.name = name;
+      this.extension = extension;
+      this.magics = magics;
+    }
+
+    /**
+     * Whether the codec is available.
+     * 
+     * @return true for no compression and gzip
+     */
+    public boolean isSupported() {
+      return this == NONE || this == GZIP;
+    }
+
+    /**
+     * Get the codec of a file name by its extension.
+     * 
+     * @param fileName
+     *          the file name
+     * @return the codec or NONE
+     */
+    public static Codec forFileName(final String fileName) {
+      for (final Codec codec : values()) {
+        if (codec.extension != null && fileName.endsWith(codec.extension)) {
+          return codec;
+        }
+      }
+      return NONE;
+    }
+
+    /**
+     * Get the codec of the first bytes of a stream.
+     * 
+     * @param bytes
+     *          the first bytes
+     * @param length
+     *          the number of bytes read
+     * @return the codec or NONE
+     */
+    static Codec forMagic(final byte[] bytes, final int length) {
+      for (final Codec codec : values()) {
+        for (final int[] magic : codec.magics) {
+          if (magic.length <= length) {
+            int i = 0;
+            while (i < magic.length
+                && ((bytes[i] & 0xff) == magic[i] || magic[i] == DIGIT
+                    && bytes[i] >= '1' && bytes[i] <= '9')) {
+              i++;
+            }
+            if (i == magic.length) {
+              return codec;
+            }
+          }
+        }
+      }
+      return NONE;
+    }
+  }
+
+  private CompressedStreams() {
+  }
+
+  /**
+   * Decompress a stream if its magic bytes are those of a compression format.
+   * 
+   * @param in
+   *          the stream
+   * @return the decompressed stream, or one reading the stream as it is
+   * @throws IOException
+   *           if the stream cannot be read or its format is not supported
+   */
+  public static InputStream decompress(final InputStream in)
+      throws IOException {
+    final BufferedInputStream bin = new BufferedInputStream(in, BLOCK_SIZE);
+    final byte[] magic = new byte[MAGIC_LENGTH];
+    bin.mark(magic.length);
+    int length = 0;
+    int read;
+    while (length < magic.length
+        && (read = bin.read(magic, length, magic.length - length)) > 0) {
+      length += read;
+    }
+    bin.reset();
+    final Codec codec = Codec.forMagic(magic, length);
+    if (!codec.isSupported()) {
+      throw new IOException("The input is compressed with " + codec.name
+          + ", which is not supported; decompress it first or use gzip!");
+    }
+    if (codec == Codec.NONE) {
+      return bin;
+    }
+    return new ReadAheadInputStream(new GZIPInputStream(bin, BLOCK_SIZE));
+  }
+
+  /**
+   * Compress a stream.
+   * 
+   * @param out
+   *          the stream
+   * @param codec
+   *          the codec
+   * @return the stream compressing to the given one, or the stream itself
+   *         without compression; closing it closes the given stream
+   * @throws IOException
+   *           if the stream cannot be written or the codec is not supported
+   */
+  public static OutputStream compress(final OutputStream out,
+      final Codec codec) throws IOException {
+    if (!codec.isSupported()) {
+      throw new IOException("Compression with " + codec.name
+          + " is not supported; use gzip!");
+    }
+    if (codec == Codec.NONE) {
+      return out;
+    }
+    return new WriteBehindOutputStream(new GZIPOutputStream(out, BLOCK_SIZE));
+  }
+
+  /**
+   * Open a file, or the standard input, decompressing it if needed.
+   * 
+   * @param fileName
+   *          the file name, or null or "-" for the standard input
+   * @return the stream
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public static InputStream openInput(final String fileName)
+      throws IOException {
+    if (fileName == null || fileName.equals("-")) {
+      return decompress(System.in);
+    }
+    return decompress(new FileInputStream(fileName));
+  }
+
+  /**
+   * Create a file, or use the standard output, compressing it as the
+   * extension of the file name says.
+   * 
+   * @param fileName
+   *          the file name, or null or "-" for the standard output
+   * @return the stream
+   * @throws IOException
+   *           if the file cannot be created
+   */
+  public static OutputStream openOutput(final String fileName)
+      throws IOException {
+    if (fileName == null || fileName.equals("-")) {
+      return System.out;
+    }
+    final Codec codec = Codec.forFileName(fileName);
+    if (!codec.isSupported()) {
+      throw new IOException("Compression with " + codec.name
+          + " is not supported; use gzip!");
+    }
+    return compress(new FileOutputStream(fileName), codec);
+  }
+
+  /**
+   * Get a reader of a file in UTF-8, decompressing it if needed.
+   * 
+   * @param file
+   *          the file
+   * @return the reader
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public static BufferedReader newReader(final File file) throws IOException {
+    return new BufferedReader(new InputStreamReader(
+        decompress(new FileInputStream(file)), Charsets.UTF_8));
+  }
+
+  /**
+   * Get a writer of a file in UTF-8, compressing it as the extension of its
+   * name says.
+   * 
+   * @param file
+   *          the file
+   * @return the writer
+   * @throws IOException
+   *           if the file cannot be created
+   */
+  public static Writer newWriter(final File file) throws IOException {
+    return new OutputStreamWriter(openOutput(file.getPath()), Charsets.UTF_8);
+  }
+
+  /**
+   * A block of bytes handed over between threads.
+   */
+  private static class Block {
+    private static final Block END = new Block(new byte[0], 0);
+    private final byte[] bytes;
+    private final int length;
+
+    Block(final byte[] bytes, final int length) {
+      this.bytes = bytes;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Stream reading another one in a thread of its own, up to QUEUE_SIZE
+   * blocks ahead of its reader.
+   */
+  private static class ReadAheadInputStream extends InputStream {
+    private final InputStream in;
+    private final BlockingQueue<Block> blocks = new ArrayBlockingQueue<Block>(
+        QUEUE_SIZE);
+    private final Thread thread;
+    private volatile IOException error;
+    private Block current;
+    private int position;
+    private boolean closed;
+
+    ReadAheadInputStream(final InputStream in) {
+      this.in = in;
+      thread = new Thread(new Runnable() {
+        public void run() {
+          readAhead();
+        }
+      }, "ixa-pipe-tok-decompressor");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private void readAhead() {
+      try {
+        try {
+          while (true) {
+            final byte[] bytes = new byte[BLOCK_SIZE];
+            int length = 0;
+            int read = 0;
+            while (length < bytes.length
+                && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+              length += read;
+            }
+            if (length > 0) {
+              blocks.put(new Block(bytes, length));
+            }
+            if (read < 0) {
+              break;
+            }
+          }
+        } catch (final IOException e) {
+          error = e;
+        } catch (final RuntimeException e) {
+          error = new IOException("Could not decompress the input: "
+              + e.getMessage(), e);
+        }
+        blocks.put(Block.END);
+      } catch (final InterruptedException e) {
+        // closed
+      }
+    }
+
+    /**
+     * Get the block being read, waiting for the next one if needed.
+     * 
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      while (current == null || position == current.length) {
+        if (current == Block.END) {
+          if (error != null) {
+            throw error;
+          }
+          return false;
+        }
+        try {
+          current = blocks.take();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while reading", e);
+        }
+        position = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!nextBlock()) {
+        return -1;
+      }
+      return current.bytes[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+        throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!nextBlock()) {
+        return -1;
+      }
+      final int read = Math.min(length, current.length - position);
+      System.arraycopy(current.bytes, position, bytes, offset, read);
+      position += read;
+      return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return current == null || closed ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        thread.interrupt();
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Stream writing to another one in a thread of its own, with up to
+   * QUEUE_SIZE blocks waiting. Closing it waits until every block is written
+   * and closes the other stream.
+   */
+  private static class WriteBehindOutputStream extends FilterOutputStream {
+    private final BlockingQueue<Block> blocks = new ArrayBlockingQueue<Block>(
+        QUEUE_SIZE);
+    private final Thread thread;
+    private volatile IOException error;
+    private byte[] buffer = new byte[BLOCK_SIZE];
+    private int count;
+    private boolean closed;
+
+    WriteBehindOutputStream(final OutputStream out) {
+      super(out);
+      thread = new Thread(new Runnable() {
+        public void run() {
+          writeBehind();
+        }
+      }, "ixa-pipe-tok-compressor");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /**
+     * Write the blocks until the end, still taking them after a failure so
+     * that the writer never waits for room in the queue.
+     */
+    private void writeBehind() {
+      try {
+        while (true) {
+          final Block block = blocks.take();
+          if (block == Block.END) {
+            break;
+          }
+          if (error == null) {
+            try {
+              out.write(block.bytes, 0, block.length);
+            } catch (final IOException e) {
+              error = e;
+            } catch (final RuntimeException e) {
+              error = getError(e);
+            }
+          }
+        }
+        try {
+          out.close();
+        } catch (final IOException e) {
+          if (error == null) {
+            error = e;
+          }
+        } catch (final RuntimeException e) {
+          if (error == null) {
+            error = getError(e);
+          }
+        }
+      } catch (final InterruptedException e) {
+        error = new IOException("Interrupted while compressing", e);
+      }
+    }
+
+    private static IOException getError(final RuntimeException e) {
+      return new IOException("Could not compress the output: "
+          + e.getMessage(), e);
+    }
+
+    private void checkError() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+
+    /**
+     * Hand the bytes buffered over to the compressing thread.
+     */
+    private void handOver() throws IOException {
+      if (count > 0) {
+        try {
+          blocks.put(new Block(buffer, count));
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while writing", e);
+        }
+        buffer = new byte[BLOCK_SIZE];
+        count = 0;
+      }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      checkError();
+      if (count == buffer.length) {
+        handOver();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] bytes, int offset, int length)
+        throws IOException {
+      checkError();
+      while (length > 0) {
+        if (count == buffer.length) {
+          handOver();
+        }
+        final int copied = Math.min(length, buffer.length - count);
+        System.arraycopy(bytes, offset, buffer, count, copied);
+        count += copied;
+        offset += copied;
+        length -= copied;
+      }
+    }
+
+    /**
+     * Hand the bytes written over to the compressing thread, without waiting
+     * until they are written.
+     */
+    @Override
+    public void flush() throws IOException {
+      checkError();
+      handOver();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      try {
+        handOver();
+        blocks.put(Block.END);
+        thread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while closing", e);
+      } finally {
+        closed = true;
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer for the requests and responses of the
+ * servers. Objects are read into a {@link LinkedHashMap}, arrays into a
+ * {@link List}, numbers into a {@link Double} or a {@link Long}, and the rest
+ * into {@link String}, {@link Boolean} or null. The functions of this class
+ * are to be used statically.
+ */
+public final class Json {
+
+  private final String json;
+  private int pos;
+
+  /**
+   * This class is to be used statically.
+   */
+  private Json(final String json) {
+    this.json = json;
+  }
+
+  /**
+   * Parse a JSON document.
+   * @param json the document
+   * @return the value of the document
+   * @throws ParseException if the document is not valid JSON
+   */
+  public static Object parse(final String json) throws ParseException {
+    final Json parser = new Json(json);
+    final Object value = parser.readValue();
+    parser.skipWhiteSpace();
+    if (parser.pos < json.length()) {
+      throw parser.error("unexpected content after the value");
+    }
+    return value;
+  }
+
+  /**
+   * Append a string as a quoted and escaped JSON string.
+   * @param sb the builder
+   * @param string the string
+   * @return the builder
+   */
+  public static StringBuilder appendString(final StringBuilder sb,
+      final String string) {
+    sb.append('"');
+    for (int i = 0; i < string.length(); i++) {
+      final char c = string.charAt(i);
+      switch (c) {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      default:
+        if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+          sb.append(String.format("\\u%04x", (int) c));
+        } else {
+          sb.append(c);
+        }
+      }
+    }
+    return sb.append('"');
+  }
+
+  private Object readValue() throws ParseException {
+    skipWhiteSpace();
+    if (pos >= json.length()) {
+      throw error("unexpected end of document");
+    }
+    final char c = json.charAt(pos);
+    switch (c) {
+    case '{':
+      return readObject();
+    case '[':
+      return readArray();
+    case '"':
+      return readString();
+    case 't':
+      return readLiteral("true", Boolean.TRUE);
+    case 'f':
+      return readLiteral("false", Boolean.FALSE);
+    case 'n':
+      return readLiteral("null", null);
+    default:
+      if (c == '-' || c >= '0' && c <= '9') {
+        return readNumber();
+      }
+      throw error("unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String, Object> readObject() throws ParseException {
+    final Map<String, Object> object = new LinkedHashMap<String, Object>();
+    pos++;
+    skipWhiteSpace();
+    if (consume('}')) {
+      return object;
+    }
+    do {
+      skipWhiteSpace();
+      if (pos >= json.length() || json.charAt(pos) != '"') {
+        throw error("expected a member name");
+      }
+      final String name = readString();
+      skipWhiteSpace();
+      if (!consume(':')) {
+        throw error("expected ':'");
+      }
+      object.put(name, readValue());
+      skipWhiteSpace();
+    } while (consume(','));
+    if (!consume('}')) {
+      throw error("expected ',' or '}'");
+    }
+    return object;
+  }
+
+  private List<Object> readArray() throws ParseException {
+    final List<Object> array = new ArrayList<Object>();
+    pos++;
+    skipWhiteSpace();
+    if (consume(']')) {
+      return array;
+    }
+    do {
+      array.add(readValue());
+      skipWhiteSpace();
+    } while (consume(','));
+    if (!consume(']')) {
+      throw error("expected ',' or ']'");
+    }
+    return array;
+  }
+
+  private String readString() throws ParseException {
+    pos++;
+    final StringBuilder sb = new StringBuilder();
+    int copied = pos;
+    while (pos < json.length()) {
+      final char c = json.charAt(pos);
+      if (c == '"') {
+        sb.append(json, copied, pos++);
+        return sb.toString();
+      } else if (c == '\\') {
+        sb.append(json, copied, pos++);
+        if (pos >= json.length()) {
+          break;
+        }
+        final char escaped = json.charAt(pos++);
+        switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          sb.append(escaped);
+          break;
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (pos + 4 > json.length()) {
+            throw error("truncated unicode escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+          } catch (final NumberFormatException e) {
+            throw error("invalid unicode escape");
+          }
+          pos += 4;
+          break;
+        default:
+          throw error("invalid escape '\\" + escaped + "'");
+        }
+        copied = pos;
+      } else if (c < 0x20) {
+        throw error("control character in string");
+      } else {
+        pos++;
+      }
+    }
+    throw error("unterminated string");
+  }
+
+  private Object readNumber() throws ParseException {
+    final int start = pos;
+    boolean decimal = false;
+    while (pos < json.length()) {
+      final char c = json.charAt(pos);
+      if (c == '.' || c == 'e' || c == 'E') {
+        decimal = true;
+      } else if (!(c >= '0' && c <= '9' || c == '-' || c == '+')) {
+        break;
+      }
+      pos++;
+    }
+    final String number = json.substring(start, pos);
+    try {
+      if (decimal) {
+        return Double.valueOf(number);
+      }
+      return Long.valueOf(number);
+    } catch (final NumberFormatException e) {
+      throw new ParseException("Invalid number " + number, start);
+    }
+  }
+
+  private Object readLiteral(final String literal, final Object value)
+      throws ParseException {
+    if (!json.startsWith(literal, pos)) {
+      throw error("unexpected literal");
+    }
+    pos += literal.length();
+    return value;
+  }
+
+  private boolean consume(final char c) {
+    if (pos < json.length() && json.charAt(pos) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private void skipWhiteSpace() {
+    while (pos < json.length()) {
+      final char c = json.charAt(pos);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        break;
+      }
+      pos++;
+    }
+  }
+
+  private ParseException error(final String message) {
+    return new ParseException("Invalid JSON at position " + pos + ": "
+        + message, pos);
+  }
+
+}
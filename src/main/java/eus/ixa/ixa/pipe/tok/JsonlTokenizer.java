@@ -0,0 +1,341 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+import eus.ixa.ixa.pipe.seg.SentenceBoundaryDetector;
+import eus.ixa.ixa.pipe.seg.Span;
+
+/**
+ * Tokenization of many documents in JSON lines, streaming them in one run.
+ * Each input line is a JSON object with a text member and optional id and
+ * lang members, as the documents of the JSON batches of the
+ * {@link RuleBasedTokenizerHttpServer}; the id is the line number if there is
+ * none and the lang is that of the options if there is none. Each output line
+ * is a JSON object with the id, the lang and the sentences, each an array of
+ * tokens with their value, offset and length in the text:
+ * 
+ * <pre>
+ * {"id":"d1","lang":"en","sentences":[[{"token":"Hello","offset":0,"length":5},...],...]}
+ * </pre>
+ * 
+ * Paragraph marks are left out. Documents are tokenized in the calling thread
+ * or by a pool of workers, up to queueSize documents each ahead of the
+ * writer, and written in the order of the input. The segmenter and tokenizer
+ * of each language are created once per thread and reused for every document.
+ */
+public class JsonlTokenizer {
+
+  private final Properties properties;
+  private final int workers;
+  private final int queueSize;
+  /**
+   * The components of each language for each thread, as they are not thread
+   * safe.
+   */
+  private final ThreadLocal<Map<String, Components>> components = new ThreadLocal<Map<String, Components>>() {
+    @Override
+    protected Map<String, Components> initialValue() {
+      return new HashMap<String, Components>();
+    }
+  };
+
+  /**
+   * The segmenter and tokenizer of a language.
+   */
+  private static class Components {
+    private final SentenceBoundaryDetector detector;
+    private final RuleBasedTokenizer tokenizer;
+
+    Components(final Properties properties) {
+      detector = new SentenceBoundaryDetector(
+          new NonPeriodBreaker(properties), "yes".equalsIgnoreCase(properties
+              .getProperty("hardParagraph")));
+      tokenizer = new RuleBasedTokenizer("", properties);
+    }
+  }
+
+  /**
+   * Construct a JSON lines tokenizer.
+   * 
+   * @param properties
+   *          the options, as for the RuleBasedSegmenter and the
+   *          RuleBasedTokenizer, with the default language
+   * @param workers
+   *          the number of threads tokenizing, or 0 to tokenize in the
+   *          calling thread
+   * @param queueSize
+   *          the documents read ahead of the writer by each worker
+   */
+  public JsonlTokenizer(final Properties properties, final int workers,
+      final int queueSize) {
+    if (workers < 0 || queueSize < 1) {
+      throw new IllegalArgumentException(
+          "The workers cannot be negative and the queue needs one document");
+    }
+    this.properties = properties;
+    this.workers = workers;
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * Tokenize the documents of JSON lines. Empty lines are skipped.
+   * 
+   * @param breader
+   *          the JSON lines
+   * @param writer
+   *          the output, one JSON line per document
+   * @return the number of documents
+   * @throws IOException
+   *           if io problems or a line is not a valid document
+   */
+  public long tokenize(final BufferedReader breader, final Writer writer)
+      throws IOException {
+    if (workers == 0) {
+      long noLines = 0;
+      long noDocs = 0;
+      String line;
+      while ((line = breader.readLine()) != null) {
+        noLines++;
+        if (!line.trim().isEmpty()) {
+          writer.write(annotate(noLines, line));
+          noDocs++;
+        }
+      }
+      return noDocs;
+    }
+    return tokenizeInParallel(breader, writer);
+  }
+
+  private long tokenizeInParallel(final BufferedReader breader,
+      final Writer writer) throws IOException {
+    final ExecutorService executor = Executors.newFixedThreadPool(workers,
+        new ThreadFactory() {
+          private final AtomicInteger noThreads = new AtomicInteger();
+
+          public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                "ixa-pipe-tok-worker-" + noThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    // the results in the order of the input, null at the end
+    final BlockingQueue<Future<String>> results = new ArrayBlockingQueue<Future<String>>(
+        workers * queueSize);
+    final Future<String> end = completed(new Callable<String>() {
+      public String call() {
+        return null;
+      }
+    });
+    final Thread reader = new Thread(new Runnable() {
+      public void run() {
+        try {
+          try {
+            long noLines = 0;
+            String line;
+            while ((line = breader.readLine()) != null) {
+              final long lineNumber = ++noLines;
+              final String document = line;
+              if (!document.trim().isEmpty()) {
+                results.put(executor.submit(new Callable<String>() {
+                  public String call() throws IOException {
+                    return annotate(lineNumber, document);
+                  }
+                }));
+              }
+            }
+            results.put(end);
+          } catch (final IOException e) {
+            results.put(failed(e));
+          } catch (final RuntimeException e) {
+            results.put(failed(e));
+          }
+        } catch (final InterruptedException e) {
+          // stopped
+        }
+      }
+    }, "ixa-pipe-tok-jsonl-reader");
+    reader.setDaemon(true);
+    reader.start();
+    long noDocs = 0;
+    try {
+      Future<String> result;
+      while ((result = results.take()) != end) {
+        writer.write(result.get());
+        noDocs++;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while tokenizing", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Could not tokenize the documents: "
+          + e.getCause().getMessage(), e.getCause());
+    } finally {
+      reader.interrupt();
+      executor.shutdownNow();
+    }
+    return noDocs;
+  }
+
+  /**
+   * Get a result failing with an error of the reader.
+   */
+  private static Future<String> failed(final Exception e) {
+    return completed(new Callable<String>() {
+      public String call() throws Exception {
+        throw e;
+      }
+    });
+  }
+
+  private static Future<String> completed(final Callable<String> callable) {
+    final FutureTask<String> task = new FutureTask<String>(callable);
+    task.run();
+    return task;
+  }
+
+  /**
+   * Tokenize the document of a JSON line.
+   * 
+   * @param lineNumber
+   *          the line number, from 1
+   * @param line
+   *          the line
+   * @return the JSON line of the result, with the line break
+   * @throws IOException
+   *           if the line is not a valid document
+   */
+  String annotate(final long lineNumber, final String line)
+      throws IOException {
+    Object json;
+    try {
+      json = Json.parse(line);
+    } catch (final ParseException e) {
+      throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+    }
+    if (!(json instanceof Map)
+        || !(((Map<?, ?>) json).get("text") instanceof String)) {
+      throw new IOException("Line " + lineNumber
+          + " is not a JSON object with text!");
+    }
+    final Map<?, ?> fields = (Map<?, ?>) json;
+    String lang = properties.getProperty("language");
+    if (fields.get("lang") instanceof String) {
+      lang = ((String) fields.get("lang")).toLowerCase();
+      if (LanguagePacks.get(lang) == null) {
+        throw new IOException("Line " + lineNumber
+            + ": no language pack for language " + lang + "!");
+      }
+    }
+    final Object id = fields.get("id") == null ? Long.valueOf(lineNumber)
+        : fields.get("id");
+    final StringBuilder sb = new StringBuilder("{\"id\":");
+    if (id instanceof String) {
+      Json.appendString(sb, (String) id);
+    } else if (id instanceof Number || id instanceof Boolean) {
+      sb.append(id);
+    } else {
+      sb.append(lineNumber);
+    }
+    Json.appendString(sb.append(",\"lang\":"), lang);
+    sb.append(",\"sentences\":[");
+    boolean firstSentence = true;
+    for (final List<Token> sentence : tokenize(lang,
+        (String) fields.get("text"))) {
+      boolean firstToken = true;
+      for (final Token token : sentence) {
+        if (token.getTokenValue().equals(RuleBasedSegmenter.PARAGRAPH)) {
+          continue;
+        }
+        if (firstToken) {
+          sb.append(firstSentence ? "[" : ",[");
+          firstSentence = false;
+          firstToken = false;
+        } else {
+          sb.append(',');
+        }
+        Json.appendString(sb.append("{\"token\":"), token.getTokenValue());
+        sb.append(",\"offset\":").append(token.startOffset())
+            .append(",\"length\":").append(token.tokenLength()).append('}');
+      }
+      if (!firstToken) {
+        sb.append(']');
+      }
+    }
+    return sb.append("]}\n").toString();
+  }
+
+  /**
+   * Segment, tokenize and normalize a document as the {@link Annotate} class
+   * does, with the components of the language of this thread.
+   * 
+   * @param lang
+   *          the language
+   * @param document
+   *          the text
+   * @return the tokens of each sentence
+   */
+  private List<List<Token>> tokenize(final String lang, final String document) {
+    Components langComponents = components.get().get(lang);
+    if (langComponents == null) {
+      final Properties langProperties = new Properties();
+      langProperties.putAll(properties);
+      langProperties.setProperty("language", lang);
+      langComponents = new Components(langProperties);
+      components.get().put(lang, langComponents);
+    }
+    final String text = RuleBasedSegmenter.buildText(StringUtils
+        .readText(new BufferedReader(new StringReader(document))));
+    final char[] chars = text.toCharArray();
+    final List<Span> spans = langComponents.detector.detect(chars);
+    final List<List<Token>> tokens = new ArrayList<List<Token>>(spans.size());
+    int prevIndex = 0;
+    for (final Span span : spans) {
+      final List<Token> sentenceTokens = new ArrayList<Token>();
+      prevIndex = langComponents.tokenizer.tokenizeSentence(
+          span.getCoveredText(chars), text, prevIndex, sentenceTokens);
+      tokens.add(sentenceTokens);
+    }
+    langComponents.tokenizer.normalize(tokens);
+    return tokens;
+  }
+
+}
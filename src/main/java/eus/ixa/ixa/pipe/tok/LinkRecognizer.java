@@ -0,0 +1,254 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import eus.ixa.ixa.pipe.seg.Span;
+
+/**
+ * Recognizes URLs and e-mail addresses in a sentence so that they are
+ * protected from tokenization. Only a scheme, a www. prefix or an @ followed
+ * by a domain name make a link. Bare domain names such as example.com are
+ * deliberately not recognized: dotted abbreviations such as Nos.no. or ca.no.
+ * also end in a top level domain, and splitting them as links breaks their
+ * tokenization. The sentence is scanned once: every run of characters
+ * allowed in a link is classified in time linear to its length, looking up
+ * top level domains in a set read from resources.
+ */
+public class LinkRecognizer {
+
+  /**
+   * Characters other than letters and digits allowed in a link.
+   */
+  private static final String LINK_PUNCT = "+&@#/%?=~_|!:,.;-";
+  /**
+   * Punctuation which is not part of a link when found at its end.
+   */
+  private static final String LINK_FINAL_PUNCT = ".,;:!?";
+  /**
+   * The top level domains read from resources.
+   */
+  private static final Set<String> TOP_LEVEL_DOMAINS = loadTopLevelDomains();
+
+  /**
+   * Find the links in a sentence.
+   *
+   * @param line
+   *          the sentence
+   * @return the spans of the links, in order
+   */
+  public List<Span> recognize(final String line) {
+    final List<Span> links = new ArrayList<Span>();
+    final int length = line.length();
+    int i = 0;
+    while (i < length) {
+      if (!isLinkChar(line.charAt(i))) {
+        i++;
+        continue;
+      }
+      int runEnd = i + 1;
+      while (runEnd < length && isLinkChar(line.charAt(runEnd))) {
+        runEnd++;
+      }
+      final Span link = recognizeRun(line, i, runEnd);
+      if (link != null) {
+        links.add(link);
+      }
+      i = runEnd;
+    }
+    return links;
+  }
+
+  /**
+   * Classify a run of link characters: URL with scheme, URL starting with
+   * www or e-mail address.
+   *
+   * @param line
+   *          the sentence
+   * @param start
+   *          the start of the run
+   * @param end
+   *          the end of the run
+   * @return the span of the link or null if there is none
+   */
+  private Span recognizeRun(final String line, final int start, final int end) {
+    int email = -1;
+    for (int i = start; i < end; i++) {
+      final char c = line.charAt(i);
+      if (c == ':' && line.startsWith("://", i)) {
+        final int schemeStart = skipSchemeBackwards(line, start, i);
+        if (schemeStart < i && isScheme(line, schemeStart, i)) {
+          return trimmed(line, schemeStart, end, i + 3);
+        }
+      } else if ((c == 'w' || c == 'W') && line.regionMatches(true, i, "www.", 0, 4)
+          && (i == start || !CharClasses.isLetterOrDigit(line.charAt(i - 1))
+          && line.charAt(i - 1) != '@')) {
+        return trimmed(line, i, end, i + 4);
+      } else if (c == '@' && email == -1) {
+        email = i;
+      }
+    }
+    if (email == -1) {
+      return null;
+    }
+    int localStart = email;
+    while (localStart > start && isLocalPartChar(line.charAt(localStart - 1))) {
+      localStart--;
+    }
+    while (localStart < email && line.charAt(localStart) == '.') {
+      localStart++;
+    }
+    final int domainEnd = domainEnd(line, email + 1, end);
+    if (localStart < email && domainEnd != -1) {
+      return new Span(localStart, domainEnd);
+    }
+    return null;
+  }
+
+  /**
+   * Find the end of a domain name: two or more labels separated by periods,
+   * the last of which is a top level domain.
+   *
+   * @param line
+   *          the sentence
+   * @param start
+   *          the start of the domain name
+   * @param end
+   *          the end of the run
+   * @return the end of the domain name or -1 if there is none
+   */
+  private int domainEnd(final String line, final int start, final int end) {
+    int labels = 0;
+    int domainEnd = -1;
+    int i = start;
+    while (i < end) {
+      final int labelStart = i;
+      while (i < end && isLabelChar(line.charAt(i))) {
+        i++;
+      }
+      if (i == labelStart) {
+        break;
+      }
+      labels++;
+      if (labels >= 2 && isTopLevelDomain(line, labelStart, i)) {
+        domainEnd = i;
+      }
+      if (i + 1 < end && line.charAt(i) == '.') {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return domainEnd;
+  }
+
+  /**
+   * Build the span of a link removing final punctuation.
+   *
+   * @param line
+   *          the sentence
+   * @param start
+   *          the start of the link
+   * @param end
+   *          the end of the run
+   * @param minEnd
+   *          the link ends after this offset
+   * @return the span or null if nothing is left after minEnd
+   */
+  private static Span trimmed(final String line, final int start, int end,
+      final int minEnd) {
+    while (end > minEnd && LINK_FINAL_PUNCT.indexOf(line.charAt(end - 1)) != -1) {
+      end--;
+    }
+    return end > minEnd ? new Span(start, end) : null;
+  }
+
+  private static int skipSchemeBackwards(final String line, final int start,
+      int i) {
+    while (i > start && isAsciiLetter(line.charAt(i - 1))) {
+      i--;
+    }
+    return i;
+  }
+
+  private static boolean isScheme(final String line, final int start,
+      final int end) {
+    final String scheme = line.substring(start, end);
+    return scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https")
+        || scheme.equalsIgnoreCase("ftp");
+  }
+
+  private static boolean isTopLevelDomain(final String line, final int start,
+      final int end) {
+    for (int i = start; i < end; i++) {
+      final char c = line.charAt(i);
+      if (c < 'a' || c > 'z') {
+        return false;
+      }
+    }
+    return TOP_LEVEL_DOMAINS.contains(line.substring(start, end));
+  }
+
+  private static boolean isLinkChar(final char c) {
+    return CharClasses.isLetterOrDigit(c) || LINK_PUNCT.indexOf(c) != -1;
+  }
+
+  private static boolean isLabelChar(final char c) {
+    return CharClasses.isLetterOrDigit(c) || c == '-';
+  }
+
+  private static boolean isLocalPartChar(final char c) {
+    return CharClasses.isLetterOrDigit(c) || c == '.' || c == '_' || c == '%'
+        || c == '+' || c == '-';
+  }
+
+  private static boolean isAsciiLetter(final char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+  }
+
+  private static Set<String> loadTopLevelDomains() {
+    final Set<String> domains = new HashSet<String>();
+    final InputStream domainsInputStream = LinkRecognizer.class
+        .getResourceAsStream("/top-level-domains.txt");
+    if (domainsInputStream == null) {
+      System.err.println("ERROR: Not top-level-domains.txt file in src/main/resources!!");
+      System.exit(1);
+    }
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        domainsInputStream));
+    String line;
+    try {
+      while ((line = breader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          domains.add(line);
+        }
+      }
+      breader.close();
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+    return domains;
+  }
+
+}
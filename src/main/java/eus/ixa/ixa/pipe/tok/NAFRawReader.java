@@ -0,0 +1,117 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.Reader;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.JDOMException;
+
+/**
+ * Streaming reader of the raw layer of a NAF document. The document is read
+ * with StAX only up to the end of the raw element, so the other layers are
+ * neither parsed nor kept in memory, as {@link ixa.kaflib.KAFDocument} does.
+ * Use it when the output does not include the input document.
+ */
+public class NAFRawReader {
+
+  private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+  static {
+    FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        Boolean.FALSE);
+  }
+
+  private final String language;
+  private final String version;
+  private final String rawText;
+
+  private NAFRawReader(final String language, final String version,
+      final String rawText) {
+    this.language = language;
+    this.version = version;
+    this.rawText = rawText;
+  }
+
+  /**
+   * Read the header attributes and the raw layer of a NAF document.
+   * 
+   * @param reader
+   *          the NAF document, not closed
+   * @return the raw layer and metadata
+   * @throws JDOMException
+   *           if the document is not well formed, as when it is read by
+   *           {@link ixa.kaflib.KAFDocument#createFromStream(Reader)}
+   */
+  public static NAFRawReader read(final Reader reader) throws JDOMException {
+    String language = null;
+    String version = null;
+    String rawText = null;
+    try {
+      final XMLStreamReader xmlReader = FACTORY.createXMLStreamReader(reader);
+      try {
+        while (rawText == null && xmlReader.hasNext()) {
+          if (xmlReader.next() == XMLStreamConstants.START_ELEMENT) {
+            final String name = xmlReader.getLocalName();
+            if (name.equals("NAF") || name.equals("KAF")) {
+              language = xmlReader.getAttributeValue(
+                  XMLConstants.XML_NS_URI, "lang");
+              version = xmlReader.getAttributeValue(null, "version");
+            } else if (name.equals("raw")) {
+              rawText = xmlReader.getElementText();
+            }
+          }
+        }
+      } finally {
+        xmlReader.close();
+      }
+    } catch (final XMLStreamException e) {
+      throw new JDOMException(e.getMessage(), e);
+    }
+    return new NAFRawReader(language, version, rawText == null ? ""
+        : rawText);
+  }
+
+  /**
+   * Get the language of the document.
+   * @return the xml:lang attribute, null if missing
+   */
+  public String getLanguage() {
+    return language;
+  }
+
+  /**
+   * Get the NAF version of the document.
+   * @return the version attribute, null if missing
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the text of the raw layer.
+   * @return the raw text, empty if there is no raw layer
+   */
+  public String getRawText() {
+    return rawText;
+  }
+
+}
@@ -0,0 +1,339 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+import org.jdom2.JDOMException;
+
+/**
+ * Adds the text layer and its linguistic processor to a NAF document without
+ * parsing and serializing it again. The input is read up to the end of the
+ * raw layer, which is needed to tokenize; once the layer is generated, the
+ * header entry and the text layer are inserted in that part and the rest of
+ * the document is copied unchanged. A text layer right after the raw layer is
+ * replaced.
+ */
+public class NAFSplicer {
+
+  private static final int TEXT = 0;
+  private static final int START_TAG = 1;
+  private static final int END_TAG = 2;
+  private static final int EMPTY_TAG = 3;
+  private static final int OTHER = 4;
+  private static final int EOF = 5;
+  private static final String PROCESSORS_START = "<linguisticProcessors layer=\"text\">";
+  private static final String PROCESSORS_END = "</linguisticProcessors>";
+  private static final Pattern TEXT_LAYER_ATTRIBUTE = Pattern
+      .compile("\\slayer\\s*=\\s*[\"']text[\"']");
+
+  private final PushbackReader reader;
+  /**
+   * The document up to the end of the raw layer, or the whole document if
+   * there is no raw layer.
+   */
+  private final StringBuilder head = new StringBuilder();
+  /**
+   * What is read after the raw layer to find a text layer.
+   */
+  private final StringBuilder next = new StringBuilder();
+  private int markupStart;
+  private String markupName;
+  private int rootEnd = -1;
+  private int headerEnd = -1;
+  private int emptyHeaderStart = -1;
+  private int emptyHeaderEnd = -1;
+  private int textProcessorsEnd = -1;
+  private int rawEnd = -1;
+  private final NAFRawReader raw;
+
+  /**
+   * Read a NAF document up to the end of its raw layer.
+   * 
+   * @param reader
+   *          the NAF document, read up to the raw layer
+   * @throws IOException
+   *           if io error
+   * @throws JDOMException
+   *           if the document is not well formed
+   */
+  public NAFSplicer(final Reader reader) throws IOException, JDOMException {
+    this.reader = new PushbackReader(reader, 1);
+    readHead();
+    raw = NAFRawReader.read(new StringReader(head.toString()));
+    if (rawEnd != -1) {
+      skipTextLayer();
+    }
+  }
+
+  /**
+   * Get the text of the raw layer.
+   * @return the raw text, empty if there is no raw layer
+   */
+  public String getRawText() {
+    return raw.getRawText();
+  }
+
+  /**
+   * Get the NAF version of the document.
+   * @return the version attribute, null if missing
+   */
+  public String getVersion() {
+    return raw.getVersion();
+  }
+
+  /**
+   * Write the document with the text layer and the text linguistic processors
+   * of a NAF document.
+   * 
+   * @param kaf
+   *          the document with the text layer of the raw text
+   * @param writer
+   *          the output, not closed
+   * @throws IOException
+   *           if io error
+   */
+  public void write(final KAFDocument kaf, final Writer writer)
+      throws IOException {
+    final String generated = kaf.toString();
+    final StringBuilder document = head;
+    // insert from the end so that the positions stay valid
+    final String textLayer = getTextLayer(generated);
+    if (textLayer != null) {
+      final int textAt = rawEnd != -1 ? rawEnd : headerEnd != -1 ? head
+          .indexOf(">", headerEnd) + 1 : emptyHeaderEnd != -1 ? emptyHeaderEnd
+          : rootEnd;
+      document.insert(textAt, "\n  " + textLayer);
+    }
+    final int start = generated.indexOf(PROCESSORS_START);
+    if (start != -1) {
+      final int end = generated.indexOf(PROCESSORS_END, start)
+          + PROCESSORS_END.length();
+      final String processors = generated.substring(start, end);
+      if (textProcessorsEnd != -1) {
+        document.insert(textProcessorsEnd, "  "
+            + processors.substring(PROCESSORS_START.length(),
+                processors.length() - PROCESSORS_END.length()).trim()
+            + "\n    ");
+      } else if (headerEnd != -1) {
+        document.insert(headerEnd, "  " + processors + "\n  ");
+      } else if (emptyHeaderStart != -1) {
+        document.replace(emptyHeaderStart, emptyHeaderEnd, "<nafHeader>\n    "
+            + processors + "\n  </nafHeader>");
+      } else if (rootEnd != -1) {
+        document.insert(rootEnd, "\n  <nafHeader>\n    " + processors
+            + "\n  </nafHeader>");
+      }
+    }
+    writer.append(document);
+    writer.append(next);
+    final char[] buffer = new char[8192];
+    int read;
+    while ((read = reader.read(buffer)) != -1) {
+      writer.write(buffer, 0, read);
+    }
+  }
+
+  private static String getTextLayer(final String generated) {
+    final int start = generated.indexOf("<text>");
+    if (start == -1) {
+      return null;
+    }
+    return generated.substring(start, generated.indexOf("</text>", start)
+        + "</text>".length());
+  }
+
+  /**
+   * Read up to the end of the raw layer, keeping the positions where the new
+   * header entry and the text layer go.
+   */
+  private void readHead() throws IOException {
+    final Deque<String> elements = new ArrayDeque<String>();
+    boolean inTextProcessors = false;
+    int type;
+    while ((type = readMarkup(head)) != EOF) {
+      if (type == START_TAG) {
+        if (elements.isEmpty()) {
+          rootEnd = head.length();
+        } else if (markupName.equals("linguisticProcessors")
+            && "nafHeader".equals(elements.peek())
+            && TEXT_LAYER_ATTRIBUTE.matcher(
+                head.substring(markupStart, head.length())).find()) {
+          inTextProcessors = textProcessorsEnd == -1;
+        }
+        elements.push(markupName);
+      } else if (type == EMPTY_TAG) {
+        if (markupName.equals("nafHeader") && elements.size() == 1) {
+          emptyHeaderStart = markupStart;
+          emptyHeaderEnd = head.length();
+        }
+      } else if (type == END_TAG) {
+        elements.poll();
+        if (inTextProcessors && markupName.equals("linguisticProcessors")) {
+          textProcessorsEnd = markupStart;
+          inTextProcessors = false;
+        } else if (markupName.equals("nafHeader") && elements.size() == 1) {
+          headerEnd = markupStart;
+        } else if (markupName.equals("raw") && elements.size() == 1) {
+          rawEnd = head.length();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Drop the text layer following the raw layer, if any.
+   */
+  private void skipTextLayer() throws IOException {
+    int type;
+    do {
+      type = readMarkup(next);
+    } while (type == TEXT || type == OTHER);
+    if ((type == START_TAG || type == EMPTY_TAG) && markupName.equals("text")) {
+      // with the indentation before it
+      int end = markupStart;
+      while (end > 0 && Character.isWhitespace(next.charAt(end - 1))) {
+        end--;
+      }
+      next.setLength(end);
+      if (type == START_TAG) {
+        final StringBuilder skipped = new StringBuilder();
+        int depth = 1;
+        while (depth > 0 && (type = readMarkup(skipped)) != EOF) {
+          if (type == START_TAG) {
+            depth++;
+          } else if (type == END_TAG) {
+            depth--;
+          }
+          skipped.setLength(0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the character data up to the next markup or the next markup.
+   * @param out where the characters read are appended
+   * @return the type of what was read
+   */
+  private int readMarkup(final StringBuilder out) throws IOException {
+    markupStart = out.length();
+    int c = reader.read();
+    if (c == -1) {
+      return EOF;
+    }
+    if (c != '<') {
+      while (c != -1 && c != '<') {
+        out.append((char) c);
+        c = reader.read();
+      }
+      if (c != -1) {
+        reader.unread(c);
+      }
+      return TEXT;
+    }
+    out.append('<');
+    c = read(out);
+    if (c == '!') {
+      c = read(out);
+      if (c == '-') {
+        readUntil(out, "-->");
+      } else if (c == '[') {
+        readUntil(out, "]]>");
+      } else {
+        // document type declaration, maybe with internal subset
+        int depth = 0;
+        while (c != '>' || depth > 0) {
+          if (c == '[') {
+            depth++;
+          } else if (c == ']') {
+            depth--;
+          }
+          c = read(out);
+        }
+      }
+      return OTHER;
+    } else if (c == '?') {
+      readUntil(out, "?>");
+      return OTHER;
+    }
+    final boolean endTag = c == '/';
+    char quote = 0;
+    while (c != '>' || quote != 0) {
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = (char) c;
+      }
+      c = read(out);
+    }
+    int nameEnd = markupStart + (endTag ? 2 : 1);
+    while (nameEnd < out.length() && !Character.isWhitespace(out.charAt(nameEnd))
+        && out.charAt(nameEnd) != '/' && out.charAt(nameEnd) != '>') {
+      nameEnd++;
+    }
+    markupName = out.substring(markupStart + (endTag ? 2 : 1), nameEnd);
+    if (endTag) {
+      return END_TAG;
+    }
+    return out.charAt(out.length() - 2) == '/' ? EMPTY_TAG : START_TAG;
+  }
+
+  private int read(final StringBuilder out) throws IOException {
+    final int c = reader.read();
+    if (c == -1) {
+      throw new IOException("Unexpected end of NAF document");
+    }
+    out.append((char) c);
+    return c;
+  }
+
+  /**
+   * Read up to the end of a comment, CDATA section or processing instruction.
+   * @param out where the characters read are appended
+   * @param end the end of the markup
+   */
+  private void readUntil(final StringBuilder out, final String end)
+      throws IOException {
+    // the end cannot overlap the start of the markup
+    final int minLength = out.length() - markupStart + end.length();
+    while (out.length() - markupStart < minLength || !endsWith(out, end)) {
+      read(out);
+    }
+  }
+
+  private static boolean endsWith(final StringBuilder out, final String end) {
+    final int offset = out.length() - end.length();
+    for (int i = 0; i < end.length(); i++) {
+      if (out.charAt(offset + i) != end.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
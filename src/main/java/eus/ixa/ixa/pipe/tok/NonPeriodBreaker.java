@@ -16,17 +16,11 @@
 
 package eus.ixa.ixa.pipe.tok;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Properties;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+import eus.ixa.ixa.pipe.lang.CompiledLanguagePack;
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
 
 /**
  * This class implements exceptions for periods as sentence breakers and tokens.
@@ -38,222 +32,181 @@ import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
  */
 public class NonPeriodBreaker {
 
-  /**
-   * Non segmented words, candidates for sentence breaking.
-   */
-  public static Pattern nonSegmentedWords = Pattern.compile("([\\p{Alnum}\\.\\-]*)(" +  RuleBasedSegmenter.FINAL_PUNCT + "*)(\\.+)$", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Next word wrt to the candidate to indicate sentence breaker.
-   */
-  public static Pattern nextCandidateWord = Pattern.compile("([\\ ]*" + RuleBasedSegmenter.INITIAL_PUNCT + "*[\\ ]*[\\p{Lu}\\p{Digit}])", Pattern.UNICODE_CHARACTER_CLASS);
   /**
    * Do not split dot after these words if followed by number.
    */
   public static String NON_BREAKER_DIGITS = "(al|[Aa]rt|ca|figs?|[Nn]os?|[Nn]rs?|op|p|pp|[Pp]ág)";
   /**
-   * General acronyms.
+   * Compiled non breaker digits.
    */
-  public static Pattern acronym = Pattern.compile("(\\.)[\\p{Lu}\\-]+([\\.]+)$", Pattern.UNICODE_CHARACTER_CLASS);
+  private static Pattern nonBreakerDigits = Pattern.compile(NON_BREAKER_DIGITS);
   /**
-   * Do not segment numbers like 11.1.
+   * Compiled language pack with the non breaker prefixes.
    */
-  public static Pattern numbers = Pattern.compile("(\\p{Digit}+[\\.])[\\ ]*(\\p{Digit}+)", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Any non white space followed by a period.
-   */
-  public static Pattern wordDot = Pattern.compile("^(\\S+)\\.$");
-  /**
-   * Any alphabetic character.
-   */
-  public static Pattern alphabetic = Pattern.compile("\\p{Alpha}", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Starts with a lowercase.
-   */
-  public static Pattern startLower = Pattern.compile("^\\p{Lower}+", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Starts with punctuation that is not beginning of sentence marker.
-   */
-  public static Pattern startPunct = Pattern.compile("^[\\!#\\$%&\\(\\)\\*\\+,-\\/:;=>\\?@\\[\\\\\\]\\^\\{\\|\\}~]");
-  /**
-   * Starts with a digit.
-   */
-  public static Pattern startDigit = Pattern.compile("^\\p{Digit}+", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Non breaker prefix read from the files in resources.
-   */
-  private String NON_BREAKER = null;
+  private final CompiledLanguagePack languagePack;
 
   /**
    * 
-   * This constructor reads some non breaking prefixes files in resources to
+   * This constructor gets the non breaking prefixes of the language pack to
    * create exceptions of segmentation and tokenization.
    * 
    * @param properties
    *          the options
    */
   public NonPeriodBreaker(final Properties properties) {
-    loadNonBreaker(properties);
-  }
-
-  private void loadNonBreaker(final Properties properties) {
     final String lang = properties.getProperty("language");
-    if (NON_BREAKER == null) {
-      createNonBreaker(lang);
+    languagePack = LanguagePacks.get(lang);
+    if (languagePack == null) {
+      System.err.println("ERROR: Not language pack for language " + lang
+          + " in the classpath!!");
+      System.exit(1);
     }
   }
 
-  private void createNonBreaker(final String lang) {
-    final List<String> nonBreakerList = new ArrayList<String>();
-
-    final InputStream nonBreakerInputStream = getNonBreakerInputStream(lang);
-    if (nonBreakerInputStream == null) {
-      System.err.println("ERROR: Not nonbreaker file for language " + lang
-          + " in src/main/resources!!");
-      System.exit(1);
-    }
-    final BufferedReader breader = new BufferedReader(new InputStreamReader(
-        nonBreakerInputStream));
-    String line;
-    try {
-      while ((line = breader.readLine()) != null) {
-        line = line.trim();
-        if (!line.startsWith("#")) {
-          nonBreakerList.add(line);
-        }
-      }
-    } catch (final IOException e) {
-      e.printStackTrace();
-    }
-    NON_BREAKER = StringUtils.createDisjunctRegexFromList(nonBreakerList);
+  /**
+   * Check whether a word (without its final period) is a non breaking prefix,
+   * namely, a period after it does not induce a new sentence.
+   * 
+   * @param word
+   *          the word
+   * @return true if the word is a non breaker
+   */
+  public boolean isNonBreaker(final String word) {
+    return languagePack.isNonBreaker(word);
   }
 
-  private final InputStream getNonBreakerInputStream(final String lang) {
-    InputStream nonBreakerInputStream = null;
-    if (lang.equalsIgnoreCase("de")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/de-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("en")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/en-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("es")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/es-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("eu")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/eu-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("fr")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/fr-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("gl")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/gl-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("it")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/it-nonbreaker.txt");
-    } else if (lang.equalsIgnoreCase("nl")) {
-      nonBreakerInputStream = getClass().getResourceAsStream(
-          "/nl-nonbreaker.txt");
-    }
-    return nonBreakerInputStream;
+  /**
+   * Check whether a word (without its final period) is a non breaking prefix
+   * when followed by a number, e.g., "No. 1".
+   * 
+   * @param word
+   *          the word
+   * @return true if the word is a non breaker before digits
+   */
+  public boolean isNonBreakerDigit(final String word) {
+    return RuleProfiler.matches("nonBreakerDigits", nonBreakerDigits, word);
   }
 
   /**
-   * This function implements exceptions for periods as sentence breakers. It
-   * decides when a period induces a new sentence or not.
+   * It decides when periods do not need to be tokenized.
    * 
    * @param line
-   *          the text to be processed
-   * @return segmented text (with newlines included)
+   *          the sentence to be tokenized
+   * @return line
    */
-  public String SegmenterNonBreaker(String line) {
-
-    // these are fine because they do not affect offsets
-    line = line.trim();
-    line = RuleBasedTokenizer.doubleSpaces.matcher(line).replaceAll(" ");
-    final StringBuilder sb = new StringBuilder();
-    String segmentedText = "";
-    int i;
-    final String[] words = line.split(" ");
-    //iterate over the words
-    for (i = 0; i < (words.length - 1); i++) {
-      Matcher nonSegmentedWordMatcher = nonSegmentedWords.matcher(words[i]);
-      //System.err.println("-> IF 01");
-      //candidate word to be segmented found:
-      if (nonSegmentedWordMatcher.find()) {
-        String curWord = nonSegmentedWordMatcher.replaceAll("$1");
-        String finalPunct = nonSegmentedWordMatcher.replaceAll("$2");
-        if (!curWord.isEmpty() && curWord.matches("(" + NON_BREAKER + ")")
-            && finalPunct.isEmpty()) {
-          // if current word is not empty and is a no breaker and there is not
-          // final punctuation
-        } else if (acronym.matcher(words[i]).find()) {
-          // if acronym
-        } else if (nextCandidateWord.matcher(words[i + 1]).find()) {
-          // if next word contains initial punctuation and then uppercase or
-          // digit do:
-          if (!(!curWord.isEmpty() && curWord.matches(NON_BREAKER_DIGITS)
-              && (finalPunct.isEmpty()) && (startDigit.matcher(words[i + 1])
-              .find()))) {
-            // segment unless current word is a non breaker digit and next word
-            // is not final punctuation or does not start with a number
-            words[i] = words[i] + "\n";
-          }
-        }
-      }
-      sb.append(words[i]).append(" ");
-      segmentedText = sb.toString();
-    }
-    // add last index of words array removed for easy look ahead
-    segmentedText = segmentedText + words[i];
-    return segmentedText;
+  public String TokenizerNonBreaker(final String line) {
+    return TokenizerNonBreaker(line, null);
   }
 
   /**
-   * It decides when periods do not need to be tokenized.
+   * It decides when periods do not need to be tokenized, charging the words
+   * looked at to the work budget of the sentence.
    * 
    * @param line
    *          the sentence to be tokenized
+   * @param budget
+   *          the work budget of the sentence, null if there is no limit
    * @return line
    */
-  public String TokenizerNonBreaker(String line) {
+  String TokenizerNonBreaker(String line,
+      final RuleBasedTokenizer.WorkBudget budget) {
 
+    if (budget != null) {
+      budget.charge(line.length());
+    }
     // these are fine because they do not affect offsets
     line = line.trim();
-    line = RuleBasedTokenizer.doubleSpaces.matcher(line).replaceAll(" ");
+    line = RuleProfiler.replaceAll("doubleSpaces",
+        RuleBasedTokenizer.doubleSpaces, line, " ");
+    final long start = RuleProfiler.start();
+    int tokenized = 0;
     final StringBuilder sb = new StringBuilder();
-    String tokenizedText = "";
     int i;
     final String[] words = line.split(" ");
 
     for (i = 0; i < words.length; i++) {
-      final Matcher wordDotMatcher = wordDot.matcher(words[i]);
-
-      // find anything non-whitespace finishing with a period
-      if (wordDotMatcher.find()) {
-        final String curWord = wordDotMatcher.replaceAll("$1");
+      if (budget != null) {
+        budget.charge(words[i].length() + 1);
+      }
+      // find anything non-whitespace finishing with a period, as wordDot
+      final int period = wordDotPeriod(words[i]);
+      if (period != -1) {
+        final String curWord = words[i].substring(0, period)
+            + words[i].substring(period + 1);
 
         if ((curWord.contains(".")
-            && alphabetic.matcher(curWord).find())
-            || curWord.matches("(" + NON_BREAKER + ")")
+            && CharClasses.contains(curWord, CharClasses.ALPHA))
+            || isNonBreaker(curWord)
             || (i < words.length - 1
-            && (startLower.matcher(words[i + 1]).find() || startPunct.matcher(
-                words[i + 1]).find()))) {
+            && (CharClasses.startsWith(words[i + 1], CharClasses.LOWER)
+            || CharClasses.startsWith(words[i + 1],
+                CharClasses.NON_STARTER_PUNCT)))) {
           // do not tokenize if (word contains a period and is alphabetic) OR
           // word is a non breaker OR (word is a non breaker and next is
           // (lowercase or starts with punctuation that is end of sentence
           // marker))
-        } else if (curWord.matches(NON_BREAKER_DIGITS) && i < words.length - 1
-            && startDigit.matcher(words[i + 1]).find()) {
+        } else if (isNonBreakerDigit(curWord) && i < words.length - 1
+            && CharClasses.startsWith(words[i + 1], CharClasses.DIGIT)) {
           // do not tokenize if word is a nonbreaker digit AND next word starts
           // with a digit
         } else {
           words[i] = curWord + " .";
+          tokenized++;
         }
       }
       sb.append(words[i]).append(" ");
-      tokenizedText = sb.toString();
     }
-    return tokenizedText;
+    RuleProfiler.record("nonPeriodBreaker", start, line.length(), tokenized);
+    return sb.toString();
+  }
+
+  /**
+   * The position of the period ending a word as found by the former
+   * {@code ^(\S+)\.$} wordDot pattern: non-whitespace followed by a period.
+   * 
+   * @param word
+   *          the word
+   * @return the position of the period or -1 if the word does not match
+   */
+  private static int wordDotPeriod(final String word) {
+    final int length = word.length();
+    int nonSpaceEnd = 0;
+    while (nonSpaceEnd < length && !isAsciiSpace(word.charAt(nonSpaceEnd))) {
+      nonSpaceEnd++;
+    }
+    // $ matches at the end or before a final line terminator
+    for (int i = Math.min(length, nonSpaceEnd) - 1; i >= 1
+        && i >= length - 3; i--) {
+      if (word.charAt(i) == '.' && isEnd(word, i + 1)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isAsciiSpace(final char c) {
+    return c == ' ' || c >= '\t' && c <= '\r';
+  }
+
+  /**
+   * Whether $ matches at a position of a word.
+   */
+  private static boolean isEnd(final String word, final int i) {
+    final int length = word.length();
+    if (i == length) {
+      return true;
+    }
+    final char c = word.charAt(i);
+    if (i == length - 2) {
+      return c == '\r' && word.charAt(i + 1) == '\n';
+    }
+    if (i == length - 1) {
+      if (c == '\n') {
+        return i == 0 || word.charAt(i - 1) != '\r';
+      }
+      return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+    return false;
   }
 
 }
@@ -16,10 +16,15 @@
 
 package eus.ixa.ixa.pipe.tok;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+import eus.ixa.ixa.pipe.lang.CompiledLanguagePack;
+import eus.ixa.ixa.pipe.lang.LanguagePack;
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
 /**
  * Normalizer class for converting punctuation mostly following various corpora
  * conventions such as Penn TreeBank, Ancora, Tutpenn, Tiger and CTAG.
@@ -35,31 +40,59 @@ public class Normalizer {
   }
 
   public static final String THREE_DOTS = "...";
-  public static final Pattern ellipsis = Pattern.compile("[\u2026\u8230]");
-  public static final Pattern longDash = Pattern.compile("–|[\u2014\u8212]");
-
-  public static final Pattern oneFourth = Pattern.compile("\u00BC");
-  public static final Pattern oneThird = Pattern.compile("\u2153");
-  public static final Pattern oneHalf = Pattern.compile("\u00BD");
-  public static final Pattern twoThirds = Pattern.compile("\u2154");
-  public static final Pattern threeQuarters = Pattern.compile("\u00BE");
-
-  private static final Pattern cents = Pattern.compile("\u00A2");
-  private static final Pattern sterling = Pattern.compile("\u00A3");
-
-  public static final Pattern apostrophe = Pattern.compile("['\u0027\u0092\u2019]");
-  public static final Pattern leftSingleQuote = Pattern.compile("[\u0091\u201B\u2018\u2039]");
-  public static final Pattern rightSingleQuote = Pattern.compile("[\u0027\u0092\u203A\u2019]");
-  public static final Pattern leftDoubleQuote = Pattern.compile("[\u00AB\u0093\u201C]");
-  public static final Pattern rightDoubleQuote = Pattern.compile("[\u00BB\u0094\u201D]");
+
   public static final Pattern singleAsciiQuote = Pattern.compile("'|\u0027");
   public static final Pattern invertSingleAsciiQuote = Pattern.compile("([\\p{Alpha}])([^\\p{Space}])", Pattern.UNICODE_CHARACTER_CLASS);
   public static final Pattern doubleAsciiQuote = Pattern.compile("\"");
   public static final Pattern doubleAsciiQuoteAlphaNumeric = Pattern.compile("([\\p{Alpha}\\p{Digit}$])", Pattern.UNICODE_CHARACTER_CLASS);
 
   public static final String TO_ASCII_SINGLE_QUOTE = "[\u0027\u0091\u0092\u2019\u201A\u201B\u203A\u2018\u2039]";
-  public static final Pattern toAsciiSingleQuote = Pattern.compile("[\u0027\u0091\u0092\u2019\u201A\u201B\u203A\u2018\u2039]");
-  public static final Pattern toAsciiDoubleQuote = Pattern.compile("[\u00AB\u00BB\u0093\u0094\u201C\u201D\u201E\"]");
+
+  /**
+   * Get the language independent normalization of non canonical characters:
+   * apostrophes, ellipsis, long dashes, fractions and cents.
+   * @return the characters and their normalized strings
+   */
+  public static Map<Character, String> getCharacterNormalization() {
+    final Map<Character, String> table = new HashMap<Character, String>();
+    putAll(table, "'\u0027\u0092\u2019", "'");
+    putAll(table, "\u2026\u8230", THREE_DOTS);
+    putAll(table, "\u2013\u2014\u8212", "--");
+    table.put('\u00BC', "1/4");
+    table.put('\u2153', "1/3");
+    table.put('\u00BD', "1/2");
+    table.put('\u2154', "2/3");
+    table.put('\u00BE', "3/4");
+    table.put('\u00A2', "cents");
+    return table;
+  }
+
+  /**
+   * Get the normalization of non ambiguous quotes for a quote convention.
+   * @param convention the quote convention
+   * @return the characters and their normalized strings
+   */
+  public static Map<Character, String> getQuoteNormalization(
+      final LanguagePack.QuoteConvention convention) {
+    final Map<Character, String> table = new HashMap<Character, String>();
+    if (convention == LanguagePack.QuoteConvention.PENN_TREEBANK) {
+      putAll(table, "\u0091\u201B\u2018\u2039", "`");
+      putAll(table, "\u0027\u0092\u203A\u2019", "'");
+      putAll(table, "\u00AB\u0093\u201C", "``");
+      putAll(table, "\u00BB\u0094\u201D", "''");
+    } else {
+      putAll(table, "\u0027\u0091\u0092\u2019\u201A\u201B\u203A\u2018\u2039", "'");
+      putAll(table, "\u00AB\u00BB\u0093\u0094\u201C\u201D\u201E\"", "\"");
+    }
+    return table;
+  }
+
+  private static void putAll(final Map<Character, String> table,
+      final String chars, final String replacement) {
+    for (int i = 0; i < chars.length(); i++) {
+      table.put(chars.charAt(i), replacement);
+    }
+  }
 
   /**
    * Converts non-unicode and other strings into their unicode
@@ -69,38 +102,19 @@ public class Normalizer {
    */
   public static void convertNonCanonicalStrings(final List<Token> sentence,
       final String lang) {
-    // System.err.println((int)'’');
+    convertNonCanonicalStrings(sentence, LanguagePacks.get(lang));
+  }
+
+  /**
+   * Converts non-unicode and other strings into their unicode
+   * counterparts.
+   * @param sentence the list of tokens
+   * @param pack the language pack
+   */
+  public static void convertNonCanonicalStrings(final List<Token> sentence,
+      final CompiledLanguagePack pack) {
     for (final Token token : sentence) {
-      token.setTokenValue(apostrophe.matcher(token.getTokenValue()).replaceAll(
-          "'"));
-      token.setTokenValue(ellipsis.matcher(token.getTokenValue()).replaceAll(
-          THREE_DOTS));
-      token.setTokenValue(longDash.matcher(token.getTokenValue()).replaceAll(
-          "--"));
-      if (lang.equalsIgnoreCase("en")) {
-        token.setTokenValue(oneFourth.matcher(token.getTokenValue())
-            .replaceAll("1\\\\/4"));
-        token.setTokenValue(oneThird.matcher(token.getTokenValue()).replaceAll(
-            "1\\\\/3"));
-        token.setTokenValue(oneHalf.matcher(token.getTokenValue()).replaceAll(
-            "1\\\\/2"));
-        token.setTokenValue(threeQuarters.matcher(token.getTokenValue())
-            .replaceAll("3\\\\/4"));
-        token.setTokenValue(sterling.matcher(token.getTokenValue()).replaceAll(
-            "#"));
-      }
-      token.setTokenValue(oneFourth.matcher(token.getTokenValue()).replaceAll(
-          "1/4"));
-      token.setTokenValue(oneThird.matcher(token.getTokenValue()).replaceAll(
-          "1/3"));
-      token.setTokenValue(oneHalf.matcher(token.getTokenValue()).replaceAll(
-          "1/2"));
-      token.setTokenValue(twoThirds.matcher(token.getTokenValue()).replaceAll(
-          "2/3"));
-      token.setTokenValue(threeQuarters.matcher(token.getTokenValue())
-          .replaceAll("3/4"));
-      token.setTokenValue(cents.matcher(token.getTokenValue()).replaceAll(
-          "cents"));
+      token.setTokenValue(pack.normalizeCharacters(token.getTokenValue()));
     }
   }
 
@@ -111,26 +125,18 @@ public class Normalizer {
    */
   public static void normalizeQuotes(final List<Token> sentence,
       final String lang) {
+    normalizeQuotes(sentence, LanguagePacks.get(lang));
+  }
 
+  /**
+   * Normalizes non-ambiguous quotes according to language and corpus.
+   * @param sentence the list of tokens
+   * @param pack the language pack
+   */
+  public static void normalizeQuotes(final List<Token> sentence,
+      final CompiledLanguagePack pack) {
     for (final Token token : sentence) {
-      if (lang.equalsIgnoreCase("en")) {
-        token.setTokenValue(leftSingleQuote.matcher(token.getTokenValue())
-            .replaceAll("`"));
-        token.setTokenValue(rightSingleQuote.matcher(token.getTokenValue())
-            .replaceAll("'"));
-        token.setTokenValue(leftDoubleQuote.matcher(token.getTokenValue())
-            .replaceAll("``"));
-        token.setTokenValue(rightDoubleQuote.matcher(token.getTokenValue())
-            .replaceAll("''"));
-      } else if (lang.equalsIgnoreCase("de") || lang.equalsIgnoreCase("es")
-          || lang.equalsIgnoreCase("eu") || lang.equalsIgnoreCase("fr")
-          || lang.equalsIgnoreCase("gl") || lang.equalsIgnoreCase("it")
-          || lang.equalsIgnoreCase("nl")) {
-        token.setTokenValue(toAsciiSingleQuote.matcher(token.getTokenValue())
-            .replaceAll("'"));
-        token.setTokenValue(toAsciiDoubleQuote.matcher(token.getTokenValue())
-            .replaceAll("\""));
-      }
+      token.setTokenValue(pack.normalizeQuotes(token.getTokenValue()));
     }
   }
 
@@ -142,36 +148,75 @@ public class Normalizer {
    */
   public static void normalizeDoubleQuotes(final List<Token> sentence,
       final String lang) {
+    normalizeDoubleQuotes(sentence, LanguagePacks.get(lang));
+  }
+
+  /**
+   * Normalizes double and ambiguous quotes according to language
+   * and corpus.
+   * @param sentence the list of tokens
+   * @param pack the language pack
+   */
+  public static void normalizeDoubleQuotes(final List<Token> sentence,
+      final CompiledLanguagePack pack) {
 
+    if (!pack.isPennTreebankQuotes()) {
+      return;
+    }
     boolean isLeft = true;
     for (int i = 0; i < sentence.size(); i++) {
-      if (lang.equalsIgnoreCase("en")) {
-        final Matcher doubleAsciiQuoteMatcher = doubleAsciiQuote
-            .matcher(sentence.get(i).getTokenValue());
-        final Matcher singleAsciiQuoteMatcher = singleAsciiQuote
-            .matcher(sentence.get(i).getTokenValue());
-        // if current token is "
-        if (doubleAsciiQuoteMatcher.find()) {
-          if (isLeft
-              && i < sentence.size() - 1
-              && doubleAsciiQuoteAlphaNumeric.matcher(
-                  sentence.get(i + 1).getTokenValue()).find()) {
-            sentence.get(i).setTokenValue("``");
-            isLeft = false;
-          } else if (!isLeft) {
-            sentence.get(i).setTokenValue("''");
-            isLeft = true;
-          }
-        } else if (singleAsciiQuoteMatcher.find()) {
-          if (i < sentence.size() - 2
-              && sentence.get(i + 1).getTokenValue().matches("[A-Za-z]")
-              && sentence.get(i + 2).getTokenValue()
-                  .matches("[^ \t\n\r\u00A0\u00B6]")) {
-            sentence.get(i).setTokenValue("`");
-          }
+      final String token = sentence.get(i).getTokenValue();
+      // if current token is "
+      if (token.indexOf('"') != -1) {
+        if (isLeft
+            && i < sentence.size() - 1
+            && isDoubleQuoteAlphaNumeric(sentence.get(i + 1).getTokenValue())) {
+          sentence.get(i).setTokenValue("``");
+          isLeft = false;
+        } else if (!isLeft) {
+          sentence.get(i).setTokenValue("''");
+          isLeft = true;
+        }
+      } else if (token.indexOf('\'') != -1) {
+        if (i < sentence.size() - 2
+            && isAsciiLetter(sentence.get(i + 1).getTokenValue())
+            && isNonBlank(sentence.get(i + 2).getTokenValue())) {
+          sentence.get(i).setTokenValue("`");
         }
       }
     }
   }
 
+  /**
+   * Whether a token contains a match of {@link #doubleAsciiQuoteAlphaNumeric}.
+   */
+  private static boolean isDoubleQuoteAlphaNumeric(final String token) {
+    return token.indexOf('$') != -1
+        || CharClasses.contains(token, CharClasses.ALPHA | CharClasses.DIGIT);
+  }
+
+  /**
+   * Whether a token is a single character in [A-Za-z].
+   */
+  private static boolean isAsciiLetter(final String token) {
+    if (token.length() != 1) {
+      return false;
+    }
+    final char c = token.charAt(0);
+    return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+  }
+
+  /**
+   * Whether a token is a single character in [^ \t\n\r\u00A0\u00B6].
+   */
+  private static boolean isNonBlank(final String token) {
+    if (token.isEmpty()
+        || Character.charCount(token.codePointAt(0)) != token.length()) {
+      return false;
+    }
+    final char c = token.charAt(0);
+    return c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\u00A0'
+        && c != '\u00B6';
+  }
+
 }
@@ -0,0 +1,171 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+
+/**
+ * Streaming reader of already tokenized text, one sentence per line and
+ * tokens separated by spaces. Tokens are read one at a time with their
+ * character offset in the input, so the text is never held in memory.
+ * Paragraph marks ({@link RuleBasedSegmenter#PARAGRAPH}) start a new
+ * paragraph.
+ */
+class PreTokenizedReader {
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int bufferPosition;
+  private int bufferLength;
+  private final StringBuilder token = new StringBuilder();
+  /**
+   * Characters read so far.
+   */
+  private int position;
+  private int offset;
+  private int noSents;
+  private int noParas = 1;
+  private boolean lineStart = true;
+  private boolean lineHasTokens;
+  private boolean sentenceStart;
+  private boolean afterCarriageReturn;
+
+  /**
+   * Construct a reader of tokenized text.
+   * @param reader the tokenized text
+   */
+  PreTokenizedReader(final Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Read the next token.
+   * @return false if the text has ended
+   * @throws IOException if io error
+   */
+  boolean next() throws IOException {
+    token.setLength(0);
+    int c;
+    while ((c = read()) != -1) {
+      position++;
+      if (afterCarriageReturn) {
+        afterCarriageReturn = false;
+        if (c == '\n') {
+          continue;
+        }
+      }
+      if (lineStart) {
+        // every line is a sentence, even if empty
+        ++noSents;
+        lineStart = false;
+        lineHasTokens = false;
+      }
+      if (c == '\n' || c == '\r') {
+        afterCarriageReturn = c == '\r';
+        lineStart = true;
+        if (token.length() > 0) {
+          break;
+        }
+      } else if (c == ' ' || c == '\t') {
+        if (token.length() > 0) {
+          break;
+        }
+      } else {
+        if (token.length() == 0) {
+          offset = position - 1;
+          sentenceStart = !lineHasTokens;
+          lineHasTokens = true;
+        }
+        token.append((char) c);
+      }
+    }
+    if (token.length() == 0) {
+      return false;
+    }
+    if (isParagraph()) {
+      ++noParas;
+      // a paragraph is at least a sentence
+      while (noParas > noSents) {
+        ++noSents;
+      }
+    }
+    return true;
+  }
+
+  private int read() throws IOException {
+    if (bufferPosition == bufferLength) {
+      bufferLength = reader.read(buffer);
+      bufferPosition = 0;
+      if (bufferLength <= 0) {
+        bufferLength = 0;
+        return -1;
+      }
+    }
+    return buffer[bufferPosition++];
+  }
+
+  /**
+   * Get the token.
+   * @return the token
+   */
+  String getToken() {
+    return token.toString();
+  }
+
+  /**
+   * Whether the token is a paragraph mark.
+   * @return true if the token is a paragraph mark
+   */
+  boolean isParagraph() {
+    return token.length() == RuleBasedSegmenter.PARAGRAPH.length()
+        && RuleBasedSegmenter.PARAGRAPH.contentEquals(token);
+  }
+
+  /**
+   * Whether the token is the first of its line.
+   * @return true if the token starts a sentence
+   */
+  boolean isSentenceStart() {
+    return sentenceStart;
+  }
+
+  /**
+   * Get the offset of the token in the text.
+   * @return the offset in characters
+   */
+  int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the sentence of the token.
+   * @return the sentence number, from 1
+   */
+  int getSentence() {
+    return noSents;
+  }
+
+  /**
+   * Get the paragraph of the token.
+   * @return the paragraph number, from 1
+   */
+  int getParagraph() {
+    return noParas;
+  }
+
+}
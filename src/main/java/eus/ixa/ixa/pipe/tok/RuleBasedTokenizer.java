@@ -19,10 +19,13 @@ package eus.ixa.ixa.pipe.tok;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Matcher;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import eus.ixa.ixa.pipe.lang.CompiledLanguagePack;
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
 import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+import eus.ixa.ixa.pipe.seg.Span;
 
 /**
  * This class provides a multilingual rule based tokenizer. The
@@ -68,18 +71,6 @@ public class RuleBasedTokenizer implements Tokenizer {
    */
   public static Pattern spaceDashSpace = Pattern
       .compile("([\\ ]+[\u2014\u8212–\\-/]+|[\u2014\u8212–\\-/]+[\\ ]+)");
-  /**
-   * Multidots.
-   */
-  public static Pattern multiDots = Pattern.compile("\\.([\\.]+)");
-  /**
-   * Multi dot pattern and extra dot.
-   */
-  public static Pattern dotmultiDot = Pattern.compile("DOTMULTI\\.");
-  /**
-   * Dot multi pattern followed by anything.
-   */
-  public static Pattern dotmultiDotAny = Pattern.compile("DOTMULTI\\.([^\\.])");
   /**
    * No digit comma.
    */
@@ -100,23 +91,6 @@ public class RuleBasedTokenizer implements Tokenizer {
    */
   public static Pattern noDigitCommaDigit = Pattern.compile(
       "([^\\p{Digit}])(,|:)(\\p{Digit})", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Top level domains for stopping the wrongLink pattern below.
-   */
-  public static final String TLD = "\\.asp|\\.at|\\.au|\\.az|\\.be|\\.biz|\\.cat|\\.ch|\\.com|\\.cym|\\.cz|\\.de|\\.dk|\\.edu|\\.es|\\.eu|\\.eus|\\.fr|\\.gal|\\.gov|\\.hk|\\.hu|\\.ie|\\.il|\\.info|\\.htm|\\.html|\\.it|\\.jp|\\.pl|\\.pt|\\.net|\\.nl|\\.org|\\.ru|\\.se|\\.sg|\\.sv|\\.uk|\\.zw";
-  /**
-   * Detect wrongly tokenized links.
-   */
-  public static Pattern wrongLink = Pattern.compile(
-      "((http|ftp)\\s:\\s//\\s*[\\s\\p{Alpha}\\p{Digit}+&@#/%?=~_|!:,.;-]+("
-          + TLD + "))", Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Re-tokenize beginning of link.
-   */
-  public static Pattern beginLink = Pattern
-      .compile("(http|ftp)(\\s:\\s)(/\\s*/\\s*)");
-  
-  public static Pattern endLink = Pattern.compile("(" + TLD + ")\\s+(/)");
   /**
    * No alphabetic apostrophe and no alphabetic.
    */
@@ -142,12 +116,6 @@ public class RuleBasedTokenizer implements Tokenizer {
   public static Pattern AlphaAposAlpha = Pattern.compile("(\\p{Alpha})("
       + Normalizer.TO_ASCII_SINGLE_QUOTE + ")(\\p{Alpha})",
       Pattern.UNICODE_CHARACTER_CLASS);
-  /**
-   * Split English negative contractions.
-   */
-  public static Pattern englishNegations = Pattern.compile("(\\p{Alpha})(n"
-      + Normalizer.TO_ASCII_SINGLE_QUOTE + ")([t])",
-      Pattern.UNICODE_CHARACTER_CLASS);
   /**
    * Split English apostrophes.
    */
@@ -175,13 +143,66 @@ public class RuleBasedTokenizer implements Tokenizer {
   public static Pattern detokenParagraphs = Pattern.compile(
       "(\u00B6)[\\ ]*(\u00B6)", Pattern.UNICODE_CHARACTER_CLASS);
 
+  /**
+   * Stands for a link or multidot while the rules run: a control character
+   * which asciiHex removes from the text and trim() keeps, and which the
+   * specials rule sets off with spaces as the former DOTMULTI placeholders
+   * were.
+   */
+  private static final char MASK = '\u0080';
+
   private static boolean DEBUG = false;
+  /**
+   * Default maximum length of a sentence processed by the rules.
+   */
+  public static final int DEFAULT_MAX_SENTENCE_LENGTH = 100000;
+  /**
+   * Default work budget for tokenizing a sentence, in characters read by the
+   * rules per character of the sentence; 0 is no limit. Ordinary sentences
+   * need well under a hundred.
+   */
+  public static final int DEFAULT_SENTENCE_WORK_BUDGET = 1000;
+  /**
+   * Number of sentences tokenized with the fallback tokenizer since startup.
+   */
+  private static final AtomicLong FALLBACK_COUNT = new AtomicLong();
 
   private final TokenFactory tokenFactory;
+  /**
+   * The pool of token values, null if values are not interned.
+   */
+  private final TokenInterner interner;
   private final NonPeriodBreaker nonBreaker;
-  private final String lang;
+  private final LinkRecognizer linkRecognizer;
+  private final CompiledLanguagePack languagePack;
+  private final Pattern[] contractionPatterns;
+  private final String[] contractionReplacements;
+  /**
+   * The names of the contraction rules for profiling.
+   */
+  private final String[] contractionRules;
   private final String originalText;
   private boolean unTokenizable;
+  /**
+   * Longer sentences are tokenized with the fallback tokenizer.
+   */
+  private final int maxSentenceLength;
+  /**
+   * Characters the rules may read per character of a sentence.
+   */
+  private final int sentenceWorkBudget;
+  /**
+   * The budget of the sentence being tokenized, null if there is no limit.
+   */
+  private WorkBudget sentenceBudget;
+  /**
+   * Whether the statistics of each tokenization are left out of stderr.
+   */
+  private final boolean quiet;
+  /**
+   * Number of sentences tokenized with the fallback tokenizer.
+   */
+  private int noFallbacks;
 
   /**
    * Construct a rule based tokenizer.
@@ -189,12 +210,26 @@ public class RuleBasedTokenizer implements Tokenizer {
    * @param text
    *          the text used for offset calculation
    * @param properties
-   *          the options
+   *          the options; quiet leaves the statistics out of stderr
    */
   public RuleBasedTokenizer(final String text, final Properties properties) {
-    lang = properties.getProperty("language");
     printUntokenizable(properties);
     nonBreaker = new NonPeriodBreaker(properties);
+    languagePack = LanguagePacks.get(properties.getProperty("language"));
+    contractionPatterns = languagePack.getContractionPatterns();
+    contractionReplacements = languagePack.getContractionReplacements();
+    contractionRules = new String[contractionPatterns.length];
+    for (int i = 0; i < contractionPatterns.length; i++) {
+      contractionRules[i] = "contraction " + contractionPatterns[i].pattern();
+    }
+    linkRecognizer = new LinkRecognizer();
+    maxSentenceLength = Integer.parseInt(properties.getProperty(
+        "maxSentenceLength", Integer.toString(DEFAULT_MAX_SENTENCE_LENGTH)));
+    sentenceWorkBudget = Integer.parseInt(properties.getProperty(
+        "sentenceWorkBudget", Integer.toString(DEFAULT_SENTENCE_WORK_BUDGET)));
+    interner = Boolean.parseBoolean(properties.getProperty("intern")) ? TokenInterner
+        .getDefault() : null;
+    quiet = Boolean.parseBoolean(properties.getProperty("quiet"));
     tokenFactory = new TokenFactory();
     // TODO improve this
     originalText = RuleBasedSegmenter.buildText(text);
@@ -209,45 +244,261 @@ public class RuleBasedTokenizer implements Tokenizer {
     final long start = System.nanoTime();
     int noTokens = 0;
     int prevIndex = 0;
-    int curIndex = 0;
-    final String language = lang;
     final List<List<Token>> result = new ArrayList<List<Token>>();
     // TODO improve this
     final String offsetText = originalText;
     for (final String sentence : sentences) {
-      if (DEBUG) {
-        System.err.println("-> Segmented:" + sentence);
-      }
       final List<Token> tokens = new ArrayList<Token>();
-      final String[] curTokens = getTokens(sentence);
-      for (final String arrayToken : curTokens) {
-        curIndex = offsetText.indexOf(arrayToken, prevIndex);
-        // crap rule for corrected URLs
-        if (curIndex == -1) {
-          curIndex = prevIndex + 1;
-        }
-        final Token curToken = tokenFactory.createToken(arrayToken, curIndex,
-            arrayToken.length());
-        //exceptions to WFs
-        addTokens(curToken, tokens);
-        if (DEBUG) {
-          System.err.println("-> Token:" + arrayToken + " curIndex: " + curIndex
-              + " prev: " + prevIndex);
-        }
-        prevIndex = curIndex + curToken.tokenLength();
-      }
+      prevIndex = tokenizeSentence(sentence, offsetText, prevIndex, tokens);
       result.add(tokens);
-      noTokens = noTokens + curTokens.length;
+      noTokens = noTokens + tokens.size();
     }
-    normalizeTokens(result, language);
+    normalize(result);
     final long duration = System.nanoTime() - start;
     final double toksPerSecond = noTokens / (duration / 1000000000.0);
-    System.err.printf(
-        "ixa-pipe-tok tokenized %d tokens at %.2f tokens per second.%n",
-        noTokens, toksPerSecond);
+    if (interner != null) {
+      interner.flush();
+    }
+    if (!quiet) {
+      System.err.printf(
+          "ixa-pipe-tok tokenized %d tokens at %.2f tokens per second.%n",
+          noTokens, toksPerSecond);
+      if (noFallbacks > 0) {
+        System.err.printf(
+            "ixa-pipe-tok used fallback tokenization for %d sentences.%n",
+            noFallbacks);
+      }
+      if (interner != null) {
+        System.err.printf(
+            "ixa-pipe-tok interned %d token values with %.2f%% hits in the pool of %d values, saving about %d bytes.%n",
+            interner.getLookups(), interner.getHitRate() * 100,
+            interner.getEntries(), interner.getSavedBytes());
+      }
+    }
     return result;
   }
 
+  /**
+   * Tokenize a sentence, without normalization. The offset of each token is
+   * its first occurrence in the offset text after the previous token.
+   * 
+   * @param sentence
+   *          the sentence
+   * @param offsetText
+   *          the text containing the sentence
+   * @param prevIndex
+   *          the end of the previous token in the offset text
+   * @param tokens
+   *          the list to which the tokens are added
+   * @return the end of the last token in the offset text
+   */
+  int tokenizeSentence(final String sentence, final String offsetText,
+      int prevIndex, final List<Token> tokens) {
+    if (DEBUG) {
+      System.err.println("-> Segmented:" + sentence);
+    }
+    int curIndex;
+    final String[] curTokens = getTokensWithinBudget(sentence);
+    for (final String arrayToken : curTokens) {
+      curIndex = offsetText.indexOf(arrayToken, prevIndex);
+      // crap rule for corrected URLs
+      if (curIndex == -1) {
+        curIndex = prevIndex + 1;
+      }
+      final Token curToken = tokenFactory.createToken(arrayToken, curIndex,
+          arrayToken.length());
+      //exceptions to WFs
+      addTokens(curToken, tokens);
+      if (DEBUG) {
+        System.err.println("-> Token:" + arrayToken + " curIndex: " + curIndex
+            + " prev: " + prevIndex);
+      }
+      prevIndex = curIndex + curToken.tokenLength();
+    }
+    return prevIndex;
+  }
+
+  /**
+   * Normalize the tokens following the language pack of the tokenizer and,
+   * if interning is on, replace their final values by the shared instances,
+   * so that neither the values created by the tokenizer nor those created by
+   * the normalizer are kept.
+   * 
+   * @param tokens
+   *          the tokens
+   */
+  void normalize(final List<List<Token>> tokens) {
+    normalizeTokens(tokens, languagePack);
+    if (interner != null) {
+      for (final List<Token> sentence : tokens) {
+        for (final Token token : sentence) {
+          token.setTokenValue(interner.intern(token.getTokenValue()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the number of sentences tokenized with the fallback tokenizer since
+   * startup because they exceeded the length or work budget.
+   * 
+   * @return the number of sentences
+   */
+  public static long getFallbackCount() {
+    return FALLBACK_COUNT.get();
+  }
+
+  /**
+   * Tokenize a sentence with the rules unless it is longer than the maximum
+   * sentence length or the rules exceed the work budget, in which case the
+   * fallback tokenizer is used. The budget counts the characters read by the
+   * rules, so the outcome does not depend on the load of the machine.
+   * 
+   * @param line
+   *          the sentence to be tokenized
+   * @return an array containing the tokens for the sentence
+   */
+  private String[] getTokensWithinBudget(final String line) {
+    if (maxSentenceLength <= 0 || line.length() <= maxSentenceLength) {
+      sentenceBudget = sentenceWorkBudget > 0 ? new WorkBudget(
+          (long) sentenceWorkBudget * Math.max(1, line.length())) : null;
+      try {
+        return getTokens(line);
+      } catch (final BudgetExceededException e) {
+        // fall through
+      }
+    }
+    noFallbacks++;
+    FALLBACK_COUNT.incrementAndGet();
+    final long start = RuleProfiler.start();
+    final String[] tokens = getFallbackTokens(line);
+    RuleProfiler.record("fallback", start, line.length(), tokens.length);
+    return tokens;
+  }
+
+  /**
+   * Cheap tokenization splitting whitespace and punctuation: every run of
+   * letters and digits is a token and every other character is a token by
+   * itself, except that two paragraph marks are one token as with the rules.
+   * Tokens are substrings of the sentence so offsets are kept.
+   * 
+   * @param line
+   *          the sentence to be tokenized
+   * @return an array containing the tokens for the sentence
+   */
+  private String[] getFallbackTokens(final String line) {
+    final List<String> tokens = new ArrayList<String>();
+    final int length = line.length();
+    int i = 0;
+    while (i < length) {
+      int cp = line.codePointAt(i);
+      if (CharClasses.isBlank(cp)) {
+        i += Character.charCount(cp);
+        continue;
+      }
+      int end = i + Character.charCount(cp);
+      if (cp == '\u00B6' && end < length && line.charAt(end) == '\u00B6') {
+        end++;
+      } else if (CharClasses.isLetterOrDigit(cp)) {
+        while (end < length) {
+          cp = line.codePointAt(end);
+          if (!CharClasses.isLetterOrDigit(cp)) {
+            break;
+          }
+          end += Character.charCount(cp);
+        }
+      }
+      tokens.add(line.substring(i, end));
+      i = end;
+    }
+    return tokens.toArray(new String[tokens.size()]);
+  }
+
+  /**
+   * Wrap a line for matching so that the rules stop when the work budget of
+   * the sentence is exhausted.
+   * 
+   * @param line
+   *          the line
+   * @return the line to be matched
+   */
+  private CharSequence budgeted(final String line) {
+    if (sentenceBudget == null) {
+      return line;
+    }
+    return new BudgetedCharSequence(line, sentenceBudget);
+  }
+
+  /**
+   * The characters the rules may still read while tokenizing a sentence.
+   */
+  static class WorkBudget {
+
+    private long remaining;
+
+    WorkBudget(final long remaining) {
+      this.remaining = remaining;
+    }
+
+    /**
+     * Count some work, stopping the rules if the budget is exhausted.
+     * 
+     * @param characters
+     *          the characters read
+     */
+    void charge(final long characters) {
+      remaining -= characters;
+      if (remaining < 0) {
+        throw new BudgetExceededException();
+      }
+    }
+  }
+
+  /**
+   * Signals that the work budget of a sentence is exhausted.
+   */
+  static class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    BudgetExceededException() {
+      super("Sentence work budget exceeded", null, false, false);
+    }
+  }
+
+  /**
+   * A CharSequence which charges every access to a work budget, so that
+   * regular expressions matching on it stop when it is exhausted.
+   */
+  private static class BudgetedCharSequence implements CharSequence {
+
+    private final CharSequence text;
+    private final WorkBudget budget;
+
+    BudgetedCharSequence(final CharSequence text, final WorkBudget budget) {
+      this.text = text;
+      this.budget = budget;
+    }
+
+    public char charAt(final int index) {
+      budget.charge(1);
+      return text.charAt(index);
+    }
+
+    public int length() {
+      return text.length();
+    }
+
+    public CharSequence subSequence(final int start, final int end) {
+      return new BudgetedCharSequence(text.subSequence(start, end), budget);
+    }
+
+    @Override
+    public String toString() {
+      return text.toString();
+    }
+  }
+
   /**
    * Actual tokenization function.
    * 
@@ -259,45 +510,26 @@ public class RuleBasedTokenizer implements Tokenizer {
 
     // these are fine because they do not affect offsets
     line = line.trim();
-    line = doubleSpaces.matcher(line).replaceAll(" ");
+    line = RuleProfiler.replaceAll("doubleSpaces", doubleSpaces, line, " ");
     //remove non printable stuff
-    line = asciiHex.matcher(line).replaceAll(" ");
-    line = generalBlankPunctuation.matcher(line).replaceAll(" ");
-    
-    // separate question and exclamation marks
-    line = qexc.matcher(line).replaceAll(" $1 ");
-    // separate dash if before or after space
-    line = spaceDashSpace.matcher(line).replaceAll(" $1 ");
-    // tokenize everything but these characters [^\p{Alnum}s.'`,-?!/]
-    line = specials.matcher(line).replaceAll(" $1 ");
-
-    // do not separate multidots
-    line = generateMultidots(line);
-
-    // separate "," except if within numbers (1,200)
-    line = noDigitComma.matcher(line).replaceAll("$1 $2");
-    line = commaNoDigit.matcher(line).replaceAll("$1 $2");
-    // separate pre and post digit
-    line = digitCommaNoDigit.matcher(line).replaceAll("$1 $2 $3");
-    line = noDigitCommaDigit.matcher(line).replaceAll("$1 $2 $3");
-
-    // contractions it's, l'agila, c'est, don't
-    line = treatContractions(line);
-    // exceptions for period tokenization
-    line = nonBreaker.TokenizerNonBreaker(line);
+    line = RuleProfiler.replaceAll("asciiHex", asciiHex, line, " ");
+    line = RuleProfiler.replaceAll("generalBlankPunctuation",
+        generalBlankPunctuation, line, " ");
 
-    // restore multidots
-    line = restoreMultidots(line);
-    // urls
-    // TODO normalize URLs after tokenization for offsets
-    line = detokenizeURLs(line);
-    line = beginLink.matcher(line).replaceAll("$1://");
-    line = endLink.matcher(line).replaceAll("$1$2");
+    // urls, e-mails and multidots are kept as they are
+    final List<Span> protectedSpans = getProtectedSpans(line);
+    final String unmasked = line;
+    line = tokenizeText(protectedSpans.isEmpty() ? line : mask(line,
+        protectedSpans));
 
     // these are fine because they do not affect offsets
     line = line.trim();
-    line = doubleSpaces.matcher(line).replaceAll(" ");
-    line = detokenParagraphs.matcher(line).replaceAll("$1$2");
+    line = RuleProfiler.replaceAll("doubleSpaces", doubleSpaces, line, " ");
+    line = RuleProfiler.replaceAll("detokenParagraphs", detokenParagraphs,
+        line, "$1$2");
+    if (!protectedSpans.isEmpty()) {
+      line = unmask(line, unmasked, protectedSpans);
+    }
 
     if (DEBUG) {
       System.out.println("->Tokens:" + line);
@@ -307,86 +539,164 @@ public class RuleBasedTokenizer implements Tokenizer {
   }
 
   /**
-   * This function normalizes multi-period expressions (...) to make
-   * tokenization easier.
+   * Replace every protected span of a sentence by a {@link #MASK} character,
+   * so that the rules still see the characters around the spans.
    * 
    * @param line
-   * @return string
-   */
-  private String generateMultidots(String line) {
-
-    line = multiDots.matcher(line).replaceAll(" DOTMULTI$1 ");
-    final Matcher dotMultiDot = dotmultiDot.matcher(line);
+   *          the sentence
+   * @param spans
+   *          the protected spans, in order
+   * @return the masked sentence
+   */
+  private static String mask(final String line, final List<Span> spans) {
+    final StringBuilder sb = new StringBuilder(line.length());
+    int prevEnd = 0;
+    for (final Span span : spans) {
+      sb.append(line, prevEnd, span.getStart()).append(MASK);
+      prevEnd = span.getEnd();
+    }
+    return sb.append(line, prevEnd, line.length()).toString();
+  }
 
-    while (dotMultiDot.find()) {
-      line = dotmultiDotAny.matcher(line).replaceAll("DOTDOTMULTI $1");
-      line = dotMultiDot.replaceAll("DOTDOTMULTI");
-      // reset the matcher otherwise the while will stop after one run
-      dotMultiDot.reset(line);
+  /**
+   * Put back the protected spans in place of the masks, in order.
+   * 
+   * @param line
+   *          the tokenized sentence
+   * @param unmasked
+   *          the sentence before masking
+   * @param spans
+   *          the protected spans of the sentence
+   * @return the tokenized sentence with the spans
+   */
+  private static String unmask(final String line, final String unmasked,
+      final List<Span> spans) {
+    final StringBuilder sb = new StringBuilder(line.length());
+    int prevEnd = 0;
+    int nextSpan = 0;
+    int i = line.indexOf(MASK);
+    while (i != -1) {
+      sb.append(line, prevEnd, i).append(unmasked, spans.get(nextSpan)
+          .getStart(), spans.get(nextSpan).getEnd());
+      nextSpan++;
+      prevEnd = i + 1;
+      i = line.indexOf(MASK, prevEnd);
     }
-    return line;
+    return sb.append(line, prevEnd, line.length()).toString();
   }
 
   /**
-   * Restores the normalized multidots to its original state and it tokenizes
-   * them.
+   * Tokenize a sentence in which links and multidots are masked.
    * 
    * @param line
-   *          the line
-   * @return the tokenized multidots
+   *          the text
+   * @return the text with tokens separated by spaces
    */
-  private String restoreMultidots(String line) {
+  private String tokenizeText(String line) {
+    
+    // separate question and exclamation marks
+    line = RuleProfiler.replaceAll("qexc", qexc, budgeted(line), " $1 ");
+    // separate dash if before or after space
+    line = RuleProfiler.replaceAll("spaceDashSpace", spaceDashSpace,
+        budgeted(line), " $1 ");
+    // tokenize everything but these characters [^\p{Alnum}s.'`,-?!/]
+    line = RuleProfiler.replaceAll("specials", specials,
+        budgeted(line), " $1 ");
 
-    while (line.contains("DOTDOTMULTI")) {
-      line = line.replaceAll("DOTDOTMULTI", "DOTMULTI.");
-    }
-    line = line.replaceAll("DOTMULTI", ".");
+    // separate "," except if within numbers (1,200)
+    line = RuleProfiler.replaceAll("noDigitComma", noDigitComma,
+        budgeted(line), "$1 $2");
+    line = RuleProfiler.replaceAll("commaNoDigit", commaNoDigit,
+        budgeted(line), "$1 $2");
+    // separate pre and post digit
+    line = RuleProfiler.replaceAll("digitCommaNoDigit", digitCommaNoDigit,
+        budgeted(line), "$1 $2 $3");
+    line = RuleProfiler.replaceAll("noDigitCommaDigit", noDigitCommaDigit,
+        budgeted(line), "$1 $2 $3");
+
+    // contractions it's, l'agila, c'est, don't
+    line = treatContractions(line);
+    // exceptions for period tokenization
+    line = nonBreaker.TokenizerNonBreaker(line, sentenceBudget);
     return line;
   }
 
   /**
-   * Separate apostrophes.
+   * Find the spans of a sentence which are tokens by themselves and are not
+   * processed by the rules: links and multi-period expressions (...). Dot
+   * runs are found by their length in the same pass over the sentence.
    * 
    * @param line
    *          the sentence
-   * @return the tokenized paragraphs
-   */
-  private String treatContractions(String line) {
-
-    line = noAlphaAposNoAlpha.matcher(line).replaceAll("$1 $2 $3");
-    line = noAlphaDigitAposAlpha.matcher(line).replaceAll("$1 $2 $3");
-    line = alphaAposNonAlpha.matcher(line).replaceAll("$1 $2 $3");
-    if (lang.equalsIgnoreCase("en")) {
-      line = englishNegations.matcher(line).replaceAll("$1 $2$3"); 
+   * @return the protected spans, in order
+   */
+  private List<Span> getProtectedSpans(final String line) {
+    final long start = RuleProfiler.start();
+    final List<Span> links = linkRecognizer.recognize(line);
+    RuleProfiler.record("links", start, line.length(), links.size());
+    final List<Span> spans = new ArrayList<Span>(links.size());
+    final int length = line.length();
+    int nextLink = 0;
+    int i = line.indexOf('.');
+    while (i != -1 && i < length) {
+      while (nextLink < links.size() && links.get(nextLink).getEnd() <= i) {
+        spans.add(links.get(nextLink++));
+      }
+      if (nextLink < links.size() && links.get(nextLink).getStart() <= i) {
+        i = line.indexOf('.', links.get(nextLink).getEnd());
+        continue;
+      }
+      final int runEnd = nextLink < links.size() ? links.get(nextLink)
+          .getStart() : length;
+      int end = i + 1;
+      while (end < runEnd && line.charAt(end) == '.') {
+        end++;
+      }
+      if (end - i > 1) {
+        spans.add(new Span(i, end));
+      }
+      i = line.indexOf('.', end);
     }
-    line = englishApos.matcher(line).replaceAll("$1 $2$3");
-    line = yearApos.matcher(line).replaceAll("$1 $2$3");
-    // romance tokenization of apostrophes c' l'
-    line = AlphaAposAlpha.matcher(line).replaceAll("$1$2 $3");
-    line = endOfSentenceApos.matcher(line).replaceAll("$1 $2");
-    line = deTokenEnglishNegation.matcher(line).replaceAll("$1$2$3");
-    return line;
+    while (nextLink < links.size()) {
+      spans.add(links.get(nextLink++));
+    }
+    return spans;
   }
 
   /**
-   * De-tokenize wrongly tokenized URLs.
+   * Separate apostrophes.
    * 
    * @param line
    *          the sentence
-   * @return the sentence containing the correct URL
-   */
-  private String detokenizeURLs(String line) {
-    final Matcher linkMatcher = wrongLink.matcher(line);
-    final StringBuffer sb = new StringBuffer();
-    while (linkMatcher.find()) {
-      linkMatcher.appendReplacement(sb,
-          linkMatcher.group().replaceAll("\\s", ""));
+   * @return the tokenized paragraphs
+   */
+  private String treatContractions(String line) {
+
+    line = RuleProfiler.replaceAll("noAlphaAposNoAlpha", noAlphaAposNoAlpha,
+        budgeted(line), "$1 $2 $3");
+    line = RuleProfiler.replaceAll("noAlphaDigitAposAlpha",
+        noAlphaDigitAposAlpha, budgeted(line), "$1 $2 $3");
+    line = RuleProfiler.replaceAll("alphaAposNonAlpha", alphaAposNonAlpha,
+        budgeted(line), "$1 $2 $3");
+    // language specific contractions
+    for (int i = 0; i < contractionPatterns.length; i++) {
+      line = RuleProfiler.replaceAll(contractionRules[i],
+          contractionPatterns[i], budgeted(line), contractionReplacements[i]);
     }
-    linkMatcher.appendTail(sb);
-    line = sb.toString();
+    line = RuleProfiler.replaceAll("englishApos", englishApos,
+        budgeted(line), "$1 $2$3");
+    line = RuleProfiler.replaceAll("yearApos", yearApos,
+        budgeted(line), "$1 $2$3");
+    // romance tokenization of apostrophes c' l'
+    line = RuleProfiler.replaceAll("AlphaAposAlpha", AlphaAposAlpha,
+        budgeted(line), "$1$2 $3");
+    line = RuleProfiler.replaceAll("endOfSentenceApos", endOfSentenceApos,
+        budgeted(line), "$1 $2");
+    line = RuleProfiler.replaceAll("deTokenEnglishNegation",
+        deTokenEnglishNegation, budgeted(line), "$1$2$3");
     return line;
   }
-  
+
   /**
    * Process the untokenizable CLI option.
    * @param properties the configuration properties
@@ -410,7 +720,8 @@ public class RuleBasedTokenizer implements Tokenizer {
       if (unTokenizable) {
         tokens.add(curToken);
       } else if (!unTokenizable) {
-        if (!replacement.matcher(curToken.getTokenValue()).matches()) {
+        if (!RuleProfiler.matches("replacement", replacement,
+            curToken.getTokenValue())) {
          tokens.add(curToken);
         }
       }
@@ -429,10 +740,24 @@ public class RuleBasedTokenizer implements Tokenizer {
    */
   public static void normalizeTokens(final List<List<Token>> tokens,
       final String lang) {
+    normalizeTokens(tokens, LanguagePacks.get(lang));
+  }
+
+  /**
+   * Set as value of the token its normalized counterpart following the
+   * conventions of a language pack.
+   * 
+   * @param tokens
+   *          the tokens
+   * @param pack
+   *          the language pack
+   */
+  public static void normalizeTokens(final List<List<Token>> tokens,
+      final CompiledLanguagePack pack) {
     for (final List<Token> sentence : tokens) {
-      Normalizer.convertNonCanonicalStrings(sentence, lang);
-      Normalizer.normalizeQuotes(sentence, lang);
-      Normalizer.normalizeDoubleQuotes(sentence, lang);
+      Normalizer.convertNonCanonicalStrings(sentence, pack);
+      Normalizer.normalizeQuotes(sentence, pack);
+      Normalizer.normalizeDoubleQuotes(sentence, pack);
     }
   }
 }
@@ -0,0 +1,412 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client of the {@link RuleBasedTokenizerServer} sending many documents
+ * through a pool of kept alive connections to one or more servers. Each
+ * connection pipelines up to pipelineDepth documents, sending the next ones
+ * while the server tokenizes the first, and the results are handed over in
+ * the order of the documents. Documents answered busy are sent again after a
+ * pause, and the documents of a broken connection are sent through the
+ * others.
+ */
+public class RuleBasedTokenizerClient {
+
+  private static final int MAX_ATTEMPTS = 5;
+  private static final long BUSY_PAUSE = 500;
+  private static final String BUSY = "-> ERROR: "
+      + AdmissionController.BUSY_MESSAGE;
+
+  private final List<InetSocketAddress> servers;
+  private final int concurrency;
+  private final int pipelineDepth;
+
+  /**
+   * A document to tokenize.
+   */
+  public static class Document {
+    private final Object id;
+    private final String text;
+
+    /**
+     * Construct a document.
+     * @param id the identifier, such as the file or the JSON id
+     * @param text the text or NAF document
+     */
+    public Document(final Object id, final String text) {
+      this.id = id;
+      this.text = text;
+    }
+
+    public Object getId() {
+      return id;
+    }
+
+    public String getText() {
+      return text;
+    }
+  }
+
+  /**
+   * Receives the results in the order of the documents.
+   */
+  public interface ResultHandler {
+    /**
+     * Handle the result of a document.
+     * @param document the document
+     * @param result the tokenized document or the error message of the server
+     * @throws IOException if the result cannot be written
+     */
+    void handle(Document document, String result) throws IOException;
+  }
+
+  /**
+   * Construct a client.
+   * 
+   * @param servers
+   *          the addresses of the servers
+   * @param concurrency
+   *          the number of connections, distributed among the servers
+   * @param pipelineDepth
+   *          the documents sent through a connection before its first result
+   *          is read
+   */
+  public RuleBasedTokenizerClient(final List<InetSocketAddress> servers,
+      final int concurrency, final int pipelineDepth) {
+    if (servers.isEmpty() || concurrency < 1 || pipelineDepth < 1) {
+      throw new IllegalArgumentException(
+          "At least one server, one connection and one document per connection are needed");
+    }
+    this.servers = servers;
+    this.concurrency = concurrency;
+    this.pipelineDepth = pipelineDepth;
+  }
+
+  /**
+   * Tokenize documents.
+   * 
+   * @param documents
+   *          the documents, read as they are sent
+   * @param handler
+   *          the handler of the results, called by this thread in the order
+   *          of the documents
+   * @throws IOException
+   *           if no connection can be established or they all break
+   */
+  public void tokenize(final Iterator<Document> documents,
+      final ResultHandler handler) throws IOException {
+    final Run run = new Run();
+    final List<Connection> connections = new ArrayList<Connection>();
+    IOException lastError = null;
+    for (int i = 0; i < concurrency; i++) {
+      final InetSocketAddress server = servers.get(i % servers.size());
+      try {
+        connections.add(new Connection(server, run));
+      } catch (final IOException e) {
+        lastError = e;
+        System.err.println("WARNING: Could not connect to " + server + ": "
+            + e.getMessage());
+      }
+    }
+    if (connections.isEmpty()) {
+      throw new IOException("Could not connect to any server", lastError);
+    }
+    run.alive = connections.size();
+    for (final Connection connection : connections) {
+      connection.start();
+    }
+    final Thread producer = new Thread(new Runnable() {
+      public void run() {
+        int index = 0;
+        try {
+          while (documents.hasNext()) {
+            run.window.acquire();
+            run.work.add(new Job(index++, documents.next()));
+            run.produced(index, false);
+          }
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (final RuntimeException e) {
+          run.fail(new IOException("Could not read the documents: "
+              + e.getMessage(), e));
+        }
+        run.produced(index, true);
+      }
+    }, "ixa-pipe-tok-client-producer");
+    producer.setDaemon(true);
+    producer.start();
+    try {
+      for (int next = 0;; next++) {
+        final Job job = run.take(next);
+        if (job == null) {
+          break;
+        }
+        handler.handle(job.document, job.result);
+        run.window.release();
+      }
+    } finally {
+      run.finished = true;
+      producer.interrupt();
+      for (final Connection connection : connections) {
+        connection.close();
+      }
+    }
+  }
+
+  /**
+   * A document in flight.
+   */
+  private static class Job {
+    private final int index;
+    private final Document document;
+    private int attempts;
+    private long notBefore;
+    private String result;
+
+    Job(final int index, final Document document) {
+      this.index = index;
+      this.document = document;
+    }
+  }
+
+  /**
+   * The state shared by the connections of a call to tokenize.
+   */
+  private class Run {
+    private final BlockingQueue<Job> work = new LinkedBlockingQueue<Job>();
+    // documents read and not yet handed over, bounding the memory used
+    private final Semaphore window = new Semaphore(concurrency * pipelineDepth
+        * 2);
+    private final Map<Integer, Job> done = new HashMap<Integer, Job>();
+    private int produced;
+    private boolean allProduced;
+    private int alive;
+    private IOException failure;
+    private volatile boolean finished;
+
+    synchronized void produced(final int count, final boolean all) {
+      produced = count;
+      allProduced = all;
+      notifyAll();
+    }
+
+    synchronized void complete(final Job job) {
+      done.put(job.index, job);
+      notifyAll();
+    }
+
+    synchronized void connectionLost() {
+      if (--alive == 0 && !finished) {
+        failure = new IOException("All the connections to the servers broke");
+        notifyAll();
+      }
+    }
+
+    synchronized void fail(final IOException e) {
+      failure = e;
+      notifyAll();
+    }
+
+    /**
+     * Wait for the result of a document.
+     * @return the job or null if there are no more documents
+     */
+    synchronized Job take(final int index) throws IOException {
+      while (true) {
+        final Job job = done.remove(index);
+        if (job != null) {
+          return job;
+        }
+        if (failure != null) {
+          throw failure;
+        }
+        if (allProduced && index >= produced) {
+          return null;
+        }
+        try {
+          wait();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for the results");
+        }
+      }
+    }
+  }
+
+  /**
+   * A kept alive connection with a sender and a receiver thread.
+   */
+  private class Connection {
+    private final Run run;
+    private final Socket socket;
+    private final BufferedWriter outToServer;
+    private final BufferedReader inFromServer;
+    private final BlockingQueue<Job> pending = new ArrayBlockingQueue<Job>(
+        pipelineDepth);
+    private volatile boolean broken;
+
+    Connection(final InetSocketAddress server, final Run run)
+        throws IOException {
+      this.run = run;
+      socket = new Socket(server.getAddress(), server.getPort());
+      outToServer = new BufferedWriter(new OutputStreamWriter(
+          socket.getOutputStream(), "UTF-8"));
+      inFromServer = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), "UTF-8"));
+      outToServer.write(RuleBasedTokenizerServer.KEEP_ALIVE + "\n");
+    }
+
+    void start() {
+      final Thread sender = new Thread(new Runnable() {
+        public void run() {
+          send();
+        }
+      }, "ixa-pipe-tok-client-sender-" + socket.getLocalPort());
+      final Thread receiver = new Thread(new Runnable() {
+        public void run() {
+          receive();
+        }
+      }, "ixa-pipe-tok-client-receiver-" + socket.getLocalPort());
+      sender.setDaemon(true);
+      receiver.setDaemon(true);
+      sender.start();
+      receiver.start();
+    }
+
+    private void send() {
+      try {
+        while (!run.finished && !broken) {
+          final Job job = run.work.poll(100, TimeUnit.MILLISECONDS);
+          if (job == null) {
+            outToServer.flush();
+            continue;
+          }
+          final long pause = job.notBefore - System.currentTimeMillis();
+          if (pause > 0) {
+            outToServer.flush();
+            Thread.sleep(pause);
+          }
+          pending.put(job);
+          if (broken) {
+            requeuePending();
+            return;
+          }
+          outToServer.write(job.document.getText());
+          if (!job.document.getText().endsWith("\n")) {
+            outToServer.write("\n");
+          }
+          outToServer.write(RuleBasedTokenizerServer.END_OF_DOCUMENT + "\n");
+          if (run.work.isEmpty() || pending.remainingCapacity() == 0) {
+            outToServer.flush();
+          }
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (final IOException e) {
+        breakConnection(e);
+      }
+    }
+
+    private void receive() {
+      try {
+        while (!run.finished) {
+          final String result = readResult();
+          if (result == null) {
+            throw new IOException("connection closed by the server");
+          }
+          final Job job = pending.poll();
+          if (job == null) {
+            throw new IOException("unexpected result from the server");
+          }
+          if (result.trim().equals(BUSY) && ++job.attempts < MAX_ATTEMPTS) {
+            job.notBefore = System.currentTimeMillis() + BUSY_PAUSE * job.attempts;
+            run.work.add(job);
+          } else {
+            job.result = result;
+            run.complete(job);
+          }
+        }
+      } catch (final IOException e) {
+        breakConnection(e);
+      }
+    }
+
+    /**
+     * Read a result, ended by the end of document line.
+     * @return the result or null at the end of the stream
+     */
+    private String readResult() throws IOException {
+      final StringBuilder sb = new StringBuilder();
+      String line;
+      while ((line = inFromServer.readLine()) != null) {
+        if (line.equals(RuleBasedTokenizerServer.END_OF_DOCUMENT)) {
+          // remove the line break added before the end of document line
+          if (sb.length() > 0) {
+            sb.setLength(sb.length() - 1);
+          }
+          return sb.toString();
+        }
+        sb.append(line).append('\n');
+      }
+      return null;
+    }
+
+    private synchronized void breakConnection(final IOException e) {
+      if (broken || run.finished) {
+        return;
+      }
+      broken = true;
+      System.err.println("WARNING: Connection to " + socket.getRemoteSocketAddress()
+          + " broke: " + e.getMessage());
+      close();
+      requeuePending();
+      run.connectionLost();
+    }
+
+    private void requeuePending() {
+      final List<Job> jobs = new ArrayList<Job>();
+      pending.drainTo(jobs);
+      run.work.addAll(jobs);
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (final IOException e) {
+        // already closed
+      }
+    }
+  }
+
+}
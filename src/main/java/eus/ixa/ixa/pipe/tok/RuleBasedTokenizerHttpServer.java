@@ -0,0 +1,437 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdom2.JDOMException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
+/**
+ * HTTP server for tokenization built on the HTTP server of the JDK.
+ * Connections are kept alive between requests and every request is handled
+ * by its own thread of a cached pool. An {@link AdmissionController} bounds
+ * the requests tokenized and queued at the same time and the server answers
+ * 503 (Service Unavailable) beyond them, and 413 to documents larger than the
+ * limit of bytes in flight. The status of the admission control is served at
+ * {@value #STATUS_CONTEXT}.
+ *
+ * Documents are sent with POST to {@value #CONTEXT}. The body is read as
+ * plain text, as a NAF document with raw layer (Content-Type containing xml),
+ * as one tokenized sentence per line, or as a JSON batch of documents
+ * (Content-Type containing json); the inputFormat parameter (text, naf,
+ * tokens or json) overrides the Content-Type. The lang, outputFormat (naf,
+ * conll or oneline), offsets (true to print the offsets in CoNLL) and splice
+ * (true to copy NAF input adding the text layer) parameters override the
+ * options of the server for the request.
+ *
+ * A JSON batch is either an array or an object with a documents array. Each
+ * document is a string or an object with a text (or naf) member and optional
+ * id and lang members. The answer is an object with a documents array with
+ * the id, lang and tokenized result of each document.
+ */
+public class RuleBasedTokenizerHttpServer {
+
+  /**
+   * The path of the tokenization service.
+   */
+  public static final String CONTEXT = "/tokenize";
+  /**
+   * The path of the admission control status.
+   */
+  public static final String STATUS_CONTEXT = "/status";
+  private static final List<String> OUTPUT_FORMATS = Arrays.asList("naf",
+      "conll", "oneline");
+  private static final List<String> INPUT_FORMATS = Arrays.asList("text",
+      "naf", "tokens", "json");
+
+  private final Properties properties;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AdmissionController admission;
+
+  /**
+   * Construct a RuleBasedTokenizer HTTP server bound to the port of the
+   * properties. It does not accept requests until it is started.
+   * 
+   * @param properties
+   *          the properties
+   * @throws IOException
+   *           if the port cannot be bound
+   */
+  public RuleBasedTokenizerHttpServer(final Properties properties)
+      throws IOException {
+    this.properties = properties;
+    final int port = Integer.parseInt(properties.getProperty("port"));
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    admission = new AdmissionController(properties);
+    server.createContext(CONTEXT, new TokenizeHandler());
+    server.createContext(STATUS_CONTEXT, new StatusHandler());
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger noThreads = new AtomicInteger();
+
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "ixa-pipe-tok-http-"
+            + noThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    server.setExecutor(executor);
+  }
+
+  /**
+   * Start accepting requests.
+   */
+  public void start() {
+    server.start();
+    System.out.println("-> HTTP server listening to port " + getPort()
+        + CONTEXT);
+  }
+
+  /**
+   * Stop the server, waiting for the requests being handled.
+   * @param delay the maximum seconds to wait
+   */
+  public void stop(final int delay) {
+    server.stop(delay);
+    executor.shutdown();
+  }
+
+  /**
+   * Get the port the server is bound to.
+   * @return the port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Handler of the tokenization requests.
+   */
+  private class TokenizeHandler implements HttpHandler {
+
+    public void handle(final HttpExchange exchange) throws IOException {
+      try {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+          exchange.getResponseHeaders().set("Allow", "POST");
+          send(exchange, 405, "text/plain", "ERROR: Use POST to send documents!!\n");
+          return;
+        }
+        final Map<String, String> params = getParameters(exchange
+            .getRequestURI().getRawQuery());
+        final String inputFormat = getInputFormat(exchange, params);
+        // admitted before reading the body, whose bytes are reserved as
+        // they arrive unless its length is known
+        final AdmissionController.Reservation reservation = admission
+            .reserve(Math.max(0, getContentLength(exchange)));
+        try {
+          final String body = readBody(exchange.getRequestBody(), reservation);
+          if (inputFormat.equals("json")) {
+            send(exchange, 200, "application/json",
+                annotateBatch(body, params));
+          } else {
+            final Properties requestProperties = getRequestProperties(params,
+                params.get("lang"), inputFormat);
+            send(exchange, 200, getContentType(requestProperties),
+                RuleBasedTokenizerServer.getAnnotations(requestProperties,
+                    body));
+          }
+        } finally {
+          reservation.release();
+        }
+      } catch (final AdmissionController.BusyException e) {
+        if (e.isTooLarge()) {
+          send(exchange, 413, "text/plain", "ERROR: " + e.getMessage() + "\n");
+        } else {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          send(exchange, 503, "text/plain", "ERROR: " + e.getMessage() + "\n");
+        }
+      } catch (final BadRequestException e) {
+        send(exchange, 400, "text/plain", "ERROR: " + e.getMessage() + "\n");
+      } catch (final JDOMException e) {
+        send(exchange, 400, "text/plain",
+            "ERROR: Badly formatted NAF document!!\n");
+      } catch (final RuntimeException e) {
+        e.printStackTrace();
+        send(exchange, 500, "text/plain", "ERROR: " + e + "\n");
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  /**
+   * Handler of the admission control status.
+   */
+  private class StatusHandler implements HttpHandler {
+
+    public void handle(final HttpExchange exchange) throws IOException {
+      try {
+        // the body is skipped, not kept
+        exchange.getRequestBody().close();
+        send(exchange, 200, "application/json", admission.getStatus());
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  /**
+   * Tokenize a JSON batch of documents.
+   * @param body the JSON batch
+   * @param params the request parameters
+   * @return the JSON answer
+   * @throws BadRequestException if the batch is not valid
+   * @throws JDOMException if a NAF document is not valid
+   * @throws IOException if io problems
+   */
+  private String annotateBatch(final String body,
+      final Map<String, String> params) throws BadRequestException,
+      JDOMException, IOException {
+    Object batch;
+    try {
+      batch = Json.parse(body);
+    } catch (final ParseException e) {
+      throw new BadRequestException(e.getMessage());
+    }
+    if (batch instanceof Map) {
+      batch = ((Map<?, ?>) batch).get("documents");
+    }
+    if (!(batch instanceof List)) {
+      throw new BadRequestException("JSON batch without documents array!!");
+    }
+    final StringBuilder sb = new StringBuilder("{\"documents\":[");
+    int noDocs = 0;
+    for (final Object document : (List<?>) batch) {
+      Object id = null;
+      String lang = params.get("lang");
+      String inputFormat = "text";
+      Object text = document;
+      if (document instanceof Map) {
+        final Map<?, ?> fields = (Map<?, ?>) document;
+        id = fields.get("id");
+        if (fields.get("lang") instanceof String) {
+          lang = (String) fields.get("lang");
+        }
+        text = fields.get("text");
+        if (fields.containsKey("naf")) {
+          text = fields.get("naf");
+          inputFormat = "naf";
+        }
+      }
+      if (!(text instanceof String)) {
+        throw new BadRequestException("Document " + noDocs
+            + " of the batch has no text!!");
+      }
+      final Properties requestProperties = getRequestProperties(params, lang,
+          inputFormat);
+      if (noDocs++ > 0) {
+        sb.append(',');
+      }
+      sb.append('{');
+      if (id instanceof String) {
+        Json.appendString(sb.append("\"id\":"), (String) id).append(',');
+      } else if (id instanceof Number || id instanceof Boolean) {
+        sb.append("\"id\":").append(id).append(',');
+      }
+      Json.appendString(sb.append("\"lang\":"),
+          requestProperties.getProperty("language"));
+      Json.appendString(sb.append(",\"result\":"),
+          RuleBasedTokenizerServer.getAnnotations(requestProperties,
+              (String) text));
+      sb.append('}');
+    }
+    return sb.append("]}").toString();
+  }
+
+  /**
+   * Get the properties of a request, which override the server options.
+   * @param params the request parameters
+   * @param lang the language or null for the language of the server
+   * @param inputFormat the input format
+   * @return the properties
+   * @throws BadRequestException if a parameter is not valid
+   */
+  private Properties getRequestProperties(final Map<String, String> params,
+      final String lang, final String inputFormat) throws BadRequestException {
+    final Properties requestProperties = new Properties();
+    requestProperties.putAll(properties);
+    if (lang != null) {
+      if (LanguagePacks.get(lang) == null) {
+        throw new BadRequestException("Not language pack for language " + lang
+            + "!!");
+      }
+      requestProperties.setProperty("language", lang.toLowerCase());
+    }
+    final String outputFormat = params.get("outputFormat");
+    if (outputFormat != null) {
+      if (!OUTPUT_FORMATS.contains(outputFormat.toLowerCase())) {
+        throw new BadRequestException("outputFormat must be one of "
+            + OUTPUT_FORMATS + "!!");
+      }
+      requestProperties.setProperty("outputFormat", outputFormat);
+    }
+    final String offsets = params.get("offsets");
+    if (offsets != null) {
+      // the offsets property keeps the meaning of the --offsets flag, which
+      // turns offsets off
+      requestProperties.setProperty("offsets",
+          String.valueOf(!Boolean.parseBoolean(offsets)));
+    }
+    final String splice = params.get("splice");
+    if (splice != null) {
+      requestProperties.setProperty("splice",
+          String.valueOf(Boolean.parseBoolean(splice)));
+    }
+    requestProperties.setProperty("inputkaf",
+        String.valueOf(inputFormat.equals("naf")));
+    requestProperties.setProperty("notok",
+        String.valueOf(inputFormat.equals("tokens")));
+    return requestProperties;
+  }
+
+  private static String getInputFormat(final HttpExchange exchange,
+      final Map<String, String> params) throws BadRequestException {
+    final String inputFormat = params.get("inputFormat");
+    if (inputFormat != null) {
+      if (!INPUT_FORMATS.contains(inputFormat.toLowerCase())) {
+        throw new BadRequestException("inputFormat must be one of "
+            + INPUT_FORMATS + "!!");
+      }
+      return inputFormat.toLowerCase();
+    }
+    final String contentType = exchange.getRequestHeaders().getFirst(
+        "Content-Type");
+    if (contentType != null) {
+      if (contentType.toLowerCase().contains("json")) {
+        return "json";
+      } else if (contentType.toLowerCase().contains("xml")) {
+        return "naf";
+      }
+    }
+    return "text";
+  }
+
+  private static long getContentLength(final HttpExchange exchange)
+      throws BadRequestException {
+    final String contentLength = exchange.getRequestHeaders().getFirst(
+        "Content-Length");
+    if (contentLength == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentLength.trim());
+    } catch (final NumberFormatException e) {
+      throw new BadRequestException("Invalid Content-Length " + contentLength
+          + "!!");
+    }
+  }
+
+  private static String getContentType(final Properties requestProperties) {
+    if (Boolean.valueOf(requestProperties.getProperty("notok"))) {
+      return "application/xml";
+    }
+    final String outputFormat = requestProperties.getProperty("outputFormat");
+    if (outputFormat.equalsIgnoreCase("conll")
+        || outputFormat.equalsIgnoreCase("oneline")) {
+      return "text/plain";
+    }
+    return "application/xml";
+  }
+
+  private static Map<String, String> getParameters(final String query)
+      throws UnsupportedEncodingException {
+    final Map<String, String> params = new HashMap<String, String>();
+    if (query == null) {
+      return params;
+    }
+    for (final String param : query.split("&")) {
+      final int equals = param.indexOf('=');
+      if (equals > 0) {
+        params.put(URLDecoder.decode(param.substring(0, equals), "UTF-8"),
+            URLDecoder.decode(param.substring(equals + 1), "UTF-8"));
+      } else if (!param.isEmpty()) {
+        params.put(URLDecoder.decode(param, "UTF-8"), "true");
+      }
+    }
+    return params;
+  }
+
+  private static String readBody(final InputStream requestBody,
+      final AdmissionController.Reservation reservation) throws IOException,
+      AdmissionController.BusyException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = requestBody.read(buffer)) != -1) {
+      bytes.write(buffer, 0, read);
+      reservation.ensure(bytes.size());
+    }
+    requestBody.close();
+    return bytes.toString("UTF-8");
+  }
+
+  /**
+   * Send a complete answer. Its length is always known, so the connection
+   * can be kept alive.
+   */
+  private static void send(final HttpExchange exchange, final int status,
+      final String contentType, final String answer) throws IOException {
+    final byte[] bytes = answer.getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type",
+        contentType + "; charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      final OutputStream responseBody = exchange.getResponseBody();
+      responseBody.write(bytes);
+      responseBody.close();
+    }
+  }
+
+  /**
+   * Invalid request parameters or body.
+   */
+  private static class BadRequestException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    BadRequestException(final String message) {
+      super(message);
+    }
+  }
+
+}
@@ -25,155 +25,446 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import org.jdom2.JDOMException;
 
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
 public class RuleBasedTokenizerServer {
   
   /**
    * Get dynamically the version of ixa-pipe-tok by looking at the MANIFEST
    * file.
    */
-  private final String version = CLI.class.getPackage().getImplementationVersion();
+  private static final String version = CLI.class.getPackage().getImplementationVersion();
   /**
    * Get the git commit of the ixa-pipe-tok compiled by looking at the MANIFEST
    * file.
    */
-  private final String commit = CLI.class.getPackage().getSpecificationVersion();
+  private static final String commit = CLI.class.getPackage().getSpecificationVersion();
   
   /**
-   * Construct a RuleBasedTokenizer server.
+   * Message sent by a client instead of a document to get the status of the
+   * admission control.
+   */
+  public static final String STATUS = "<STATUS>";
+  /**
+   * Message sent by a client instead of a document to get the rule profile,
+   * see {@link RuleProfiler}.
+   */
+  public static final String PROFILE = "<PROFILE>";
+  /**
+   * Line ending every document sent to the server, and every result in kept
+   * alive connections.
+   */
+  public static final String END_OF_DOCUMENT = "<ENDOFDOCUMENT>";
+  /**
+   * First line of a connection carrying several documents.
+   */
+  public static final String KEEP_ALIVE = "<KEEPALIVE>";
+  /**
+   * Default milliseconds a kept alive connection waits for its next document.
+   */
+  public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 60000;
+  /**
+   * Default maximum kept alive connections waiting for their next document.
+   */
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 64;
+  private static final String BUSY = "\n-> ERROR: " + AdmissionController.BUSY_MESSAGE + "\n";
+
+  /**
+   * Construct a RuleBasedTokenizer server. The server is warmed up with a
+   * {@link ServerWarmup} before listening. Each connection is handled by its
+   * own thread; the {@link AdmissionController} limits the documents being
+   * tokenized. Each connection being read, tokenized or waiting its turn holds
+   * a permit, as many as the requests admitted and queued, and connections
+   * beyond them are refused at once. A kept alive connection gives back its
+   * permit while it waits for its next document, and it is closed after
+   * keepAliveTimeout milliseconds without one; at most maxIdleConnections
+   * wait without a permit, and a kept alive connection beyond them keeps its
+   * permit for one more document and is closed after its result. Connections
+   * and threads are thus bounded by the permits plus the idle connections.
    * 
    * @param properties
    *          the properties
    */
-  public RuleBasedTokenizerServer(Properties properties) {
+  public RuleBasedTokenizerServer(final Properties properties) {
 
     Integer port = Integer.parseInt(properties.getProperty("port"));
-    String result;
+    if (Boolean.parseBoolean(properties.getProperty("profile"))) {
+      RuleProfiler.setEnabled(true);
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          System.err.print("-> Rule profile:\n" + RuleProfiler.getReport());
+        }
+      });
+    }
+    final AdmissionController admission = new AdmissionController(properties);
+    final ServerMetrics metrics = new ServerMetrics(admission);
+    final int metricsPort = Integer.parseInt(properties.getProperty(
+        "metricsPort", "0"));
+    if (metricsPort > 0) {
+      try {
+        metrics.startEndpoint(metricsPort);
+        System.out.println("-> Metrics served at port " + metricsPort
+            + ServerMetrics.CONTEXT);
+      } catch (IOException e) {
+        System.err.println("ERROR: Could not serve the metrics at port "
+            + metricsPort + ": " + e.getMessage());
+      }
+    }
+    // connections being read, tokenized or waiting their turn, not idle ones
+    final Semaphore connections = new Semaphore(Integer.parseInt(properties
+        .getProperty("maxConcurrentRequests",
+            Integer.toString(AdmissionController.getDefaultMaxConcurrentRequests())))
+        + Integer.parseInt(properties.getProperty("maxQueuedRequests",
+            Integer.toString(AdmissionController.DEFAULT_MAX_QUEUED_REQUESTS))));
+    // requests are accepted only once warmed up
+    final ServerWarmup warmup = new ServerWarmup(properties);
+    if (warmup.isEnabled()) {
+      System.out.println("-> Warming up...");
+      try {
+        System.out.println("-> " + warmup.run());
+      } catch (IOException e) {
+        System.err.println("ERROR: Could not warm up: " + e.getMessage());
+      } catch (JDOMException e) {
+        System.err.println("ERROR: Could not warm up: " + e.getMessage());
+      }
+    }
+    final int keepAliveTimeout = Integer.parseInt(properties.getProperty(
+        "keepAliveTimeout", Integer.toString(DEFAULT_KEEP_ALIVE_TIMEOUT)));
+    final Semaphore idleConnections = new Semaphore(Integer.parseInt(properties
+        .getProperty("maxIdleConnections",
+            Integer.toString(DEFAULT_MAX_IDLE_CONNECTIONS))));
+    final ExecutorService executor = Executors.newCachedThreadPool();
     ServerSocket socketServer = null;
-    Socket activeSocket;
-    BufferedReader inFromClient = null;
-    BufferedWriter outToClient = null;
 
     try {
       System.out.println("-> Trying to listen port... " + port);
       socketServer = new ServerSocket(port);
       System.out.println("-> Connected and listening to port " + port);
       while (true) {
-        try {
-          activeSocket = socketServer.accept();
-          inFromClient = new BufferedReader(new InputStreamReader(activeSocket.getInputStream(), "UTF-8"));
-          outToClient = new BufferedWriter(new OutputStreamWriter(activeSocket.getOutputStream(), "UTF-8"));
-          //get data from client
-          String stringFromClient = getClientData(inFromClient);
-          // annotate
-          result = getAnnotations(properties, stringFromClient);
-        } catch (JDOMException e) {
-          result = "\n-> ERROR: Badly formatted NAF document!!\n";
-          sendDataToClient(outToClient, result);
-          continue;
-        } catch (UnsupportedEncodingException e) {
-          result = "\n-> ERROR: Encoding not valid UTF-8!!\n";
-          sendDataToClient(outToClient, result);
-          continue;
-        } catch (IOException e) {
-          result = "\n -> ERROR: Input data not correct!!\n";
-          sendDataToClient(outToClient, result);
+        final Socket activeSocket = socketServer.accept();
+        if (!connections.tryAcquire()) {
+          metrics.countRequest(ServerMetrics.Outcome.BUSY);
+          try {
+            sendDataToClient(new BufferedWriter(new OutputStreamWriter(
+                activeSocket.getOutputStream(), "UTF-8")), BUSY);
+          } catch (IOException e) {
+            // the client is gone
+          } finally {
+            activeSocket.close();
+          }
           continue;
         }
-        //send data to server after all exceptions and close the outToClient
-        sendDataToClient(outToClient, result);
-        //close the resources
-        inFromClient.close();
-        activeSocket.close();
+        executor.execute(new Runnable() {
+          public void run() {
+            handleConnection(activeSocket, properties, admission, metrics,
+                connections, idleConnections, keepAliveTimeout);
+          }
+        });
       } //end of processing block
     } catch (IOException e) {
       e.printStackTrace();
       System.err.println("-> IOException due to failing to create the TCP socket or to wrongly provided model path.");
     } finally {
       System.out.println("closing tcp socket...");
+      executor.shutdown();
       try {
-        socketServer.close();
+        if (socketServer != null) {
+          socketServer.close();
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
   }
-  
+
   /**
-   * Read data from the client and output to a String.
-   * @param inFromClient the client inputstream
-   * @return the string from the client
+   * Read the documents of a connection, tokenize them once admitted and send
+   * the results. A connection carries one document, unless its first line is
+   * {@link #KEEP_ALIVE}: then documents and results, each ended by an
+   * {@link #END_OF_DOCUMENT} line, follow each other until the client closes
+   * the connection.
+   * @param activeSocket the connection
+   * @param properties the options
+   * @param admission the admission control
+   * @param metrics the metrics of the server
+   * @param connections the permits of the connections, one already taken by
+   *          this one, which is released while it is idle and at the end
+   * @param idleConnections the permits of the idle connections, without which
+   *          a kept alive connection is closed after its next document
+   * @param keepAliveTimeout the milliseconds an idle connection is kept, 0 for
+   *          ever
    */
-  private String getClientData(BufferedReader inFromClient) {
-    StringBuilder stringFromClient = new StringBuilder();
+  private static void handleConnection(Socket activeSocket,
+      Properties properties, AdmissionController admission,
+      ServerMetrics metrics, Semaphore connections, Semaphore idleConnections,
+      int keepAliveTimeout) {
+    boolean permit = true;
+    boolean idle = false;
+    CountingInputStream in = null;
+    CountingOutputStream out = null;
+    long received = 0;
+    long sent = 0;
     try {
-      String line;
-      while ((line = inFromClient.readLine()) != null) {
-        if (line.matches("<ENDOFDOCUMENT>")) {
-          break;
+      in = new CountingInputStream(activeSocket.getInputStream());
+      out = new CountingOutputStream(activeSocket.getOutputStream());
+      DocumentReader inFromClient = new DocumentReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+      BufferedWriter outToClient = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+      if (KEEP_ALIVE.equals(inFromClient.peekLine())) {
+        inFromClient.skipLine();
+        activeSocket.setSoTimeout(keepAliveTimeout);
+        while (true) {
+          // idle connections hold an idle permit instead of a permit
+          if (!idle) {
+            idle = idleConnections.tryAcquire();
+          }
+          if (idle && permit) {
+            connections.release();
+            permit = false;
+          }
+          // without one, it waits for a last document keeping its permit
+          final boolean last = !idle;
+          try {
+            if (inFromClient.peekLine() == null) {
+              break;
+            }
+          } catch (SocketTimeoutException e) {
+            break;
+          }
+          if (!permit) {
+            permit = connections.tryAcquire();
+          }
+          if (permit) {
+            if (idle) {
+              idleConnections.release();
+              idle = false;
+            }
+            outToClient.write(annotate(properties, admission, metrics, inFromClient, true));
+          } else {
+            // skipped keeping the idle permit
+            skip(inFromClient, true);
+            metrics.countRequest(ServerMetrics.Outcome.BUSY);
+            outToClient.write(BUSY);
+          }
+          outToClient.write("\n" + END_OF_DOCUMENT + "\n");
+          outToClient.flush();
+          metrics.addBytes(in.getCount() - received, out.getCount() - sent);
+          received = in.getCount();
+          sent = out.getCount();
+          if (last) {
+            break;
+          }
         }
-        stringFromClient.append(line).append("\n");
-        if (line.matches("</NAF>")) {
-          break;
+        outToClient.close();
+      } else {
+        //send data to server after all exceptions and close the outToClient
+        sendDataToClient(outToClient, annotate(properties, admission, metrics, inFromClient, false));
+      }
+    } catch (IOException e) {
+      System.err.println("-> ERROR: Could not send the result: " + e.getMessage());
+    } finally {
+      if (in != null) {
+        metrics.addBytes(in.getCount() - received, out.getCount() - sent);
+      }
+      if (permit) {
+        connections.release();
+      }
+      if (idle) {
+        idleConnections.release();
+      }
+      //close the resources
+      try {
+        activeSocket.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Skip the next document.
+   * @param inFromClient the documents of the client
+   * @param keepAlive whether the connection carries several documents
+   * @throws IOException if io error
+   */
+  private static void skip(DocumentReader inFromClient, boolean keepAlive)
+      throws IOException {
+    try {
+      inFromClient.read(keepAlive, null);
+    } catch (AdmissionController.BusyException e) {
+      // not thrown for documents skipped
+    }
+  }
+
+  /**
+   * Read the next document and tokenize it. The document is admitted before
+   * it is read, and a document refused is skipped.
+   * @param properties the options
+   * @param admission the admission control
+   * @param metrics the metrics of the server
+   * @param inFromClient the documents of the client
+   * @param keepAlive whether the connection carries several documents
+   * @return the result or the error message
+   * @throws IOException if the document cannot be read
+   */
+  private static String annotate(Properties properties,
+      AdmissionController admission, ServerMetrics metrics,
+      DocumentReader inFromClient, boolean keepAlive) throws IOException {
+    String result;
+    // not counted unless it is a document
+    ServerMetrics.Outcome outcome = null;
+    final String firstLine = inFromClient.peekLine();
+    try {
+      if (firstLine != null && firstLine.trim().equals(STATUS)) {
+        skip(inFromClient, keepAlive);
+        result = admission.getStatus();
+      } else if (firstLine != null && firstLine.trim().equals(PROFILE)) {
+        skip(inFromClient, keepAlive);
+        result = RuleProfiler.isEnabled() ? RuleProfiler.getReport()
+            : "\n-> ERROR: Rule profiling is not enabled, start the server with --profile.\n";
+      } else {
+        outcome = ServerMetrics.Outcome.ERROR;
+        AdmissionController.Reservation reservation = null;
+        try {
+          reservation = admission.reserve(0);
+          final String stringFromClient = inFromClient.read(keepAlive, reservation);
+          // annotate
+          result = getAnnotations(properties, stringFromClient, metrics);
+        } catch (AdmissionController.BusyException e) {
+          if (reservation == null) {
+            // refused before reading it
+            skip(inFromClient, keepAlive);
+          }
+          throw e;
+        } finally {
+          if (reservation != null) {
+            reservation.release();
+          }
         }
+        outcome = ServerMetrics.Outcome.OK;
       }
-    }catch (IOException e) {
+    } catch (AdmissionController.BusyException e) {
+      outcome = e.isTooLarge() ? ServerMetrics.Outcome.TOO_LARGE
+          : ServerMetrics.Outcome.BUSY;
+      result = "\n-> ERROR: " + e.getMessage() + "\n";
+    } catch (JDOMException e) {
+      outcome = ServerMetrics.Outcome.BAD_REQUEST;
+      result = "\n-> ERROR: Badly formatted NAF document!!\n";
+    } catch (UnsupportedEncodingException e) {
+      outcome = ServerMetrics.Outcome.BAD_REQUEST;
+      result = "\n-> ERROR: Encoding not valid UTF-8!!\n";
+    } catch (RuntimeException e) {
       e.printStackTrace();
+      result = "\n-> ERROR: Could not tokenize the document: " + e + "\n";
+    } finally {
+      if (outcome != null) {
+        metrics.countRequest(outcome);
+      }
     }
-    return stringFromClient.toString();
+    return result;
   }
-  
+
   /**
    * Send data back to server after annotation.
    * @param outToClient the outputstream to the client
    * @param kafToString the string to be processed
    * @throws IOException if io error
    */
-  private void sendDataToClient(BufferedWriter outToClient, String kafToString) throws IOException {
+  private static void sendDataToClient(BufferedWriter outToClient, String kafToString) throws IOException {
     outToClient.write(kafToString);
     outToClient.close();
   }
   
   /**
-   * Get tokens.
+   * Get tokens. It is shared with the {@link RuleBasedTokenizerHttpServer}.
+   * @param properties the options
+   * @param stringFromClient the original string
+   * @return the tokenized string
+   * @throws IOException if io problems
+   * @throws JDOMException if NAF problems
+   */
+  static String getAnnotations(Properties properties, String stringFromClient) throws IOException, JDOMException {
+    return getAnnotations(properties, stringFromClient, null);
+  }
+
+  /**
+   * Get tokens, recording the time of each step.
    * @param properties the options
    * @param stringFromClient the original string
+   * @param metrics the metrics where the times are recorded, or null
    * @return the tokenized string
    * @throws IOException if io problems
    * @throws JDOMException if NAF problems
    */
-  private String getAnnotations(Properties properties, String stringFromClient) throws IOException, JDOMException {
+  static String getAnnotations(Properties properties, String stringFromClient,
+      ServerMetrics metrics) throws IOException, JDOMException {
     
     BufferedReader breader;
     KAFDocument kaf;
+    NAFSplicer splicer = null;
     String kafString = null;
     String lang = properties.getProperty("language");
     String outputFormat = properties.getProperty("outputFormat");
     Boolean inputKafRaw = Boolean.valueOf(properties.getProperty("inputkaf"));
     Boolean noTok = Boolean.valueOf(properties.getProperty("notok"));
+    Boolean splice = Boolean.valueOf(properties.getProperty("splice"));
     String kafVersion = properties.getProperty("kafversion");
     Boolean offsets = Boolean.valueOf(properties.getProperty("offsets"));
     if (noTok) {
+      // already tokenized, it is only serialized
+      final long start = System.nanoTime();
       final BufferedReader noTokReader = new BufferedReader(new StringReader(stringFromClient));
-      kaf = new KAFDocument(lang, kafVersion);
-      final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
-          "text", "ixa-pipe-tok-notok-" + lang, version + "-" + commit);
-      newLp.setBeginTimestamp();
-      Annotate.tokensToKAF(noTokReader, kaf);
-      newLp.setEndTimestamp();
-      kafString = kaf.toString();
+      if (CLI.isNAFOutput(outputFormat)) {
+        kaf = new KAFDocument(lang, kafVersion);
+        final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
+            "text", "ixa-pipe-tok-notok-" + lang, version + "-" + commit);
+        newLp.setBeginTimestamp();
+        Annotate.tokensToKAF(noTokReader, kaf);
+        newLp.setEndTimestamp();
+        kafString = kaf.toString();
+      } else {
+        final StringWriter writer = new StringWriter();
+        if (outputFormat.equalsIgnoreCase("conll")) {
+          Annotate.tokensToCoNLL(noTokReader, writer, !offsets);
+        } else {
+          Annotate.tokensToText(noTokReader, writer);
+        }
+        kafString = writer.toString();
+      }
       noTokReader.close();
+      if (metrics != null) {
+        metrics.recordSerialization(System.nanoTime() - start);
+      }
     } else {
       if (inputKafRaw) {
         final BufferedReader kafReader = new BufferedReader(new StringReader(stringFromClient));
-        kaf = KAFDocument.createFromStream(kafReader);
-        final String text = kaf.getRawText();
+        final String text;
+        if (CLI.isNAFOutput(outputFormat) && splice) {
+          // the input is copied adding the text layer
+          splicer = new NAFSplicer(kafReader);
+          kaf = new KAFDocument(lang, kafVersion);
+          text = splicer.getRawText();
+        } else if (CLI.isNAFOutput(outputFormat)) {
+          kaf = KAFDocument.createFromStream(kafReader);
+          text = kaf.getRawText();
+        } else {
+          // only the raw layer is needed
+          kaf = null;
+          text = NAFRawReader.read(kafReader).getRawText();
+        }
         final StringReader stringReader = new StringReader(text);
         breader = new BufferedReader(stringReader);
       } else {
@@ -181,6 +472,7 @@ public class RuleBasedTokenizerServer {
         breader = new BufferedReader(new StringReader(stringFromClient));
       }
       final Annotate annotator = new Annotate(breader, properties);
+      final long start = System.nanoTime();
       if (outputFormat.equalsIgnoreCase("conll")) {
         if (offsets) {
           kafString = annotator.tokenizeToCoNLL();
@@ -196,12 +488,151 @@ public class RuleBasedTokenizerServer {
         newLp.setBeginTimestamp();
         annotator.tokenizeToKAF(kaf);
         newLp.setEndTimestamp();
-        kafString = kaf.toString();
+        if (splicer != null) {
+          final StringWriter writer = new StringWriter();
+          splicer.write(kaf, writer);
+          kafString = writer.toString();
+        } else {
+          kafString = kaf.toString();
+        }
+      }
+      if (metrics != null) {
+        final long segmentationNanos = annotator.getSegmentationNanos();
+        final long tokenizationNanos = annotator.getTokenizationNanos();
+        metrics.recordSegmentation(segmentationNanos);
+        metrics.recordTokenization(tokenizationNanos, annotator.getNoTokens());
+        metrics.recordSerialization(System.nanoTime() - start
+            - segmentationNanos - tokenizationNanos);
       }
       breader.close();
     }
     return kafString;
   }
 
+
+  /**
+   * Reader of the documents sent by a client. A document is read only once
+   * it is admitted, and the UTF-8 bytes of its lines are reserved as they
+   * arrive, so the documents being read are bounded by the admission control
+   * too, however long their lines.
+   */
+  private static class DocumentReader {
+
+    // the longest first line compared with the control messages
+    private static final int CONTROL_LINE = 64;
+    private final BufferedReader reader;
+    private final StringBuilder line = new StringBuilder();
+
+    DocumentReader(final BufferedReader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * Get the first line of the next document without reading it. A line
+     * longer than any control message is cut.
+     * @return the line or null at the end of the stream
+     * @throws IOException if io error
+     */
+    String peekLine() throws IOException {
+      line.setLength(0);
+      reader.mark(CONTROL_LINE + 2);
+      int c = reader.read();
+      final boolean end = c == -1;
+      while (c != -1 && c != '\n' && c != '\r' && line.length() <= CONTROL_LINE) {
+        line.append((char) c);
+        c = reader.read();
+      }
+      reader.reset();
+      return end ? null : line.toString();
+    }
+
+    /**
+     * Skip the line peeked, which is not longer than a control message.
+     * @throws IOException if io error
+     */
+    void skipLine() throws IOException {
+      reader.readLine();
+    }
+
+    /**
+     * Read the next document, which ends with an {@link #END_OF_DOCUMENT} line
+     * or the end of the stream, or, unless the connection is kept alive,
+     * after a {@code </NAF>} line.
+     * @param keepAlive whether the connection carries several documents
+     * @param reservation the reservation of the document, or null to skip it
+     * @return the document, or null if skipped
+     * @throws IOException if io error
+     * @throws AdmissionController.BusyException if the document is refused
+     *           while read; the rest of it is skipped
+     */
+    String read(final boolean keepAlive,
+        final AdmissionController.Reservation reservation) throws IOException,
+        AdmissionController.BusyException {
+      final StringBuilder document = new StringBuilder();
+      AdmissionController.BusyException refused = null;
+      long bytes = 0;
+      int lineStart = 0;
+      // the start of the line was dropped when the document was refused
+      boolean cut = false;
+      int c;
+      while ((c = reader.read()) != -1) {
+        final boolean keep = reservation != null && refused == null;
+        boolean endOfNAF = false;
+        if (c == '\n' || c == '\r') {
+          if (c == '\r') {
+            reader.mark(1);
+            if (reader.read() != '\n') {
+              reader.reset();
+            }
+          }
+          if (!cut && isLine(document, lineStart, END_OF_DOCUMENT)) {
+            document.setLength(lineStart);
+            break;
+          }
+          endOfNAF = !keepAlive && !cut
+              && isLine(document, lineStart, "</NAF>");
+          cut = false;
+          if (keep) {
+            document.append('\n');
+            bytes++;
+            lineStart = document.length();
+          } else {
+            document.setLength(0);
+            lineStart = 0;
+          }
+        } else if (keep) {
+          document.append((char) c);
+          bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate((char) c) ? 2 : 3;
+        } else if (document.length() <= CONTROL_LINE) {
+          // only what tells the end of the document is kept
+          document.append((char) c);
+        }
+        if (keep) {
+          try {
+            reservation.ensure(bytes);
+          } catch (AdmissionController.BusyException e) {
+            refused = e;
+            cut = lineStart < document.length();
+            document.setLength(0);
+            lineStart = 0;
+          }
+        }
+        if (endOfNAF) {
+          break;
+        }
+      }
+      if (refused != null) {
+        throw refused;
+      }
+      return reservation == null ? null : document.toString();
+    }
+
+    private static boolean isLine(final StringBuilder document,
+        final int lineStart, final String line) {
+      return document.length() - lineStart == line.length()
+          && document.indexOf(line, lineStart) == lineStart;
+    }
+  }
+
 }
 
@@ -0,0 +1,218 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Profiling of the rules of the segmenter and the tokenizer. When enabled,
+ * every application of a rule records the invocation, the number of matches,
+ * the characters processed and the time spent, added up per rule since
+ * startup for all the documents and threads. When disabled, which is the
+ * default, the rules are applied directly.
+ */
+public final class RuleProfiler {
+
+  /**
+   * Start time of a rule applied while profiling is disabled.
+   */
+  private static final long NOT_STARTED = Long.MIN_VALUE;
+  private static volatile boolean enabled;
+  private static final ConcurrentMap<String, RuleStats> RULES = new ConcurrentHashMap<String, RuleStats>();
+
+  private RuleProfiler() {
+  }
+
+  /**
+   * Enable or disable the profiling of the rules.
+   * 
+   * @param enable
+   *          whether to profile the rules
+   */
+  public static void setEnabled(final boolean enable) {
+    enabled = enable;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Replace every match of a rule, as {@link Matcher#replaceAll(String)}.
+   * 
+   * @param rule
+   *          the name of the rule
+   * @param pattern
+   *          the pattern of the rule
+   * @param input
+   *          the text
+   * @param replacement
+   *          the replacement
+   * @return the text with the matches replaced
+   */
+  public static String replaceAll(final String rule, final Pattern pattern,
+      final CharSequence input, final String replacement) {
+    if (!enabled) {
+      return pattern.matcher(input).replaceAll(replacement);
+    }
+    final long start = System.nanoTime();
+    int matches = 0;
+    try {
+      final Matcher matcher = pattern.matcher(input);
+      if (!matcher.find()) {
+        return input.toString();
+      }
+      final StringBuffer sb = new StringBuffer();
+      do {
+        matches++;
+        matcher.appendReplacement(sb, replacement);
+      } while (matcher.find());
+      matcher.appendTail(sb);
+      return sb.toString();
+    } finally {
+      record(rule, start, input.length(), matches);
+    }
+  }
+
+  /**
+   * Whether the whole text matches a rule, as {@link Matcher#matches()}.
+   * 
+   * @param rule
+   *          the name of the rule
+   * @param pattern
+   *          the pattern of the rule
+   * @param input
+   *          the text
+   * @return true if the text matches
+   */
+  public static boolean matches(final String rule, final Pattern pattern,
+      final CharSequence input) {
+    if (!enabled) {
+      return pattern.matcher(input).matches();
+    }
+    final long start = System.nanoTime();
+    boolean matches = false;
+    try {
+      matches = pattern.matcher(input).matches();
+      return matches;
+    } finally {
+      record(rule, start, input.length(), matches ? 1 : 0);
+    }
+  }
+
+  /**
+   * Start timing a rule which is not a single pattern.
+   * 
+   * @return the start time, to be passed to
+   *         {@link #record(String, long, int, int)}
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : NOT_STARTED;
+  }
+
+  /**
+   * Record an application of a rule started with {@link #start()}.
+   * 
+   * @param rule
+   *          the name of the rule
+   * @param start
+   *          the start time
+   * @param length
+   *          the characters processed
+   * @param matches
+   *          the number of matches
+   */
+  public static void record(final String rule, final long start,
+      final int length, final int matches) {
+    if (start == NOT_STARTED) {
+      return;
+    }
+    final long nanos = System.nanoTime() - start;
+    RuleStats stats = RULES.get(rule);
+    if (stats == null) {
+      final RuleStats created = new RuleStats(rule);
+      stats = RULES.putIfAbsent(rule, created);
+      if (stats == null) {
+        stats = created;
+      }
+    }
+    stats.invocations.incrementAndGet();
+    stats.matches.addAndGet(matches);
+    stats.chars.addAndGet(length);
+    stats.nanos.addAndGet(nanos);
+  }
+
+  /**
+   * Forget the statistics recorded so far.
+   */
+  public static void reset() {
+    RULES.clear();
+  }
+
+  /**
+   * Get the statistics of every rule applied while profiling, the most time
+   * consuming first.
+   * 
+   * @return the report, one rule per line
+   */
+  public static String getReport() {
+    final List<RuleStats> rules = new ArrayList<RuleStats>();
+    long totalNanos = 0;
+    for (final Map.Entry<String, RuleStats> entry : RULES.entrySet()) {
+      rules.add(entry.getValue());
+      totalNanos += entry.getValue().nanos.get();
+    }
+    Collections.sort(rules, new Comparator<RuleStats>() {
+      public int compare(final RuleStats a, final RuleStats b) {
+        final long x = a.nanos.get();
+        final long y = b.nanos.get();
+        return x < y ? 1 : x > y ? -1 : a.name.compareTo(b.name);
+      }
+    });
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%10s %8s %14s %14s %16s  %s%n", "time (ms)",
+        "time (%)", "calls", "matches", "chars", "rule"));
+    for (final RuleStats rule : rules) {
+      final long nanos = rule.nanos.get();
+      sb.append(String.format("%10.1f %8.2f %14d %14d %16d  %s%n",
+          nanos / 1000000.0, totalNanos == 0 ? 0.0 : nanos * 100.0
+              / totalNanos, rule.invocations.get(), rule.matches.get(),
+          rule.chars.get(), rule.name));
+    }
+    return sb.toString();
+  }
+
+  private static class RuleStats {
+    private final String name;
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong chars = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    RuleStats(final String name) {
+      this.name = name;
+    }
+  }
+
+}
@@ -0,0 +1,365 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Metrics of the tokenizer server in the Prometheus text format: documents
+ * by outcome, latency histograms of segmentation, tokenization and
+ * serialization, the requests in flight and the other statistics of the
+ * {@link AdmissionController}, bytes received and sent, tokens per second and
+ * JVM memory and garbage collection. Recording only increments atomic
+ * counters, so the threads tokenizing never wait for each other or for a
+ * scrape; a scrape may see a document counted in some metrics and not yet in
+ * others.
+ */
+public class ServerMetrics {
+
+  /**
+   * The path of the metrics.
+   */
+  public static final String CONTEXT = "/metrics";
+  private static final String PREFIX = "ixa_pipe_tok_";
+  /**
+   * Upper bounds in seconds of the buckets of the latency histograms.
+   */
+  private static final String[] BUCKETS = { "0.0005", "0.001", "0.0025",
+      "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5",
+      "10" };
+
+  /**
+   * The outcome of a document sent to the server.
+   */
+  public enum Outcome {
+    /**
+     * Tokenized.
+     */
+    OK,
+    /**
+     * Refused because the server is overloaded.
+     */
+    BUSY,
+    /**
+     * Refused because it is larger than the bytes in flight.
+     */
+    TOO_LARGE,
+    /**
+     * Not valid input.
+     */
+    BAD_REQUEST,
+    /**
+     * Failed because of an unexpected error.
+     */
+    ERROR;
+
+    private final String label = name().toLowerCase();
+  }
+
+  private final AdmissionController admission;
+  private final AtomicLongArray requests = new AtomicLongArray(
+      Outcome.values().length);
+  private final Histogram segmentation = new Histogram();
+  private final Histogram tokenization = new Histogram();
+  private final Histogram serialization = new Histogram();
+  private final AtomicLong receivedBytes = new AtomicLong();
+  private final AtomicLong sentBytes = new AtomicLong();
+  private final AtomicLong tokens = new AtomicLong();
+  private final AtomicLong tokenizationNanos = new AtomicLong();
+
+  /**
+   * Construct the metrics of a server.
+   * 
+   * @param admission
+   *          the admission control of the server
+   */
+  public ServerMetrics(final AdmissionController admission) {
+    this.admission = admission;
+  }
+
+  /**
+   * Count a document sent to the server.
+   * 
+   * @param outcome
+   *          how it was handled
+   */
+  public void countRequest(final Outcome outcome) {
+    requests.incrementAndGet(outcome.ordinal());
+  }
+
+  /**
+   * Add the bytes read from and written to the clients.
+   * 
+   * @param received
+   *          the bytes received
+   * @param sent
+   *          the bytes sent
+   */
+  public void addBytes(final long received, final long sent) {
+    receivedBytes.addAndGet(received);
+    sentBytes.addAndGet(sent);
+  }
+
+  /**
+   * Record the segmentation of a document.
+   * 
+   * @param nanos
+   *          the nanoseconds spent
+   */
+  public void recordSegmentation(final long nanos) {
+    segmentation.record(nanos);
+  }
+
+  /**
+   * Record the tokenization of a document.
+   * 
+   * @param nanos
+   *          the nanoseconds spent
+   * @param noTokens
+   *          the tokens of the document
+   */
+  public void recordTokenization(final long nanos, final int noTokens) {
+    tokenization.record(nanos);
+    tokenizationNanos.addAndGet(nanos);
+    tokens.addAndGet(noTokens);
+  }
+
+  /**
+   * Record the serialization of the result of a document.
+   * 
+   * @param nanos
+   *          the nanoseconds spent
+   */
+  public void recordSerialization(final long nanos) {
+    serialization.record(nanos);
+  }
+
+  /**
+   * Get the metrics in the Prometheus text format.
+   * 
+   * @return the metrics
+   */
+  public String scrape() {
+    final StringBuilder sb = new StringBuilder();
+    header(sb, "requests_total", "counter",
+        "Documents sent to the server by outcome.");
+    for (final Outcome outcome : Outcome.values()) {
+      sb.append(PREFIX).append("requests_total{outcome=\"")
+          .append(outcome.label).append("\"} ")
+          .append(requests.get(outcome.ordinal())).append('\n');
+    }
+    gauge(sb, "requests_in_flight", "Documents being tokenized.",
+        admission.getActiveRequests());
+    gauge(sb, "requests_queued", "Documents waiting their turn.",
+        admission.getQueueDepth());
+    gauge(sb, "bytes_in_flight", "Bytes of the documents being tokenized.",
+        admission.getBytesInFlight());
+    counter(sb, "admitted_requests_total", "Documents admitted.",
+        admission.getAdmittedRequests());
+    counter(sb, "queued_requests_total",
+        "Documents admitted or refused after waiting their turn.",
+        admission.getQueuedRequests());
+    counter(sb, "admission_wait_seconds_total",
+        "Time waited by the documents admitted.",
+        seconds(admission.getTotalWaitNanos()));
+    counter(sb, "received_bytes_total", "Bytes read from the clients.",
+        receivedBytes.get());
+    counter(sb, "sent_bytes_total", "Bytes written to the clients.",
+        sentBytes.get());
+    final long noTokens = tokens.get();
+    final long nanos = tokenizationNanos.get();
+    counter(sb, "tokens_total", "Tokens of the documents tokenized.",
+        noTokens);
+    gauge(sb, "tokens_per_second",
+        "Tokens per second of tokenization since startup.",
+        nanos == 0 ? 0 : noTokens / seconds(nanos));
+    segmentation.append(sb, "segmentation_seconds",
+        "Time segmenting a document into sentences.");
+    tokenization.append(sb, "tokenization_seconds",
+        "Time tokenizing the sentences of a document.");
+    serialization.append(sb, "serialization_seconds",
+        "Time writing the result of a document.");
+    appendJvm(sb);
+    return sb.toString();
+  }
+
+  /**
+   * Append the memory, garbage collection and thread metrics of the JVM.
+   */
+  private static void appendJvm(final StringBuilder sb) {
+    final MemoryUsage heap = ManagementFactory.getMemoryMXBean()
+        .getHeapMemoryUsage();
+    final MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean()
+        .getNonHeapMemoryUsage();
+    sb.append("# HELP jvm_memory_bytes_used Used bytes of a memory area.\n")
+        .append("# TYPE jvm_memory_bytes_used gauge\n")
+        .append("jvm_memory_bytes_used{area=\"heap\"} ")
+        .append(heap.getUsed()).append('\n')
+        .append("jvm_memory_bytes_used{area=\"nonheap\"} ")
+        .append(nonHeap.getUsed()).append('\n');
+    sb.append(
+        "# HELP jvm_memory_bytes_committed Committed bytes of a memory area.\n")
+        .append("# TYPE jvm_memory_bytes_committed gauge\n")
+        .append("jvm_memory_bytes_committed{area=\"heap\"} ")
+        .append(heap.getCommitted()).append('\n')
+        .append("jvm_memory_bytes_committed{area=\"nonheap\"} ")
+        .append(nonHeap.getCommitted()).append('\n');
+    sb.append(
+        "# HELP jvm_memory_bytes_max Maximum bytes of a memory area, -1 if undefined.\n")
+        .append("# TYPE jvm_memory_bytes_max gauge\n")
+        .append("jvm_memory_bytes_max{area=\"heap\"} ")
+        .append(heap.getMax()).append('\n')
+        .append("jvm_memory_bytes_max{area=\"nonheap\"} ")
+        .append(nonHeap.getMax()).append('\n');
+    final StringBuilder count = new StringBuilder(
+        "# HELP jvm_gc_collection_count_total Collections of a garbage collector.\n"
+            + "# TYPE jvm_gc_collection_count_total counter\n");
+    final StringBuilder time = new StringBuilder(
+        "# HELP jvm_gc_collection_seconds_total Time spent by a garbage collector.\n"
+            + "# TYPE jvm_gc_collection_seconds_total counter\n");
+    for (final GarbageCollectorMXBean gc : ManagementFactory
+        .getGarbageCollectorMXBeans()) {
+      final String label = "{gc=\"" + gc.getName().replace("\\", "\\\\")
+          .replace("\"", "\\\"") + "\"} ";
+      count.append("jvm_gc_collection_count_total").append(label)
+          .append(gc.getCollectionCount()).append('\n');
+      time.append("jvm_gc_collection_seconds_total").append(label)
+          .append(gc.getCollectionTime() / 1000.0).append('\n');
+    }
+    sb.append(count).append(time);
+    sb.append("# HELP jvm_threads_current Live threads.\n")
+        .append("# TYPE jvm_threads_current gauge\n")
+        .append("jvm_threads_current ")
+        .append(ManagementFactory.getThreadMXBean().getThreadCount())
+        .append('\n');
+    sb.append("# HELP jvm_uptime_seconds Time since the JVM started.\n")
+        .append("# TYPE jvm_uptime_seconds gauge\n")
+        .append("jvm_uptime_seconds ")
+        .append(ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0)
+        .append('\n');
+  }
+
+  private static double seconds(final long nanos) {
+    return nanos / 1000000000.0;
+  }
+
+  private static void header(final StringBuilder sb, final String name,
+      final String type, final String help) {
+    sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help)
+        .append('\n').append("# TYPE ").append(PREFIX).append(name)
+        .append(' ').append(type).append('\n');
+  }
+
+  private static void counter(final StringBuilder sb, final String name,
+      final String help, final Number value) {
+    header(sb, name, "counter", help);
+    sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void gauge(final StringBuilder sb, final String name,
+      final String help, final Number value) {
+    header(sb, name, "gauge", help);
+    sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+  }
+
+  /**
+   * Serve the metrics over HTTP at {@value #CONTEXT}.
+   * 
+   * @param port
+   *          the port
+   * @return the HTTP server, already started
+   * @throws IOException
+   *           if the port cannot be bound
+   */
+  public HttpServer startEndpoint(final int port) throws IOException {
+    final HttpServer server = HttpServer.create(new InetSocketAddress(port),
+        0);
+    server.createContext(CONTEXT, new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        try {
+          final byte[] body = scrape().getBytes(Charsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type",
+              "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          final OutputStream out = exchange.getResponseBody();
+          out.write(body);
+          out.close();
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  /**
+   * A latency histogram with fixed buckets. Recording increments the count
+   * of one bucket and the sum without locking; the cumulative counts are
+   * computed when scraping.
+   */
+  private static class Histogram {
+
+    private static final long[] BOUNDS = new long[BUCKETS.length];
+    static {
+      for (int i = 0; i < BUCKETS.length; i++) {
+        BOUNDS[i] = Math.round(Double.parseDouble(BUCKETS[i]) * 1000000000.0);
+      }
+    }
+    /**
+     * The observations of each bucket, the last one above every bound.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(
+        BOUNDS.length + 1);
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    void record(final long nanos) {
+      int i = 0;
+      while (i < BOUNDS.length && nanos > BOUNDS[i]) {
+        i++;
+      }
+      counts.incrementAndGet(i);
+      sumNanos.addAndGet(nanos);
+    }
+
+    void append(final StringBuilder sb, final String name, final String help) {
+      header(sb, name, "histogram", help);
+      long cumulative = 0;
+      for (int i = 0; i <= BOUNDS.length; i++) {
+        cumulative += counts.get(i);
+        sb.append(PREFIX).append(name).append("_bucket{le=\"")
+            .append(i < BOUNDS.length ? BUCKETS[i] : "+Inf").append("\"} ")
+            .append(cumulative).append('\n');
+      }
+      sb.append(PREFIX).append(name).append("_sum ")
+          .append(seconds(sumNanos.get())).append('\n');
+      sb.append(PREFIX).append(name).append("_count ").append(cumulative)
+          .append('\n');
+    }
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.jdom2.JDOMException;
+
+/**
+ * Warm up of the servers before they accept requests, so that the first
+ * requests do not pay for loading classes, compiling patterns and running
+ * interpreted code. Synthetic documents of the language of the server, with
+ * its abbreviations, contractions, quotes, links and numbers as generated by
+ * {@link TokenizerBenchmark#generateCorpus}, go through the full annotation
+ * path of the server options, in iterations over the whole corpus, until the
+ * throughput of {@value #STABLE_ITERATIONS} consecutive iterations varies
+ * less than {@value #LEVEL_OFF_PERCENT}% or the iterations or time allowed
+ * are over.
+ *
+ * Interning and the rule profile are left out, so that neither the pool of
+ * token values nor the profile keep the synthetic documents.
+ */
+public class ServerWarmup {
+
+  /**
+   * Default maximum iterations over the corpus; 0 for no warm up.
+   */
+  public static final int DEFAULT_ITERATIONS = 20;
+  /**
+   * Default maximum seconds of warm up.
+   */
+  public static final int DEFAULT_SECONDS = 30;
+  /**
+   * Variation of the throughput between iterations below which it has
+   * leveled off.
+   */
+  public static final int LEVEL_OFF_PERCENT = 5;
+  /**
+   * Consecutive iterations within the variation to level off.
+   */
+  public static final int STABLE_ITERATIONS = 2;
+  private static final int DOCUMENTS = 8;
+  private static final int DOCUMENT_SIZE = 4096;
+  private static final long SEED = 20150414L;
+
+  private final Properties properties;
+  private final int maxIterations;
+  private final long maxNanos;
+
+  /**
+   * The outcome of a warm up.
+   */
+  public static class Result {
+    private int iterations;
+    private long nanos;
+    private double firstCharsPerSecond;
+    private double lastCharsPerSecond;
+    private boolean leveledOff;
+    private long readyMillis;
+
+    /**
+     * Get the iterations over the corpus.
+     * @return the iterations
+     */
+    public int getIterations() {
+      return iterations;
+    }
+
+    /**
+     * Get the duration of the warm up.
+     * @return the nanoseconds
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    /**
+     * Get the throughput of the first iteration.
+     * @return the characters per second
+     */
+    public double getFirstCharsPerSecond() {
+      return firstCharsPerSecond;
+    }
+
+    /**
+     * Get the throughput of the last iteration.
+     * @return the characters per second
+     */
+    public double getLastCharsPerSecond() {
+      return lastCharsPerSecond;
+    }
+
+    /**
+     * Whether the warm up ended because the throughput leveled off.
+     * @return true if it leveled off before the iterations or time allowed
+     */
+    public boolean isLeveledOff() {
+      return leveledOff;
+    }
+
+    /**
+     * Get the time from the start of the JVM to the end of the warm up.
+     * @return the milliseconds
+     */
+    public long getReadyMillis() {
+      return readyMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "warmed up in %d iterations and %.2f s, from %.0f to %.0f characters per second%s; ready %.2f s after startup",
+          iterations, nanos / 1000000000.0, firstCharsPerSecond,
+          lastCharsPerSecond, leveledOff ? ", leveled off" : "",
+          readyMillis / 1000.0);
+    }
+  }
+
+  /**
+   * Construct a warm up.
+   * 
+   * @param properties
+   *          the options of the server
+   * @param maxIterations
+   *          the maximum iterations over the corpus
+   * @param maxSeconds
+   *          the maximum seconds
+   */
+  public ServerWarmup(final Properties properties, final int maxIterations,
+      final double maxSeconds) {
+    this.properties = new Properties();
+    this.properties.putAll(properties);
+    this.properties.remove("intern");
+    // the tokenizer reports every document in stderr
+    this.properties.setProperty("quiet", "true");
+    this.maxIterations = maxIterations;
+    this.maxNanos = (long) (maxSeconds * 1000000000.0);
+  }
+
+  /**
+   * Construct a warm up with the limits of the warmupIterations and
+   * warmupSeconds properties, or the defaults.
+   * 
+   * @param properties
+   *          the options of the server
+   */
+  public ServerWarmup(final Properties properties) {
+    this(properties, Integer.parseInt(properties.getProperty(
+        "warmupIterations", Integer.toString(DEFAULT_ITERATIONS))), Double
+        .parseDouble(properties.getProperty("warmupSeconds",
+            Integer.toString(DEFAULT_SECONDS))));
+  }
+
+  /**
+   * Whether there is any warm up to do.
+   * 
+   * @return false if no iterations or time are allowed
+   */
+  public boolean isEnabled() {
+    return maxIterations > 0 && maxNanos > 0;
+  }
+
+  /**
+   * Run the warm up in this thread.
+   * 
+   * @return the outcome
+   * @throws IOException
+   *           if the corpus cannot be generated or annotated
+   * @throws JDOMException
+   *           if the NAF documents of the corpus cannot be read
+   */
+  public Result run() throws IOException, JDOMException {
+    final Result result = new Result();
+    final List<String> documents = getDocuments();
+    long chars = 0;
+    for (final String document : documents) {
+      chars += document.length();
+    }
+    final boolean profile = RuleProfiler.isEnabled();
+    RuleProfiler.setEnabled(false);
+    final long start = System.nanoTime();
+    try {
+      double previous = 0;
+      int stable = 0;
+      while (result.iterations < maxIterations
+          && System.nanoTime() - start < maxNanos) {
+        final long iterationStart = System.nanoTime();
+        for (final String document : documents) {
+          RuleBasedTokenizerServer.getAnnotations(properties, document);
+        }
+        final double charsPerSecond = chars
+            / ((System.nanoTime() - iterationStart) / 1000000000.0);
+        if (result.iterations++ == 0) {
+          result.firstCharsPerSecond = charsPerSecond;
+        } else if (Math.abs(charsPerSecond - previous) * 100 < previous
+            * LEVEL_OFF_PERCENT) {
+          stable++;
+        } else {
+          stable = 0;
+        }
+        previous = charsPerSecond;
+        result.lastCharsPerSecond = charsPerSecond;
+        if (stable == STABLE_ITERATIONS) {
+          result.leveledOff = true;
+          break;
+        }
+      }
+    } finally {
+      RuleProfiler.reset();
+      RuleProfiler.setEnabled(profile);
+    }
+    result.nanos = System.nanoTime() - start;
+    result.readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    return result;
+  }
+
+  /**
+   * Get the synthetic documents in the input format of the server.
+   */
+  private List<String> getDocuments() throws IOException {
+    final String lang = properties.getProperty("language");
+    final List<String> texts = TokenizerBenchmark.generateCorpus(lang,
+        DOCUMENTS, DOCUMENT_SIZE, SEED);
+    if (!Boolean.parseBoolean(properties.getProperty("inputkaf"))) {
+      return texts;
+    }
+    final List<String> documents = new ArrayList<String>(texts.size());
+    for (final String text : texts) {
+      final KAFDocument kaf = new KAFDocument(lang, properties.getProperty(
+          "kafversion", "v1.naf"));
+      kaf.setRawText(text);
+      documents.add(kaf.toString());
+    }
+    return documents;
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Append only store of tokens outside the Java heap, for corpora whose
+ * tokens would not fit in the heap as {@link Token} objects. Each token is a
+ * record of its document, sentence and paragraph numbers, offset and length
+ * in the original text and normalized value in UTF-8, kept in direct byte
+ * buffers (segments) which are added as the arena grows, so records are
+ * never copied.
+ *
+ * The records can be read back with a {@link Cursor}, handed to other code
+ * as read only views of the segments, or written to a channel with
+ * {@link #writeTo(WritableByteChannel)}; a file written this way can be
+ * mapped and read with {@link #cursor(ByteBuffer)}. This class is not thread
+ * safe.
+ */
+public class TokenArena {
+
+  /**
+   * Default size in bytes of the segments.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+  /**
+   * Bytes of a record before the token value: document, sentence, paragraph,
+   * offset, length and number of bytes of the value.
+   */
+  public static final int RECORD_HEADER_SIZE = 24;
+  private static final int MAGIC = 0x49585441;
+  private static final int VERSION = 1;
+  /**
+   * Bytes of the header written before the records: magic number, version
+   * and number of tokens.
+   */
+  private static final int FILE_HEADER_SIZE = 16;
+
+  private final int segmentSize;
+  private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+  private final CharsetEncoder encoder = Charsets.UTF_8.newEncoder();
+  private ByteBuffer current;
+  private int noDocs;
+  private long noTokens;
+  private long size;
+
+  /**
+   * Construct an empty arena with segments of the default size.
+   */
+  public TokenArena() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Construct an empty arena.
+   * @param segmentSize the size in bytes of the segments allocated
+   */
+  public TokenArena(final int segmentSize) {
+    if (segmentSize < RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("Segment size too small: "
+          + segmentSize);
+    }
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Start a new document; the following tokens belong to it.
+   * @return the document number, from 1
+   */
+  public int startDocument() {
+    return ++noDocs;
+  }
+
+  /**
+   * Append a token of the current document.
+   * @param token the token
+   * @param sentence the sentence number in the document
+   * @param paragraph the paragraph number in the document
+   */
+  public void add(final Token token, final int sentence, final int paragraph) {
+    add(token.getTokenValue(), token.startOffset(), token.tokenLength(),
+        sentence, paragraph);
+  }
+
+  /**
+   * Append a token of the current document.
+   * @param value the normalized value
+   * @param offset the offset in the original text
+   * @param length the length in the original text
+   * @param sentence the sentence number in the document
+   * @param paragraph the paragraph number in the document
+   */
+  public void add(final String value, final int offset, final int length,
+      final int sentence, final int paragraph) {
+    // an UTF-8 encoded char takes at most three bytes
+    final int maxRecordSize = RECORD_HEADER_SIZE + 3 * value.length();
+    if (current == null || current.remaining() < maxRecordSize) {
+      current = ByteBuffer.allocateDirect(Math.max(segmentSize, maxRecordSize));
+      segments.add(current);
+    }
+    final int start = current.position();
+    current.putInt(noDocs).putInt(sentence).putInt(paragraph).putInt(offset)
+        .putInt(length);
+    final int valueStart = start + RECORD_HEADER_SIZE;
+    current.position(valueStart);
+    encoder.reset();
+    encoder.encode(CharBuffer.wrap(value), current, true);
+    encoder.flush(current);
+    current.putInt(valueStart - 4, current.position() - valueStart);
+    size += current.position() - start;
+    noTokens++;
+  }
+
+  /**
+   * Get the number of documents started.
+   * @return the number of documents
+   */
+  public int getDocumentCount() {
+    return noDocs;
+  }
+
+  /**
+   * Get the number of tokens.
+   * @return the number of tokens
+   */
+  public long getTokenCount() {
+    return noTokens;
+  }
+
+  /**
+   * Get the bytes taken by the records.
+   * @return the size of the records
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Get read only views of the records of each segment, sharing their
+   * memory. Records do not span segments.
+   * @return the segments, positioned at their first record
+   */
+  public List<ByteBuffer> getSegments() {
+    final List<ByteBuffer> views = new ArrayList<ByteBuffer>(segments.size());
+    for (final ByteBuffer segment : segments) {
+      final ByteBuffer view = segment.duplicate();
+      view.flip();
+      views.add(view.asReadOnlyBuffer());
+    }
+    return Collections.unmodifiableList(views);
+  }
+
+  /**
+   * Write a header and the records to a channel, straight from the
+   * segments.
+   * @param channel the channel, not closed
+   * @return the number of bytes written
+   * @throws IOException if io problems
+   */
+  public long writeTo(final WritableByteChannel channel) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).putLong(noTokens).flip();
+    writeFully(channel, header);
+    for (final ByteBuffer segment : getSegments()) {
+      writeFully(channel, segment);
+    }
+    return FILE_HEADER_SIZE + size;
+  }
+
+  private static void writeFully(final WritableByteChannel channel,
+      final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Get a cursor at the start of the records.
+   * @return the cursor
+   */
+  public Cursor cursor() {
+    return new Cursor(getSegments());
+  }
+
+  /**
+   * Get a cursor over the records written by
+   * {@link #writeTo(WritableByteChannel)}, for instance a mapped file.
+   * @param written the buffer, positioned at the header
+   * @return the cursor
+   */
+  public static Cursor cursor(final ByteBuffer written) {
+    final ByteBuffer records = written.slice();
+    if (records.remaining() < FILE_HEADER_SIZE
+        || records.getInt() != MAGIC || records.getInt() != VERSION) {
+      throw new IllegalArgumentException("Not a token arena of version "
+          + VERSION);
+    }
+    records.getLong();
+    return new Cursor(Collections.singletonList(records.slice()));
+  }
+
+  /**
+   * Reader of the records of an arena, one token at a time. The fields are
+   * read from the records, without copying them to the heap, except the
+   * value.
+   */
+  public static class Cursor {
+
+    private final List<ByteBuffer> segments;
+    private int segmentIndex;
+    private ByteBuffer segment;
+    private int record = -1;
+
+    Cursor(final List<ByteBuffer> segments) {
+      this.segments = segments;
+      segment = segments.isEmpty() ? null : segments.get(0).duplicate();
+    }
+
+    /**
+     * Move to the next token.
+     * @return false if there are no more tokens
+     */
+    public boolean next() {
+      if (record != -1) {
+        segment.position(record + RECORD_HEADER_SIZE
+            + segment.getInt(record + RECORD_HEADER_SIZE - 4));
+      }
+      while (segment != null && !segment.hasRemaining()) {
+        segment = ++segmentIndex < segments.size() ? segments.get(
+            segmentIndex).duplicate() : null;
+      }
+      if (segment == null) {
+        record = -1;
+        return false;
+      }
+      record = segment.position();
+      return true;
+    }
+
+    public int getDocument() {
+      return segment.getInt(record);
+    }
+
+    public int getSentence() {
+      return segment.getInt(record + 4);
+    }
+
+    public int getParagraph() {
+      return segment.getInt(record + 8);
+    }
+
+    public int getOffset() {
+      return segment.getInt(record + 12);
+    }
+
+    public int getLength() {
+      return segment.getInt(record + 16);
+    }
+
+    /**
+     * Get the normalized value of the token.
+     * @return the value
+     */
+    public String getValue() {
+      final byte[] bytes = new byte[segment.getInt(record + 20)];
+      final ByteBuffer value = segment.duplicate();
+      value.position(record + RECORD_HEADER_SIZE);
+      value.get(bytes);
+      return new String(bytes, Charsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of token values shared by every thread, so that repeated
+ * tokens (punctuation, function words, paragraph marks) of large results
+ * share one String instance. Each thread looks up first in a small cache of
+ * its own, and then in the pool; once the pool is full, new values are no
+ * longer added. Values longer than the maximum length, which rarely repeat,
+ * are not interned.
+ */
+public class TokenInterner {
+
+  /**
+   * Default maximum number of values in the pool.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 100000;
+  /**
+   * Default maximum length of the values interned.
+   */
+  public static final int DEFAULT_MAX_LENGTH = 32;
+  /**
+   * Estimated bytes of a String besides its characters.
+   */
+  private static final int STRING_OVERHEAD = 40;
+  private static final int FRONT_CACHE_SIZE = 1024;
+  /**
+   * Lookups of a thread after which its counts are added to the totals.
+   */
+  private static final int FLUSH_INTERVAL = 4096;
+
+  private static final TokenInterner DEFAULT = new TokenInterner(
+      DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LENGTH);
+
+  private final int maxEntries;
+  private final int maxLength;
+  private final ConcurrentMap<String, String> pool = new ConcurrentHashMap<String, String>();
+  private final AtomicInteger entries = new AtomicInteger();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong savedBytes = new AtomicLong();
+  private final ThreadLocal<FrontCache> frontCache = new ThreadLocal<FrontCache>() {
+    @Override
+    protected FrontCache initialValue() {
+      return new FrontCache();
+    }
+  };
+
+  /**
+   * The values last found by a thread and its counts not yet added to the
+   * totals.
+   */
+  private static class FrontCache {
+    private final String[] values = new String[FRONT_CACHE_SIZE];
+    private int lookups;
+    private int hits;
+    private long savedBytes;
+  }
+
+  /**
+   * Construct an interning pool.
+   * @param maxEntries the maximum number of values in the pool
+   * @param maxLength the maximum length of the values interned
+   */
+  public TokenInterner(final int maxEntries, final int maxLength) {
+    this.maxEntries = maxEntries;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Get the pool shared by the tokenizers created with the intern option.
+   * @return the default pool
+   */
+  public static TokenInterner getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Get the shared instance of a value.
+   * @param value the value
+   * @return the instance in the pool, or the value if it is not pooled
+   */
+  public String intern(final String value) {
+    if (value == null || value.length() > maxLength) {
+      return value;
+    }
+    final FrontCache front = frontCache.get();
+    final int hash = value.hashCode();
+    final int slot = (hash ^ hash >>> 16) & FRONT_CACHE_SIZE - 1;
+    String shared = front.values[slot];
+    if (shared == null || shared != value && !shared.equals(value)) {
+      shared = pool.get(value);
+      if (shared == null) {
+        if (entries.get() < maxEntries) {
+          final String previous = pool.putIfAbsent(value, value);
+          if (previous == null) {
+            entries.incrementAndGet();
+            shared = value;
+          } else {
+            shared = previous;
+            front.hits++;
+          }
+        }
+      } else {
+        front.hits++;
+      }
+      if (shared != null) {
+        front.values[slot] = shared;
+      }
+    } else {
+      front.hits++;
+    }
+    if (shared != null && shared != value) {
+      front.savedBytes += STRING_OVERHEAD + 2 * value.length();
+    }
+    if (++front.lookups == FLUSH_INTERVAL) {
+      flush();
+    }
+    return shared == null ? value : shared;
+  }
+
+  /**
+   * Add the counts of the current thread to the totals.
+   */
+  public void flush() {
+    final FrontCache front = frontCache.get();
+    lookups.addAndGet(front.lookups);
+    hits.addAndGet(front.hits);
+    savedBytes.addAndGet(front.savedBytes);
+    front.lookups = 0;
+    front.hits = 0;
+    front.savedBytes = 0;
+  }
+
+  /**
+   * Get the number of values in the pool.
+   * @return the number of entries
+   */
+  public int getEntries() {
+    return entries.get();
+  }
+
+  /**
+   * Get the number of lookups flushed by every thread.
+   * @return the number of lookups
+   */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  /**
+   * Get the fraction of lookups returning a value already in the pool.
+   * @return the hit rate, 0 if there were no lookups
+   */
+  public double getHitRate() {
+    final long total = lookups.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  /**
+   * Get the estimated bytes of the values replaced by their shared instance.
+   * @return the bytes saved
+   */
+  public long getSavedBytes() {
+    return savedBytes.get();
+  }
+
+}
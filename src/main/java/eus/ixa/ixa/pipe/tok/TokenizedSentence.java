@@ -0,0 +1,61 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A segmented, tokenized and normalized sentence. As in the lists returned by
+ * {@link Tokenizer#tokenize(String[])}, paragraphs are marked by tokens with
+ * the {@link eus.ixa.ixa.pipe.seg.RuleBasedSegmenter#PARAGRAPH} value.
+ */
+public class TokenizedSentence {
+
+  private final int sentenceNumber;
+  private final List<Token> tokens;
+
+  /**
+   * Construct a tokenized sentence.
+   * @param sentenceNumber the number of the sentence in the document, from 1
+   * @param tokens the tokens
+   */
+  public TokenizedSentence(final int sentenceNumber, final List<Token> tokens) {
+    this.sentenceNumber = sentenceNumber;
+    this.tokens = Collections.unmodifiableList(tokens);
+  }
+
+  /**
+   * Get the number of the sentence in the document.
+   * @return the sentence number, from 1
+   */
+  public int getSentenceNumber() {
+    return sentenceNumber;
+  }
+
+  /**
+   * Get the tokens of the sentence.
+   * @return the unmodifiable list of tokens
+   */
+  public List<Token> getTokens() {
+    return tokens;
+  }
+
+  @Override
+  public String toString() {
+    return StringUtils.getStringFromTokens(tokens);
+  }
+
+}
@@ -0,0 +1,230 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+import eus.ixa.ixa.pipe.seg.SentenceBoundaryDetector;
+import eus.ixa.ixa.pipe.seg.Span;
+
+/**
+ * Lazy segmentation, tokenization and normalization of the text of a reader.
+ * The text is read in chunks of lines as sentences are requested, so callers
+ * can stop at any moment and memory is bounded by the chunk size and the
+ * longest sentence instead of by the document.
+ *
+ * Every chunk is segmented together with the last sentence of the previous
+ * one, which is kept back because its end depends on the text that follows.
+ * As its start depends on the text before it too, segmentation starts again
+ * from the last restart offset of the detector before it, see
+ * {@link SentenceBoundaryDetector#getRestartOffset(int)}. Chunks are read
+ * up to a non empty line, so that no run of empty lines is split, and they
+ * are segmented up to their last space, as paragraph marks join the last word
+ * of a paragraph to the first one of the next. Sentences and offsets are those of
+ * the {@link RuleBasedSegmenter} and {@link RuleBasedTokenizer} on the whole
+ * text. This class is not thread safe.
+ */
+public class TokenizedSentenceIterator implements Iterator<TokenizedSentence>,
+    Closeable {
+
+  /**
+   * Default number of characters read before segmenting.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+  private final BufferedReader breader;
+  private final int chunkSize;
+  private final SentenceBoundaryDetector detector;
+  private final RuleBasedTokenizer tokenizer;
+  /**
+   * The text not yet tokenized or segmented again, with line breaks already
+   * replaced, as used for the offsets.
+   */
+  private final StringBuilder buffer = new StringBuilder();
+  /**
+   * The buffer when it was last segmented.
+   */
+  private String bufferText = "";
+  /**
+   * Offset of the buffer in the document.
+   */
+  private int bufferOffset;
+  /**
+   * Offset of the buffer where segmentation starts again.
+   */
+  private int restart;
+  /**
+   * End of the last sentence segmented in the buffer.
+   */
+  private int lastEnd;
+  /**
+   * End of the last token in the buffer.
+   */
+  private int prevIndex;
+  private final Deque<String> sentences = new ArrayDeque<String>();
+  private String lookahead;
+  /**
+   * The text read after the last space, which may be part of a word going
+   * on in the next chunk.
+   */
+  private String pending = "";
+  private boolean endOfText;
+  private int noSents;
+
+  /**
+   * Construct a lazy tokenizer of the text of a reader.
+   * 
+   * @param reader
+   *          the reader, closed with the iterator
+   * @param properties
+   *          the options, as for the RuleBasedSegmenter and the
+   *          RuleBasedTokenizer
+   */
+  public TokenizedSentenceIterator(final Reader reader,
+      final Properties properties) {
+    this(reader, properties, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Construct a lazy tokenizer of the text of a reader.
+   * 
+   * @param reader
+   *          the reader, closed with the iterator
+   * @param properties
+   *          the options, as for the RuleBasedSegmenter and the
+   *          RuleBasedTokenizer
+   * @param chunkSize
+   *          the characters read before segmenting
+   */
+  public TokenizedSentenceIterator(final Reader reader,
+      final Properties properties, final int chunkSize) {
+    breader = reader instanceof BufferedReader ? (BufferedReader) reader
+        : new BufferedReader(reader);
+    this.chunkSize = chunkSize;
+    detector = new SentenceBoundaryDetector(new NonPeriodBreaker(properties),
+        "yes".equalsIgnoreCase(properties.getProperty("hardParagraph")));
+    tokenizer = new RuleBasedTokenizer("", properties);
+  }
+
+  public boolean hasNext() {
+    if (sentences.isEmpty() && !endOfText) {
+      try {
+        segmentNextChunk();
+      } catch (final IOException e) {
+        throw new IllegalStateException("Could not read the text", e);
+      }
+    }
+    return !sentences.isEmpty();
+  }
+
+  public TokenizedSentence next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    final List<Token> tokens = new ArrayList<Token>();
+    prevIndex = tokenizer.tokenizeSentence(sentences.removeFirst(),
+        bufferText, prevIndex, tokens);
+    tokenizer.normalize(Collections.singletonList(tokens));
+    if (bufferOffset > 0) {
+      for (final Token token : tokens) {
+        token.setStartOffset(token.startOffset() + bufferOffset);
+      }
+    }
+    return new TokenizedSentence(++noSents, tokens);
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  public void close() throws IOException {
+    endOfText = true;
+    sentences.clear();
+    breader.close();
+  }
+
+  /**
+   * Read chunks until at least one sentence is complete or the text ends, and
+   * segment them again from the restart offset.
+   */
+  private void segmentNextChunk() throws IOException {
+    // discard the text already tokenized
+    final int discard = Math.min(restart, prevIndex);
+    buffer.delete(0, discard);
+    bufferOffset += discard;
+    prevIndex -= discard;
+    restart -= discard;
+    lastEnd -= discard;
+    while (sentences.isEmpty() && !endOfText) {
+      readChunk();
+      final int start = restart;
+      final char[] text = new char[buffer.length() - start];
+      buffer.getChars(start, buffer.length(), text, 0);
+      final List<Span> spans = detector.detect(text);
+      final int complete = endOfText ? spans.size() : spans.size() - 1;
+      for (int i = 0; i < complete; i++) {
+        final Span span = spans.get(i);
+        // the sentences before the restart offset were already returned
+        if (span.getStart() + start >= lastEnd) {
+          sentences.add(span.getCoveredText(text));
+          lastEnd = span.getEnd() + start;
+        }
+      }
+      if (!endOfText && !spans.isEmpty()) {
+        final int keptBack = spans.get(spans.size() - 1).getStart();
+        restart = start + Math.max(0, detector.getRestartOffset(keptBack));
+      }
+    }
+    bufferText = buffer.toString();
+  }
+
+  /**
+   * Read at least chunkSize characters, ending before a non empty line so
+   * that no run of empty lines is split, and append them up to the last
+   * space to the buffer as the RuleBasedSegmenter does with the whole text.
+   */
+  private void readChunk() throws IOException {
+    final StringBuilder chunk = new StringBuilder();
+    String line = lookahead != null ? lookahead : breader.readLine();
+    lookahead = null;
+    while (line != null) {
+      if (chunk.length() >= chunkSize && !line.isEmpty()) {
+        lookahead = line;
+        break;
+      }
+      chunk.append(line).append(RuleBasedSegmenter.LINE_BREAK);
+      line = breader.readLine();
+    }
+    endOfText = line == null;
+    final String text = pending
+        + RuleBasedSegmenter.buildText(chunk.toString());
+    final int end = endOfText ? text.length() : text.lastIndexOf(' ') + 1;
+    buffer.append(text, 0, end);
+    pending = text.substring(end);
+  }
+
+}
@@ -0,0 +1,408 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+import eus.ixa.ixa.pipe.lang.LanguagePack;
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
+/**
+ * End to end benchmark of the {@link Annotate} paths. Documents, generated
+ * for each language or loaded from files, are tokenized one after the other
+ * in the calling thread, first for a warm up period and then for the
+ * measured period, reporting tokens and megabytes of input per second, the
+ * median and 99th percentile latency of a document and the bytes allocated
+ * per token.
+ *
+ * The synthetic documents mix pseudo words with the abbreviations of the
+ * non breaker file of the language, links, e-mails, numbers, contractions,
+ * quotes, brackets, dashes, ellipsis, line breaks and paragraphs, so that
+ * every rule of the segmenter and the tokenizer is applied.
+ */
+public class TokenizerBenchmark {
+
+  /**
+   * Default number of synthetic documents of each language.
+   */
+  public static final int DEFAULT_DOCUMENTS = 32;
+  /**
+   * Default characters of a synthetic document.
+   */
+  public static final int DEFAULT_DOCUMENT_SIZE = 16384;
+
+  private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzáéíóúñçàèüößë";
+  private static final String[] CONTRACTIONS = { "don't", "it's", "we're",
+      "I'll", "they've", "can't", "l'home", "d'Artagnan", "c'est", "qu'il",
+      "dell'arte", "all'università", "'90s", "rock'n'roll", "O'Neill",
+      "du's", "z'n" };
+  private static final String[][] QUOTES = { { "\"", "\"" }, { "«", "»" },
+      { "“", "”" }, { "'", "'" }, { "‘", "’" }, { "(", ")" }, { "[", "]" },
+      { "¿", "?" }, { "¡", "!" } };
+  private static final String[] LINKS = { "http://www.ehu.eus/ixa",
+      "https://github.com/ixa-ehu/ixa-pipe-tok?tab=readme#usage",
+      "www.example.com", "info@example.org",
+      "ftp://ftp.example.net/pub/file.txt", "example.co.uk" };
+  private static final String[] NUMBERS = { "1,200", "3.14", "12:30",
+      "2015-04-14", "50%", "$20", "1.000.000", "20.5", "1990s", "+34" };
+  private static final String[] PUNCTUATION = { ",", ";", ":", " -", " --",
+      "...", " &", " /", " *" };
+  private static final String[] ENDS = { ".", ".", ".", "?", "!", "...",
+      ".\"", ".)", "?!" };
+  /**
+   * Non breakers which are plain words, not regular expressions.
+   */
+  private static final Pattern PLAIN_WORD = Pattern.compile("[\\p{L}.\\-]+");
+
+  private final Properties properties;
+  private final String outputFormat;
+  private final long warmupNanos;
+  private final long durationNanos;
+  /**
+   * The tokens of the last document annotated.
+   */
+  private int lastTokens;
+
+  /**
+   * Construct a benchmark.
+   * 
+   * @param properties
+   *          the options of the tokenizer; the language is set for each run
+   * @param outputFormat
+   *          naf, conll or oneline
+   * @param warmupSeconds
+   *          the seconds tokenizing before measuring
+   * @param durationSeconds
+   *          the seconds measured
+   */
+  public TokenizerBenchmark(final Properties properties,
+      final String outputFormat, final double warmupSeconds,
+      final double durationSeconds) {
+    this.properties = properties;
+    this.outputFormat = outputFormat;
+    this.warmupNanos = (long) (warmupSeconds * 1000000000.0);
+    this.durationNanos = (long) (durationSeconds * 1000000000.0);
+  }
+
+  /**
+   * Generate synthetic documents for a language.
+   * 
+   * @param lang
+   *          the language
+   * @param noDocuments
+   *          the number of documents
+   * @param documentSize
+   *          the approximate characters of each document
+   * @param seed
+   *          the seed of the random generator, the same documents are
+   *          generated for the same seed
+   * @return the documents
+   * @throws IOException
+   *           if the non breakers of the language cannot be read
+   */
+  public static List<String> generateCorpus(final String lang,
+      final int noDocuments, final int documentSize, final long seed)
+      throws IOException {
+    final List<String> abbreviations = readAbbreviations(lang);
+    final Random random = new Random(seed);
+    final List<String> documents = new ArrayList<String>(noDocuments);
+    for (int i = 0; i < noDocuments; i++) {
+      final StringBuilder sb = new StringBuilder(documentSize + 512);
+      while (sb.length() < documentSize) {
+        final int noSentences = 1 + random.nextInt(6);
+        for (int j = 0; j < noSentences; j++) {
+          if (j > 0) {
+            sb.append(random.nextInt(5) == 0 ? "\n" : " ");
+          }
+          appendSentence(sb, random, abbreviations);
+        }
+        sb.append("\n\n");
+      }
+      documents.add(sb.toString());
+    }
+    return documents;
+  }
+
+  private static List<String> readAbbreviations(final String lang)
+      throws IOException {
+    final List<String> abbreviations = new ArrayList<String>();
+    final LanguagePack pack = LanguagePacks.getPack(lang);
+    final InputStream nonBreakers = pack == null ? null : pack
+        .getNonBreakerInputStream();
+    if (nonBreakers == null) {
+      return abbreviations;
+    }
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        nonBreakers, Charsets.UTF_8));
+    try {
+      String line;
+      while ((line = breader.readLine()) != null) {
+        line = line.trim();
+        if (!line.startsWith("#") && PLAIN_WORD.matcher(line).matches()) {
+          abbreviations.add(line);
+        }
+      }
+    } finally {
+      breader.close();
+    }
+    return abbreviations;
+  }
+
+  private static void appendSentence(final StringBuilder sb,
+      final Random random, final List<String> abbreviations) {
+    appendWord(sb, random, true);
+    final int noWords = 4 + random.nextInt(20);
+    for (int i = 0; i < noWords; i++) {
+      sb.append(' ');
+      final int kind = random.nextInt(20);
+      if (kind == 0 && !abbreviations.isEmpty()) {
+        sb.append(abbreviations.get(random.nextInt(abbreviations.size())))
+            .append(". ");
+        appendWord(sb, random, true);
+      } else if (kind == 1) {
+        sb.append(CONTRACTIONS[random.nextInt(CONTRACTIONS.length)]);
+      } else if (kind == 2) {
+        final String[] quote = QUOTES[random.nextInt(QUOTES.length)];
+        sb.append(quote[0]);
+        appendWord(sb, random, false);
+        sb.append(' ');
+        appendWord(sb, random, false);
+        sb.append(quote[1]);
+      } else if (kind == 3) {
+        sb.append(LINKS[random.nextInt(LINKS.length)]);
+      } else if (kind == 4) {
+        sb.append(NUMBERS[random.nextInt(NUMBERS.length)]);
+      } else if (kind == 5) {
+        appendWord(sb, random, false);
+        sb.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+      } else if (kind == 6) {
+        appendWord(sb, random, true);
+      } else {
+        appendWord(sb, random, false);
+      }
+    }
+    sb.append(ENDS[random.nextInt(ENDS.length)]);
+  }
+
+  private static void appendWord(final StringBuilder sb, final Random random,
+      final boolean capitalized) {
+    final int length = 1 + random.nextInt(10);
+    for (int i = 0; i < length; i++) {
+      final char c = LETTERS.charAt(random.nextInt(LETTERS.length()));
+      sb.append(i == 0 && capitalized ? Character.toUpperCase(c) : c);
+    }
+  }
+
+  /**
+   * Tokenize the documents of a language, round robin, during the warm up
+   * and measured periods; at least one document is measured.
+   * 
+   * @param lang
+   *          the language
+   * @param documents
+   *          the documents
+   * @return the measures
+   * @throws IOException
+   *           if io problems
+   */
+  public Result run(final String lang, final List<String> documents)
+      throws IOException {
+    final Properties runProperties = new Properties();
+    runProperties.putAll(properties);
+    runProperties.setProperty("language", lang);
+    final int[] bytes = new int[documents.size()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = documents.get(i).getBytes(Charsets.UTF_8).length;
+    }
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+        ? (com.sun.management.ThreadMXBean) threads : null;
+    final long threadId = Thread.currentThread().getId();
+    // the tokenizer reports every document in stderr
+    final PrintStream err = System.err;
+    System.setErr(new PrintStream(ByteStreams.nullOutputStream()));
+    final Result result = new Result(lang, outputFormat);
+    try {
+      int next = 0;
+      final long warmupEnd = System.nanoTime() + warmupNanos;
+      while (System.nanoTime() - warmupEnd < 0) {
+        result.sink += annotate(lang, documents.get(next), runProperties);
+        next = (next + 1) % documents.size();
+      }
+      long[] latencies = new long[1024];
+      final long allocatedStart = allocations == null ? 0 : allocations
+          .getThreadAllocatedBytes(threadId);
+      final long start = System.nanoTime();
+      final long end = start + durationNanos;
+      do {
+        final long documentStart = System.nanoTime();
+        result.sink += annotate(lang, documents.get(next), runProperties);
+        result.tokens += lastTokens;
+        if (result.documents == latencies.length) {
+          latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[result.documents++] = System.nanoTime() - documentStart;
+        result.bytes += bytes[next];
+        next = (next + 1) % documents.size();
+      } while (System.nanoTime() - end < 0);
+      result.nanos = System.nanoTime() - start;
+      result.allocatedBytes = allocations == null ? -1 : allocations
+          .getThreadAllocatedBytes(threadId) - allocatedStart;
+      Arrays.sort(latencies, 0, result.documents);
+      result.p50Nanos = latencies[percentile(result.documents, 0.50)];
+      result.p99Nanos = latencies[percentile(result.documents, 0.99)];
+    } finally {
+      System.setErr(err);
+    }
+    return result;
+  }
+
+  private static int percentile(final int size, final double p) {
+    return Math.min(size - 1, (int) Math.ceil(p * size) - 1);
+  }
+
+  /**
+   * Tokenize a document as the tok subcommand does.
+   * 
+   * @return the length of the result, so that it is not optimized away
+   */
+  private int annotate(final String lang, final String document,
+      final Properties runProperties) throws IOException {
+    final Annotate annotator = new Annotate(new BufferedReader(
+        new StringReader(document)), runProperties);
+    final String result;
+    if (outputFormat.equalsIgnoreCase("conll")) {
+      result = annotator.tokenizeToCoNLL();
+    } else if (outputFormat.equalsIgnoreCase("oneline")) {
+      result = annotator.tokenizeToText();
+    } else {
+      final KAFDocument kaf = new KAFDocument(lang, "v1.naf");
+      final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
+          "text", "ixa-pipe-tok-" + lang, "bench");
+      newLp.setBeginTimestamp();
+      annotator.tokenizeToKAF(kaf);
+      newLp.setEndTimestamp();
+      result = kaf.toString();
+    }
+    lastTokens = annotator.getNoTokens();
+    return result.length();
+  }
+
+  /**
+   * The measures of a benchmark run.
+   */
+  public static class Result {
+
+    private final String lang;
+    private final String outputFormat;
+    private int documents;
+    private long tokens;
+    private long bytes;
+    private long nanos;
+    private long p50Nanos;
+    private long p99Nanos;
+    private long allocatedBytes;
+    private long sink;
+
+    Result(final String lang, final String outputFormat) {
+      this.lang = lang;
+      this.outputFormat = outputFormat;
+    }
+
+    public double getTokensPerSecond() {
+      return tokens / (nanos / 1000000000.0);
+    }
+
+    public double getMegabytesPerSecond() {
+      return bytes / 1048576.0 / (nanos / 1000000000.0);
+    }
+
+    /**
+     * Get the bytes allocated per token by the benchmark thread.
+     * 
+     * @return the bytes or -1 if the JVM does not measure allocations
+     */
+    public double getAllocatedBytesPerToken() {
+      return allocatedBytes < 0 || tokens == 0 ? -1 : (double) allocatedBytes
+          / tokens;
+    }
+
+    /**
+     * Get the header of the lines of {@link #toText()}.
+     * 
+     * @return the header
+     */
+    public static String getTextHeader() {
+      return String.format(Locale.ROOT,
+          "%-6s %-8s %8s %12s %12s %8s %10s %10s %12s", "lang", "output", "docs", "tokens", "tokens/s", "MB/s", "p50 ms",
+          "p99 ms", "bytes/token");
+    }
+
+    /**
+     * Get the measures in a line of text.
+     * 
+     * @return the measures
+     */
+    public String toText() {
+      return String.format(Locale.ROOT,
+          "%-6s %-8s %8d %12d %12.0f %8.2f %10.2f %10.2f %12.1f", lang,
+          outputFormat, documents, tokens, getTokensPerSecond(),
+          getMegabytesPerSecond(), p50Nanos / 1000000.0, p99Nanos / 1000000.0,
+          getAllocatedBytesPerToken());
+    }
+
+    /**
+     * Get the measures as a JSON object.
+     * 
+     * @return the measures
+     */
+    public String toJson() {
+      final StringBuilder sb = new StringBuilder("{");
+      Json.appendString(sb.append("\"lang\":"), lang);
+      Json.appendString(sb.append(",\"outputFormat\":"), outputFormat);
+      sb.append(",\"documents\":").append(documents)
+          .append(",\"tokens\":").append(tokens)
+          .append(",\"bytes\":").append(bytes)
+          .append(",\"seconds\":").append(nanos / 1000000000.0)
+          .append(",\"tokensPerSecond\":").append(getTokensPerSecond())
+          .append(",\"megabytesPerSecond\":").append(getMegabytesPerSecond())
+          .append(",\"p50Millis\":").append(p50Nanos / 1000000.0)
+          .append(",\"p99Millis\":").append(p99Nanos / 1000000.0)
+          .append(",\"allocatedBytesPerToken\":")
+          .append(getAllocatedBytesPerToken()).append('}');
+      return sb.toString();
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+/**
+ * Interfaces of demand driven streams, with the shape of the Reactive Streams
+ * interfaces of {@code java.util.concurrent.Flow}, which is not available in
+ * the Java versions supported by ixa-pipe-tok. A publisher sends items to a
+ * subscriber only as they are requested through its subscription.
+ */
+public final class TokenizerFlow {
+
+  private TokenizerFlow() {
+  }
+
+  /**
+   * A producer of items sent to subscribers as they request them.
+   * @param <T> the type of the items
+   */
+  public interface Publisher<T> {
+
+    /**
+     * Add a subscriber, which receives a subscription by
+     * {@link Subscriber#onSubscribe(Subscription)}.
+     * @param subscriber the subscriber
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  /**
+   * A receiver of items. Methods are called one at a time for each
+   * subscription.
+   * @param <T> the type of the items
+   */
+  public interface Subscriber<T> {
+
+    /**
+     * Called before any other method with the subscription to request
+     * items.
+     * @param subscription the subscription
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Called with the next item requested.
+     * @param item the item
+     */
+    void onNext(T item);
+
+    /**
+     * Called when the publisher fails; no other method is called after it.
+     * @param throwable the error
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Called when there are no more items; no other method is called after
+     * it.
+     */
+    void onComplete();
+  }
+
+  /**
+   * The link between a publisher and a subscriber.
+   */
+  public interface Subscription {
+
+    /**
+     * Request more items. The demand adds to the items requested and not yet
+     * received.
+     * @param n the number of items, positive
+     */
+    void request(long n);
+
+    /**
+     * Stop receiving items. Items may still arrive for a while.
+     */
+    void cancel();
+  }
+
+  /**
+   * A subscriber which publishes the results of processing its items.
+   * @param <T> the type of the items received
+   * @param <R> the type of the items published
+   */
+  public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+  }
+
+}
@@ -0,0 +1,402 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+import eus.ixa.ixa.pipe.seg.SentenceBoundaryDetector;
+import eus.ixa.ixa.pipe.seg.Span;
+
+/**
+ * Pipelined segmentation, tokenization and normalization of the text of a
+ * reader, so that reading and writing overlap with the work of the CPU. A
+ * reader thread reads the text in chunks of lines, a segmenter thread splits
+ * them into batches of sentences, a pool of workers tokenizes and normalizes
+ * the batches, and the calling thread hands the sentences over in the order
+ * of the text. Reading, segmenting and writing depend on the order of the
+ * text, so they have one thread each; the number of workers is configurable.
+ *
+ * Chunks and batches go through bounded queues, so memory is bounded by the
+ * queue size and the chunk size whatever the speed of each stage. Sentences
+ * and offsets are those of the {@link TokenizedSentenceIterator}, which are
+ * those of the {@link RuleBasedSegmenter} and {@link RuleBasedTokenizer} on
+ * the whole text.
+ */
+public class TokenizerPipeline {
+
+  /**
+   * Default number of characters read before segmenting, which is also the
+   * size of the batches of the workers.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+  /**
+   * Default capacity of the queues between stages.
+   */
+  public static final int DEFAULT_QUEUE_SIZE = 16;
+
+  private final Properties properties;
+  private final int workers;
+  private final int queueSize;
+  private final int chunkSize;
+  /**
+   * The tokenizer of each worker, as they are not thread safe.
+   */
+  private final ThreadLocal<RuleBasedTokenizer> tokenizers = new ThreadLocal<RuleBasedTokenizer>() {
+    @Override
+    protected RuleBasedTokenizer initialValue() {
+      return new RuleBasedTokenizer("", properties);
+    }
+  };
+
+  /**
+   * Receives the sentences in the order of the text.
+   */
+  public interface SentenceHandler {
+    /**
+     * Handle a sentence.
+     * @param sentence the tokenized sentence
+     * @throws IOException if the sentence cannot be written
+     */
+    void handle(TokenizedSentence sentence) throws IOException;
+  }
+
+  /**
+   * Text read by the reader thread, with line breaks already replaced as the
+   * RuleBasedSegmenter does.
+   */
+  private static class Chunk {
+    private final String text;
+    private final boolean last;
+    private final IOException error;
+
+    Chunk(final String text, final boolean last, final IOException error) {
+      this.text = text;
+      this.last = last;
+      this.error = error;
+    }
+  }
+
+  /**
+   * Consecutive sentences tokenized by a worker.
+   */
+  private class Batch implements Runnable {
+    /**
+     * The text containing the sentences, as used for the offsets.
+     */
+    private final String text;
+    /**
+     * Offset of the text in the document.
+     */
+    private final int textOffset;
+    private final String[] sentences;
+    private final int firstSentence;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final boolean last;
+    private List<TokenizedSentence> result;
+    private Throwable error;
+
+    Batch(final String text, final int textOffset, final String[] sentences,
+        final int firstSentence) {
+      this.text = text;
+      this.textOffset = textOffset;
+      this.sentences = sentences;
+      this.firstSentence = firstSentence;
+      this.last = false;
+    }
+
+    /**
+     * Construct the batch marking the end of the text.
+     * @param error the error that ended the text, or null
+     */
+    Batch(final Throwable error) {
+      this.text = null;
+      this.textOffset = 0;
+      this.sentences = null;
+      this.firstSentence = 0;
+      this.last = true;
+      this.error = error;
+      done.countDown();
+    }
+
+    public void run() {
+      try {
+        final RuleBasedTokenizer tokenizer = tokenizers.get();
+        final List<TokenizedSentence> tokenized = new ArrayList<TokenizedSentence>(
+            sentences.length);
+        int prevIndex = 0;
+        for (int i = 0; i < sentences.length; i++) {
+          final List<Token> tokens = new ArrayList<Token>();
+          prevIndex = tokenizer.tokenizeSentence(sentences[i], text,
+              prevIndex, tokens);
+          tokenizer.normalize(Collections.singletonList(tokens));
+          if (textOffset > 0) {
+            for (final Token token : tokens) {
+              token.setStartOffset(token.startOffset() + textOffset);
+            }
+          }
+          tokenized.add(new TokenizedSentence(firstSentence + i, tokens));
+        }
+        result = tokenized;
+      } catch (final RuntimeException e) {
+        error = e;
+      } catch (final Error e) {
+        error = e;
+        throw e;
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+
+  /**
+   * Construct a pipeline with the default queue and chunk sizes.
+   * 
+   * @param properties
+   *          the options, as for the RuleBasedSegmenter and the
+   *          RuleBasedTokenizer
+   * @param workers
+   *          the number of threads tokenizing and normalizing
+   */
+  public TokenizerPipeline(final Properties properties, final int workers) {
+    this(properties, workers, DEFAULT_QUEUE_SIZE, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Construct a pipeline.
+   * 
+   * @param properties
+   *          the options, as for the RuleBasedSegmenter and the
+   *          RuleBasedTokenizer
+   * @param workers
+   *          the number of threads tokenizing and normalizing
+   * @param queueSize
+   *          the chunks read and the batches segmented ahead of the writer
+   * @param chunkSize
+   *          the characters read before segmenting
+   */
+  public TokenizerPipeline(final Properties properties, final int workers,
+      final int queueSize, final int chunkSize) {
+    if (workers < 1 || queueSize < 1 || chunkSize < 1) {
+      throw new IllegalArgumentException(
+          "At least one worker, a queue of one element and a chunk of one character are needed");
+    }
+    this.properties = properties;
+    this.workers = workers;
+    this.queueSize = queueSize;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Segment, tokenize and normalize the text of a reader.
+   * 
+   * @param reader
+   *          the text, closed at the end
+   * @param handler
+   *          the handler of the sentences, called by this thread in the
+   *          order of the text
+   * @return the number of tokens, paragraph marks included
+   * @throws IOException
+   *           if the text cannot be read or the handler fails
+   */
+  public long tokenize(final Reader reader, final SentenceHandler handler)
+      throws IOException {
+    final BufferedReader breader = reader instanceof BufferedReader ? (BufferedReader) reader
+        : new BufferedReader(reader);
+    final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(
+        queueSize);
+    final BlockingQueue<Batch> batches = new ArrayBlockingQueue<Batch>(
+        queueSize);
+    final ExecutorService executor = Executors.newFixedThreadPool(workers,
+        new ThreadFactory() {
+          private final AtomicInteger noThreads = new AtomicInteger();
+
+          public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                "ixa-pipe-tok-worker-" + noThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    final Thread readerThread = new Thread(new Runnable() {
+      public void run() {
+        read(breader, chunks);
+      }
+    }, "ixa-pipe-tok-reader");
+    final Thread segmenterThread = new Thread(new Runnable() {
+      public void run() {
+        segment(chunks, batches, executor);
+      }
+    }, "ixa-pipe-tok-segmenter");
+    readerThread.setDaemon(true);
+    segmenterThread.setDaemon(true);
+    readerThread.start();
+    segmenterThread.start();
+    long noTokens = 0;
+    try {
+      while (true) {
+        final Batch batch = batches.take();
+        batch.done.await();
+        if (batch.error != null) {
+          if (batch.error instanceof IOException) {
+            throw (IOException) batch.error;
+          }
+          throw new IOException("Could not tokenize the text: "
+              + batch.error.getMessage(), batch.error);
+        }
+        if (batch.last) {
+          break;
+        }
+        for (final TokenizedSentence sentence : batch.result) {
+          noTokens += sentence.getTokens().size();
+          handler.handle(sentence);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while tokenizing", e);
+    } finally {
+      segmenterThread.interrupt();
+      readerThread.interrupt();
+      executor.shutdownNow();
+      breader.close();
+    }
+    return noTokens;
+  }
+
+  /**
+   * Read chunks of at least chunkSize characters, ending before a non empty
+   * line so that no run of empty lines is split, and hand them over up to
+   * their last space, as paragraph marks join the last word of a paragraph
+   * to the first one of the next, as the TokenizedSentenceIterator does.
+   */
+  private void read(final BufferedReader breader,
+      final BlockingQueue<Chunk> chunks) {
+    try {
+      try {
+        String line = breader.readLine();
+        String pending = "";
+        do {
+          final StringBuilder chunk = new StringBuilder();
+          while (line != null
+              && (chunk.length() < chunkSize || line.isEmpty())) {
+            chunk.append(line).append(RuleBasedSegmenter.LINE_BREAK);
+            line = breader.readLine();
+          }
+          final String text = pending
+              + RuleBasedSegmenter.buildText(chunk.toString());
+          final int end = line == null ? text.length()
+              : text.lastIndexOf(' ') + 1;
+          pending = text.substring(end);
+          chunks.put(new Chunk(text.substring(0, end), line == null, null));
+        } while (line != null);
+      } catch (final IOException e) {
+        chunks.put(new Chunk(null, true, e));
+      } catch (final RuntimeException e) {
+        chunks.put(new Chunk(null, true, new IOException(
+            "Could not read the text: " + e.getMessage(), e)));
+      }
+    } catch (final InterruptedException e) {
+      // the pipeline was stopped
+    }
+  }
+
+  /**
+   * Segment the chunks, keeping back the last sentence of each until the
+   * next one is read, and hand the complete sentences to the workers, in the
+   * order of the text to the writer. Each chunk is segmented again from the
+   * last restart offset of the detector before the sentence kept back, see
+   * {@link SentenceBoundaryDetector#getRestartOffset(int)}.
+   */
+  private void segment(final BlockingQueue<Chunk> chunks,
+      final BlockingQueue<Batch> batches, final ExecutorService executor) {
+    final SentenceBoundaryDetector detector = new SentenceBoundaryDetector(
+        new NonPeriodBreaker(properties), "yes".equalsIgnoreCase(properties
+            .getProperty("hardParagraph")));
+    try {
+      try {
+        final StringBuilder buffer = new StringBuilder();
+        int bufferOffset = 0;
+        // where segmentation starts again and the end of the sentences
+        // handed over, in the buffer
+        int restart = 0;
+        int lastEnd = 0;
+        int noSents = 0;
+        while (true) {
+          final Chunk chunk = chunks.take();
+          if (chunk.error != null) {
+            batches.put(new Batch(chunk.error));
+            return;
+          }
+          buffer.append(chunk.text);
+          final char[] text = new char[buffer.length() - restart];
+          buffer.getChars(restart, buffer.length(), text, 0);
+          final List<Span> spans = detector.detect(text);
+          final int complete = chunk.last ? spans.size() : spans.size() - 1;
+          final List<String> sentences = new ArrayList<String>();
+          int end = lastEnd;
+          for (int i = 0; i < complete; i++) {
+            // the sentences before the restart offset were handed over
+            if (spans.get(i).getStart() + restart >= lastEnd) {
+              sentences.add(spans.get(i).getCoveredText(text));
+              end = spans.get(i).getEnd() + restart;
+            }
+          }
+          if (!sentences.isEmpty()) {
+            final Batch batch = new Batch(buffer.substring(lastEnd),
+                bufferOffset + lastEnd,
+                sentences.toArray(new String[sentences.size()]), noSents + 1);
+            noSents += sentences.size();
+            batches.put(batch);
+            executor.execute(batch);
+            lastEnd = end;
+          }
+          if (!chunk.last && !spans.isEmpty()) {
+            final int keptBack = spans.get(spans.size() - 1).getStart();
+            restart += Math.max(0, detector.getRestartOffset(keptBack));
+          }
+          // discard the text which is neither segmented again nor tokenized
+          final int discard = Math.min(restart, lastEnd);
+          buffer.delete(0, discard);
+          bufferOffset += discard;
+          restart -= discard;
+          lastEnd -= discard;
+          if (chunk.last) {
+            batches.put(new Batch((Throwable) null));
+            return;
+          }
+        }
+      } catch (final RuntimeException e) {
+        batches.put(new Batch(e));
+      }
+    } catch (final InterruptedException e) {
+      // the pipeline was stopped
+    }
+  }
+
+}
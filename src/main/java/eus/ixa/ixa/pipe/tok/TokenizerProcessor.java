@@ -0,0 +1,243 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tokenization as a stage of a demand driven stream: it receives documents
+ * and publishes their tokenized sentences. A document is requested from the
+ * upstream publisher only when the subscriber has requested sentences and
+ * those of the previous documents have been sent, and sentences are segmented
+ * and tokenized lazily with a {@link TokenizedSentenceIterator}, so the stage
+ * keeps at most one document and one chunk of sentences whatever the speed of
+ * both ends.
+ *
+ * The work is done in the given executor, one task at a time. Sentence
+ * numbers start from 1 with every document. Cancelling the subscription
+ * cancels the upstream one; errors of the upstream publisher are sent after
+ * the sentences of the documents already received. Only one subscriber is
+ * accepted.
+ */
+public class TokenizerProcessor implements
+    TokenizerFlow.Processor<String, TokenizedSentence> {
+
+  private final Properties properties;
+  private final Executor executor;
+  private final AtomicReference<TokenizerFlow.Subscriber<? super TokenizedSentence>> downstream = new AtomicReference<TokenizerFlow.Subscriber<? super TokenizedSentence>>();
+  private final AtomicReference<TokenizerFlow.Subscription> upstream = new AtomicReference<TokenizerFlow.Subscription>();
+  private final Queue<String> documents = new ConcurrentLinkedQueue<String>();
+  /**
+   * Sentences requested and not yet sent.
+   */
+  private final AtomicLong demand = new AtomicLong();
+  /**
+   * Signals not yet seen by the task sending sentences.
+   */
+  private final AtomicInteger pendingSignals = new AtomicInteger();
+  private volatile boolean awaitingDocument;
+  private volatile boolean upstreamDone;
+  private volatile Throwable upstreamError;
+  private volatile Throwable subscriberError;
+  private volatile boolean cancelled;
+  /**
+   * The sentences of the current document, only used by the sending task.
+   */
+  private TokenizedSentenceIterator sentences;
+
+  private final Runnable sender = new Runnable() {
+    public void run() {
+      int signals = 1;
+      do {
+        send();
+        signals = pendingSignals.addAndGet(-signals);
+      } while (signals != 0);
+    }
+  };
+
+  /**
+   * Construct a tokenization stage.
+   * 
+   * @param properties
+   *          the options, as for the {@link TokenizedSentenceIterator}
+   * @param executor
+   *          the executor doing the tokenization and sending the signals
+   */
+  public TokenizerProcessor(final Properties properties,
+      final Executor executor) {
+    this.properties = properties;
+    this.executor = executor;
+  }
+
+  public void subscribe(
+      final TokenizerFlow.Subscriber<? super TokenizedSentence> subscriber) {
+    if (!downstream.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(new TokenizerFlow.Subscription() {
+        public void request(final long n) {
+        }
+
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException(
+          "The tokenizer processor has already a subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new TokenizerFlow.Subscription() {
+      public void request(final long n) {
+        if (n <= 0) {
+          subscriberError = new IllegalArgumentException(
+              "Non positive number of sentences requested: " + n);
+        } else {
+          addDemand(n);
+        }
+        signal();
+      }
+
+      public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+        signal();
+      }
+    });
+  }
+
+  public void onSubscribe(final TokenizerFlow.Subscription subscription) {
+    if (!upstream.compareAndSet(null, subscription) || cancelled) {
+      subscription.cancel();
+      return;
+    }
+    signal();
+  }
+
+  public void onNext(final String document) {
+    documents.add(document);
+    awaitingDocument = false;
+    signal();
+  }
+
+  public void onError(final Throwable throwable) {
+    upstreamError = throwable;
+    upstreamDone = true;
+    signal();
+  }
+
+  public void onComplete() {
+    upstreamDone = true;
+    signal();
+  }
+
+  private void addDemand(final long n) {
+    long current;
+    long updated;
+    do {
+      current = demand.get();
+      updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+    } while (!demand.compareAndSet(current, updated));
+  }
+
+  private void cancelUpstream() {
+    final TokenizerFlow.Subscription subscription = upstream.get();
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  /**
+   * Make the sending task look at the state, starting it unless it is
+   * running.
+   */
+  private void signal() {
+    if (pendingSignals.getAndIncrement() == 0) {
+      executor.execute(sender);
+    }
+  }
+
+  /**
+   * Send the sentences requested, asking for a new document when the current
+   * one is finished, and the final signal once there are no more.
+   */
+  private void send() {
+    final TokenizerFlow.Subscriber<? super TokenizedSentence> subscriber = downstream
+        .get();
+    try {
+      while (!cancelled && subscriber != null) {
+        if (subscriberError != null) {
+          cancelled = true;
+          cancelUpstream();
+          subscriber.onError(subscriberError);
+        } else if (sentences != null && sentences.hasNext()) {
+          if (demand.get() == 0) {
+            return;
+          }
+          final TokenizedSentence sentence = sentences.next();
+          if (demand.get() != Long.MAX_VALUE) {
+            demand.decrementAndGet();
+          }
+          subscriber.onNext(sentence);
+        } else if (!documents.isEmpty()) {
+          closeSentences();
+          sentences = new TokenizedSentenceIterator(new StringReader(
+              documents.poll()), properties);
+        } else if (upstreamDone) {
+          if (!documents.isEmpty()) {
+            // received just before the end
+            continue;
+          }
+          cancelled = true;
+          if (upstreamError != null) {
+            subscriber.onError(upstreamError);
+          } else {
+            subscriber.onComplete();
+          }
+        } else {
+          final TokenizerFlow.Subscription subscription = upstream.get();
+          if (demand.get() > 0 && !awaitingDocument && subscription != null) {
+            awaitingDocument = true;
+            subscription.request(1);
+          }
+          return;
+        }
+      }
+    } catch (final RuntimeException e) {
+      cancelled = true;
+      cancelUpstream();
+      subscriber.onError(e);
+    }
+    // cancelled or finished
+    closeSentences();
+    documents.clear();
+  }
+
+  private void closeSentences() {
+    if (sentences != null) {
+      try {
+        sentences.close();
+      } catch (final IOException e) {
+        // reading from a string
+      }
+      sentences = null;
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lang;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * A {@link LanguagePackSnapshot} block is only used for the pack class it was
+ * generated from.
+ */
+public class LanguagePackSnapshotTest {
+
+  /**
+   * A third party pack replacing the bundled English one.
+   */
+  public static class CustomEnglishLanguagePack extends EnglishLanguagePack {
+
+    @Override
+    public InputStream getNonBreakerInputStream() {
+      return new ByteArrayInputStream("# Custom non breakers\n\nFoo\n"
+          .getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static LanguagePackSnapshot snapshotOf(final LanguagePack pack)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    LanguagePackSnapshot.write(
+        Collections.singletonList(new CompiledLanguagePack(pack)), bytes);
+    return LanguagePackSnapshot.read(new ByteArrayInputStream(bytes
+        .toByteArray()));
+  }
+
+  @Test
+  public void testSamePackClass() throws IOException {
+    final CompiledLanguagePack compiled = snapshotOf(new EnglishLanguagePack())
+        .compile(new EnglishLanguagePack());
+    assertNotNull(compiled);
+    assertTrue(compiled.isNonBreaker("Mr"));
+  }
+
+  @Test
+  public void testOtherPackClass() throws IOException {
+    final LanguagePackSnapshot snapshot = snapshotOf(new EnglishLanguagePack());
+    assertNull(snapshot.compile(new CustomEnglishLanguagePack()));
+    final CompiledLanguagePack compiled = new CompiledLanguagePack(
+        new CustomEnglishLanguagePack());
+    assertTrue(compiled.isNonBreaker("Foo"));
+    assertFalse(compiled.isNonBreaker("Mr"));
+  }
+
+}
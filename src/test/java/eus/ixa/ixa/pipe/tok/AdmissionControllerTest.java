@@ -0,0 +1,68 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Reservations of the {@link AdmissionController}.
+ */
+public class AdmissionControllerTest {
+
+  @Test
+  public void testReservationGrowsUpToTheLimit() throws Exception {
+    final AdmissionController admission = new AdmissionController(2, 0,
+        100000, 0);
+    final AdmissionController.Reservation reservation = admission.reserve(0);
+    reservation.ensure(1);
+    assertTrue(reservation.getBytes() >= 1);
+    reservation.ensure(100000);
+    assertEquals(100000, admission.getBytesInFlight());
+    try {
+      reservation.ensure(100001);
+      fail("Reservation larger than the limit");
+    } catch (final AdmissionController.BusyException e) {
+      assertTrue(e.isTooLarge());
+    }
+    // refused reservations are released at once
+    assertEquals(0, admission.getBytesInFlight());
+    assertEquals(0, admission.getActiveRequests());
+    reservation.release();
+    assertEquals(0, admission.getActiveRequests());
+  }
+
+  @Test
+  public void testReservationDoesNotWaitForBytes() throws Exception {
+    final AdmissionController admission = new AdmissionController(2, 0, 1000,
+        0);
+    final AdmissionController.Reservation first = admission.reserve(800);
+    final AdmissionController.Reservation second = admission.reserve(0);
+    try {
+      second.ensure(300);
+      fail("Reservation beyond the bytes in flight");
+    } catch (final AdmissionController.BusyException e) {
+      assertFalse(e.isTooLarge());
+    }
+    first.release();
+    assertEquals(0, admission.getBytesInFlight());
+    assertEquals(0, admission.getActiveRequests());
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.lang.CompiledLanguagePack;
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+
+/**
+ * Allocation budgets of the hot path: segmentation, tokenization and
+ * normalization are run separately on a fixed synthetic corpus of every
+ * language and the bytes allocated per token by each stage, as measured by
+ * {@code ThreadMXBean.getThreadAllocatedBytes}, are checked against those of
+ * {@code allocation-budget.properties}.
+ * 
+ * Every stage is warmed up before measuring so that the figures are those of
+ * compiled code, and the lowest of several measured passes is taken. The
+ * tests are skipped if the JVM does not measure allocations.
+ */
+public class AllocationBudgetTest {
+
+  private static final String BUDGETS = "/allocation-budget.properties";
+  private static final int DOCUMENTS = 2;
+  private static final int DOCUMENT_SIZE = 8192;
+  private static final long SEED = 20150414L;
+  private static final int WARMUP_PASSES = 10;
+  private static final int MEASURED_PASSES = 3;
+
+  private static com.sun.management.ThreadMXBean allocations;
+  private static Properties budgets;
+  private static List<Document> corpus;
+  private static long noTokens;
+
+  /**
+   * A document of the corpus with its sentences and tokens.
+   */
+  private static class Document {
+    private final String text;
+    private final Properties properties;
+    private final CompiledLanguagePack pack;
+    private final RuleBasedTokenizer tokenizer;
+    private final String offsetText;
+    private String[] sentences;
+    private List<List<Token>> tokens;
+
+    Document(final String lang, final String text) {
+      this.text = text;
+      properties = LanguageFixturesTest.getProperties(lang);
+      pack = LanguagePacks.get(lang);
+      tokenizer = new RuleBasedTokenizer(text, properties);
+      offsetText = RuleBasedSegmenter.buildText(text);
+    }
+  }
+
+  /**
+   * A stage of the hot path run over the whole corpus.
+   */
+  private abstract static class Stage {
+    /**
+     * Prepare the input of the next pass, not measured.
+     */
+    void prepare() {
+    }
+
+    /**
+     * Run the stage over the corpus.
+     * 
+     * @return a value depending on the output, so that it is not optimized
+     *         away
+     */
+    abstract long run();
+  }
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    allocations = (com.sun.management.ThreadMXBean) threads;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+    allocations.setThreadAllocatedMemoryEnabled(true);
+
+    budgets = new Properties();
+    final InputStream in = AllocationBudgetTest.class
+        .getResourceAsStream(BUDGETS);
+    assertNotNull("Missing " + BUDGETS, in);
+    try {
+      budgets.load(in);
+    } finally {
+      in.close();
+    }
+
+    corpus = new ArrayList<Document>();
+    noTokens = 0;
+    for (final String lang : LanguagePacks.getLanguages()) {
+      for (final String text : TokenizerBenchmark.generateCorpus(lang,
+          DOCUMENTS, DOCUMENT_SIZE, SEED)) {
+        final Document document = new Document(lang, text);
+        document.sentences = new RuleBasedSegmenter(text,
+            document.properties).segmentSentence();
+        document.tokens = tokenize(document);
+        RuleBasedTokenizer.normalizeTokens(document.tokens, document.pack);
+        for (final List<Token> sentence : document.tokens) {
+          noTokens += sentence.size();
+        }
+        corpus.add(document);
+      }
+    }
+  }
+
+  private static List<List<Token>> tokenize(final Document document) {
+    final List<List<Token>> tokens = new ArrayList<List<Token>>(
+        document.sentences.length);
+    int prevIndex = 0;
+    for (final String sentence : document.sentences) {
+      final List<Token> sentenceTokens = new ArrayList<Token>();
+      prevIndex = document.tokenizer.tokenizeSentence(sentence,
+          document.offsetText, prevIndex, sentenceTokens);
+      tokens.add(sentenceTokens);
+    }
+    return tokens;
+  }
+
+  /**
+   * Measure the bytes allocated per token by a stage.
+   * 
+   * @param stage
+   *          the stage
+   * @return the lowest bytes per token of the measured passes
+   */
+  private static double measure(final Stage stage) {
+    final long threadId = Thread.currentThread().getId();
+    long sink = 0;
+    for (int i = 0; i < WARMUP_PASSES; i++) {
+      stage.prepare();
+      sink += stage.run();
+    }
+    long lowest = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_PASSES; i++) {
+      stage.prepare();
+      final long start = allocations.getThreadAllocatedBytes(threadId);
+      sink += stage.run();
+      final long allocated = allocations.getThreadAllocatedBytes(threadId)
+          - start;
+      lowest = Math.min(lowest, allocated);
+    }
+    assertTrue(sink > 0);
+    return (double) lowest / noTokens;
+  }
+
+  private static void checkBudget(final String name, final Stage stage) {
+    final double bytesPerToken = measure(stage);
+    final double budget = Double.parseDouble(budgets.getProperty(name));
+    System.err.printf("%s allocates %.1f bytes per token, budget %.1f%n",
+        name, bytesPerToken, budget);
+    assertTrue(String.format(
+        "%s allocates %.1f bytes per token, over its budget of %.1f", name,
+        bytesPerToken, budget), bytesPerToken <= budget);
+  }
+
+  @Test
+  public void testSegmenter() {
+    checkBudget("segmenter", new Stage() {
+      long run() {
+        long sentences = 0;
+        for (final Document document : corpus) {
+          sentences += new RuleBasedSegmenter(document.text,
+              document.properties).segmentSentence().length;
+        }
+        return sentences;
+      }
+    });
+  }
+
+  @Test
+  public void testTokenizer() {
+    checkBudget("tokenizer", new Stage() {
+      long run() {
+        long sentences = 0;
+        for (final Document document : corpus) {
+          sentences += tokenize(document).size();
+        }
+        return sentences;
+      }
+    });
+  }
+
+  @Test
+  public void testNormalizer() {
+    final List<List<List<Token>>> copies = new ArrayList<List<List<Token>>>();
+    checkBudget("normalizer", new Stage() {
+      void prepare() {
+        copies.clear();
+        for (final Document document : corpus) {
+          final List<List<Token>> copy = new ArrayList<List<Token>>(
+              document.tokens.size());
+          for (final List<Token> sentence : document.tokens) {
+            final List<Token> sentenceCopy = new ArrayList<Token>(
+                sentence.size());
+            for (final Token token : sentence) {
+              sentenceCopy.add(new Token(token.getTokenValue(), token
+                  .startOffset(), token.tokenLength()));
+            }
+            copy.add(sentenceCopy);
+          }
+          copies.add(copy);
+        }
+      }
+
+      long run() {
+        long sentences = 0;
+        for (int i = 0; i < corpus.size(); i++) {
+          RuleBasedTokenizer.normalizeTokens(copies.get(i),
+              corpus.get(i).pack);
+          sentences += copies.get(i).size();
+        }
+        return sentences;
+      }
+    });
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Round trips through the {@link CompressedStreams}.
+ */
+public class CompressedStreamsTest {
+
+  /**
+   * Text larger than several blocks.
+   */
+  private static byte[] getText() {
+    final Random random = new Random(20150414L);
+    final byte[] text = new byte[5 * CompressedStreams.BLOCK_SIZE + 123];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = (byte) ('a' + random.nextInt(4));
+    }
+    return text;
+  }
+
+  private static byte[] gzip(final byte[] bytes) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(bytes);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] read(final InputStream in) throws IOException {
+    try {
+      return ByteStreams.toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testPlain() throws IOException {
+    final byte[] text = getText();
+    assertArrayEquals(text, read(CompressedStreams
+        .decompress(new ByteArrayInputStream(text))));
+    assertEquals(0, read(CompressedStreams.decompress(new ByteArrayInputStream(
+        new byte[0]))).length);
+  }
+
+  @Test
+  public void testGzipRoundTrip() throws IOException {
+    final byte[] text = getText();
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    final OutputStream out = CompressedStreams.compress(compressed,
+        CompressedStreams.Codec.GZIP);
+    out.write(text, 0, 10);
+    out.write(text[10]);
+    out.write(text, 11, text.length - 11);
+    out.close();
+    assertArrayEquals(text, read(CompressedStreams
+        .decompress(new ByteArrayInputStream(compressed.toByteArray()))));
+  }
+
+  @Test
+  public void testGzipMembers() throws IOException {
+    final byte[] text = getText();
+    final ByteArrayOutputStream members = new ByteArrayOutputStream();
+    members.write(gzip(text));
+    members.write(gzip(text));
+    final byte[] expected = new byte[2 * text.length];
+    System.arraycopy(text, 0, expected, 0, text.length);
+    System.arraycopy(text, 0, expected, text.length, text.length);
+    assertArrayEquals(expected, read(CompressedStreams
+        .decompress(new ByteArrayInputStream(members.toByteArray()))));
+  }
+
+  @Test(timeout = 10000)
+  public void testFailingOutput() throws IOException {
+    // incompressible, and more blocks than the queue holds
+    final byte[] bytes = new byte[2 * CompressedStreams.QUEUE_SIZE
+        * CompressedStreams.BLOCK_SIZE];
+    new Random(20150414L).nextBytes(bytes);
+    final OutputStream out = CompressedStreams.compress(new OutputStream() {
+      private int written;
+
+      @Override
+      public void write(final int b) {
+        // the header is written
+        if (++written > 10) {
+          throw new IllegalStateException("Broken output");
+        }
+      }
+    }, CompressedStreams.Codec.GZIP);
+    try {
+      out.write(bytes);
+      out.close();
+      fail("Failing output written");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCorruptGzip() throws IOException {
+    final byte[] compressed = gzip(getText());
+    final byte[] truncated = new byte[compressed.length / 2];
+    System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+    try {
+      read(CompressedStreams.decompress(new ByteArrayInputStream(truncated)));
+      fail("Truncated gzip input read");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUnsupported() throws IOException {
+    final byte[] zstd = { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0, 0 };
+    try {
+      CompressedStreams.decompress(new ByteArrayInputStream(zstd));
+      fail("zstd input accepted");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBzip2Header() throws IOException {
+    final byte[] text = "BZh is how bzip2 files start.\n".getBytes("UTF-8");
+    assertArrayEquals(text, read(CompressedStreams
+        .decompress(new ByteArrayInputStream(text))));
+    final byte[] bzip2 = { 'B', 'Z', 'h', '9', 0x31, 0x41, 0x59, 0x26, 0x53,
+        0x59, 0 };
+    try {
+      CompressedStreams.decompress(new ByteArrayInputStream(bzip2));
+      fail("bzip2 input accepted");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCodecForFileName() {
+    assertEquals(CompressedStreams.Codec.GZIP,
+        CompressedStreams.Codec.forFileName("corpus.txt.gz"));
+    assertEquals(CompressedStreams.Codec.NONE,
+        CompressedStreams.Codec.forFileName("corpus.txt"));
+  }
+
+}
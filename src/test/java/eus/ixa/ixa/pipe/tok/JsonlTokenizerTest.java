@@ -0,0 +1,115 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
+/**
+ * The {@link JsonlTokenizer} gives the tokens and offsets of the fixtures, in
+ * the order of the input.
+ */
+public class JsonlTokenizerTest {
+
+  /**
+   * Get the CoNLL lines of the tokens of a JSON line, without paragraph
+   * marks, as in the fixtures.
+   */
+  private static String toCoNLL(final Map<?, ?> document) {
+    final StringBuilder sb = new StringBuilder();
+    for (final Object sentence : (List<?>) document.get("sentences")) {
+      for (final Object token : (List<?>) sentence) {
+        final Map<?, ?> fields = (Map<?, ?>) token;
+        sb.append(fields.get("token")).append(' ')
+            .append(fields.get("offset")).append(' ')
+            .append(fields.get("length")).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String withoutParagraphsAndBlankLines(final String conll) {
+    final StringBuilder sb = new StringBuilder();
+    for (final String line : conll.split("\n")) {
+      if (!line.isEmpty() && !line.startsWith("*<P>* ")) {
+        sb.append(line).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testFixtures() throws IOException, ParseException {
+    final List<String> languages = new ArrayList<String>(
+        LanguagePacks.getLanguages());
+    final StringBuilder input = new StringBuilder();
+    for (final String lang : languages) {
+      final StringBuilder line = new StringBuilder("{\"id\":");
+      Json.appendString(line, "doc-" + lang).append(",\"lang\":");
+      Json.appendString(line, lang).append(",\"text\":");
+      Json.appendString(line,
+          LanguageFixturesTest.readFixture(lang + ".txt")).append("}\n\n");
+      input.append(line);
+    }
+    for (final int workers : new int[] { 0, 3 }) {
+      final StringWriter output = new StringWriter();
+      final long noDocs = new JsonlTokenizer(
+          LanguageFixturesTest.getProperties("en"), workers, 1).tokenize(
+          new BufferedReader(new StringReader(input.toString())), output);
+      assertEquals(languages.size(), noDocs);
+      final String[] lines = output.toString().split("\n");
+      assertEquals(languages.size(), lines.length);
+      for (int i = 0; i < lines.length; i++) {
+        final String lang = languages.get(i);
+        final Map<?, ?> document = (Map<?, ?>) Json.parse(lines[i]);
+        assertEquals("doc-" + lang, document.get("id"));
+        assertEquals(lang, document.get("lang"));
+        assertEquals(lang + " with " + workers + " workers",
+            withoutParagraphsAndBlankLines(LanguageFixturesTest
+                .readFixture(lang + ".conll")), toCoNLL(document));
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidLine() throws IOException {
+    final String input = "{\"text\":\"Hello.\"}\n{\"id\":2}\n";
+    for (final int workers : new int[] { 0, 2 }) {
+      try {
+        new JsonlTokenizer(LanguageFixturesTest.getProperties("en"), workers,
+            1).tokenize(new BufferedReader(new StringReader(input)),
+            new StringWriter());
+        fail("Document without text accepted");
+      } catch (final IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2"));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
+/**
+ * Correctness fixtures: for every language the text in
+ * {@code fixtures/<lang>.txt} is segmented, tokenized and normalized and the
+ * output, in CoNLL format with offsets, compared with
+ * {@code fixtures/<lang>.conll}.
+ * 
+ * After an intended change of the output the expected files can be written
+ * again by running the tests with {@code -DupdateFixtures=<dir>}, usually
+ * {@code src/test/resources/fixtures}, and reviewing the differences.
+ */
+@RunWith(Parameterized.class)
+public class LanguageFixturesTest {
+
+  private static final String FIXTURES = "/fixtures/";
+
+  private final String lang;
+
+  public LanguageFixturesTest(final String lang) {
+    this.lang = lang;
+  }
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> languages() {
+    final List<Object[]> languages = new ArrayList<Object[]>();
+    for (final String lang : LanguagePacks.getLanguages()) {
+      languages.add(new Object[] { lang });
+    }
+    return languages;
+  }
+
+  /**
+   * Get the properties used by the tok command with its default options.
+   * 
+   * @param lang
+   *          the language
+   * @return the properties
+   */
+  static Properties getProperties(final String lang) {
+    final Properties properties = new Properties();
+    properties.setProperty("language", lang);
+    properties.setProperty("normalize", "default");
+    properties.setProperty("untokenizable", "no");
+    properties.setProperty("hardParagraph", "no");
+    return properties;
+  }
+
+  /**
+   * Read a fixture from the classpath.
+   * 
+   * @param name
+   *          the name of the fixture
+   * @return its contents
+   * @throws IOException
+   *           if the fixture cannot be read
+   */
+  static String readFixture(final String name) throws IOException {
+    final InputStream in = LanguageFixturesTest.class
+        .getResourceAsStream(FIXTURES + name);
+    assertNotNull("Missing fixture " + name, in);
+    try {
+      return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testCoNLLOffsets() throws IOException {
+    final String text = readFixture(lang + ".txt");
+    final Annotate annotator = new Annotate(new BufferedReader(
+        new StringReader(text)), getProperties(lang));
+    final String actual = annotator.tokenizeToCoNLLOffsets();
+    final String updateDir = System.getProperty("updateFixtures");
+    if (updateDir != null && !updateDir.isEmpty()) {
+      Files.write(actual, new File(updateDir, lang + ".conll"),
+          Charsets.UTF_8);
+    }
+    assertEquals("Tokenization of fixtures/" + lang + ".txt changed",
+        readFixture(lang + ".conll"), actual);
+  }
+
+}
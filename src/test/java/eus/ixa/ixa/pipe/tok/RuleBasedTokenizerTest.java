@@ -0,0 +1,112 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.seg.RuleBasedSegmenter;
+
+/**
+ * Regression cases of the {@link RuleBasedTokenizer} rules.
+ */
+public class RuleBasedTokenizerTest {
+
+  /**
+   * Tokenize a text, one line per sentence with the token values separated
+   * by spaces.
+   */
+  private static String tokenize(final String lang, final String input)
+      throws IOException {
+    return tokenize(LanguageFixturesTest.getProperties(lang), input);
+  }
+
+  private static String tokenize(final Properties properties,
+      final String input) throws IOException {
+    final String text = StringUtils.readText(new BufferedReader(
+        new StringReader(input)));
+    final RuleBasedSegmenter segmenter = new RuleBasedSegmenter(text,
+        properties);
+    final RuleBasedTokenizer tokenizer = new RuleBasedTokenizer(text,
+        properties);
+    final StringBuilder sb = new StringBuilder();
+    for (final List<Token> sentence : tokenizer.tokenize(segmenter
+        .segmentSentence())) {
+      for (int i = 0; i < sentence.size(); i++) {
+        sb.append(i == 0 ? "" : " ").append(sentence.get(i).getTokenValue());
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testDottedAbbreviationsAreNotDomains() throws IOException {
+    assertEquals("The code is ca.no. and more .\n",
+        tokenize("en", "The code is ca.no. and more.\n"));
+    assertEquals("See e.g.ca. for that .\n",
+        tokenize("en", "See e.g.ca. for that.\n"));
+    assertEquals("The A.no. is here .\n",
+        tokenize("en", "The A.no. is here.\n"));
+    assertEquals("Those Nos.no. are fine .\n",
+        tokenize("en", "Those Nos.no. are fine.\n"));
+    assertEquals("See pp. p.ca. and so on .\n",
+        tokenize("en", "See pp. p.ca. and so on.\n"));
+  }
+
+  @Test
+  public void testLinks() throws IOException {
+    assertEquals("Visit http://www.ixa.eus/foo?a=1&b=2 .\nNow .\n",
+        tokenize("en", "Visit http://www.ixa.eus/foo?a=1&b=2. Now.\n"));
+    assertEquals("Mail john@x.eus , please .\n",
+        tokenize("en", "Mail john@x.eus, please.\n"));
+    assertEquals("Go to www.google.com .\nThen .\n",
+        tokenize("en", "Go to www.google.com. Then.\n"));
+  }
+
+  @Test
+  public void testFallbackKeepsParagraphMarks() throws IOException {
+    final String input = "The letter was sent by Mr.\n\n\n\nsmith.\nThey went home.\n\n";
+    final Properties properties = LanguageFixturesTest.getProperties("en");
+    properties.setProperty("sentenceWorkBudget", "0");
+    assertEquals("The letter was sent by Mr. smith .\nThey went home . \u00B6\u00B6\n",
+        tokenize(properties, input));
+    // every sentence exceeds the budget
+    properties.setProperty("sentenceWorkBudget", "1");
+    assertEquals("The letter was sent by Mr . smith .\nThey went home . \u00B6\u00B6\n",
+        tokenize(properties, input));
+  }
+
+  @Test
+  public void testRulesSeeAroundMultidots() throws IOException {
+    assertEquals("Wait ... ' really ? '\n",
+        tokenize("en", "Wait...'really?'\n"));
+    assertEquals("In the 1990 ... ' s it was so .\n",
+        tokenize("en", "In the 1990...'s it was so.\n"));
+    assertEquals("a- ... b and x , ... y\n",
+        tokenize("en", "a-...b and x,...y\n"));
+    assertEquals("He said ...\n", tokenize("en", "He said...\n"));
+    assertEquals("Go to http://x.com/a...b now .\n",
+        tokenize("en", "Go to http://x.com/a...b now.\n"));
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.jdom2.JDOMException;
+import org.junit.Test;
+
+/**
+ * The {@link ServerWarmup} stops at its limits, follows the options of the
+ * server and leaves the rule profile as it was.
+ */
+public class ServerWarmupTest {
+
+  /**
+   * The options of a server, as set by the CLI.
+   */
+  private static Properties getServerProperties(final String lang,
+      final String outputFormat) {
+    final Properties properties = LanguageFixturesTest.getProperties(lang);
+    properties.setProperty("outputFormat", outputFormat);
+    properties.setProperty("kafversion", "v1.naf");
+    properties.setProperty("offsets", "false");
+    properties.setProperty("inputkaf", "false");
+    properties.setProperty("notok", "false");
+    properties.setProperty("splice", "false");
+    return properties;
+  }
+
+  @Test
+  public void testLimits() throws IOException, JDOMException {
+    final ServerWarmup.Result result = new ServerWarmup(
+        getServerProperties("en", "conll"), 3, 30).run();
+    assertTrue(result.getIterations() >= 1);
+    assertTrue(result.getIterations() <= 3);
+    assertTrue(result.getFirstCharsPerSecond() > 0);
+    assertTrue(result.getLastCharsPerSecond() > 0);
+  }
+
+  @Test
+  public void testDisabled() {
+    final Properties properties = getServerProperties("en", "conll");
+    assertTrue(new ServerWarmup(properties).isEnabled());
+    properties.setProperty("warmupIterations", "0");
+    assertFalse(new ServerWarmup(properties).isEnabled());
+    properties.setProperty("warmupIterations", "5");
+    properties.setProperty("warmupSeconds", "0");
+    assertFalse(new ServerWarmup(properties).isEnabled());
+  }
+
+  @Test
+  public void testNafInput() throws IOException, JDOMException {
+    final Properties properties = getServerProperties("es", "naf");
+    properties.setProperty("inputkaf", "true");
+    assertEquals(1, new ServerWarmup(properties, 1, 30).run().getIterations());
+  }
+
+  @Test
+  public void testProfileUntouched() throws IOException, JDOMException {
+    final boolean enabled = RuleProfiler.isEnabled();
+    RuleProfiler.setEnabled(true);
+    try {
+      RuleProfiler.reset();
+      final String before = RuleProfiler.getReport();
+      new ServerWarmup(getServerProperties("en", "oneline"), 1, 30).run();
+      assertTrue(RuleProfiler.isEnabled());
+      assertEquals(before, RuleProfiler.getReport());
+    } finally {
+      RuleProfiler.reset();
+      RuleProfiler.setEnabled(enabled);
+    }
+  }
+
+}
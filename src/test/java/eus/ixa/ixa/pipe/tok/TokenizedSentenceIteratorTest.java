@@ -0,0 +1,92 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
+/**
+ * The {@link TokenizedSentenceIterator} gives the sentences and offsets of
+ * the whole text tokenization, whatever the chunk size.
+ */
+public class TokenizedSentenceIteratorTest {
+
+  /**
+   * Hard wrapped paragraphs separated by runs of empty lines, with
+   * abbreviations and links next to the paragraph breaks.
+   */
+  static final String WRAPPED_TEXT = "The letter was sent by Mr. \n\n\n\n"
+      + "Smith and his wife to the office.\nThey answered soon.\n"
+      + "It was sent to Dr. Smith\nof the U.S.A. office, who\nanswered:\n\n"
+      + "\"Yes.\" Then\nhe left.\n\n\nWhy? Nobody\nknows. See www.ixa.eus\n\n"
+      + "\n\n\nfor more. No.\n\n12 is the number, ca.\n\n\n\nixa.eus\n\n\n\n"
+      + ":12 and so on.\n\n";
+
+  private static final int[] CHUNK_SIZES = { 1, 7, 64,
+      TokenizedSentenceIterator.DEFAULT_CHUNK_SIZE };
+
+  private static String tokenize(final String text,
+      final Properties properties, final int chunkSize) throws IOException {
+    final StringWriter writer = new StringWriter();
+    final TokenizerPipeline.SentenceHandler handler = Annotate.toCoNLL(
+        writer, true);
+    final TokenizedSentenceIterator sentences = new TokenizedSentenceIterator(
+        new StringReader(text), properties, chunkSize);
+    while (sentences.hasNext()) {
+      handler.handle(sentences.next());
+    }
+    sentences.close();
+    return writer.toString();
+  }
+
+  @Test
+  public void testFixtures() throws IOException {
+    for (final String lang : LanguagePacks.getLanguages()) {
+      final String text = LanguageFixturesTest.readFixture(lang + ".txt");
+      final Properties properties = LanguageFixturesTest.getProperties(lang);
+      for (final int chunkSize : CHUNK_SIZES) {
+        assertEquals(lang + " with chunks of " + chunkSize,
+            LanguageFixturesTest.readFixture(lang + ".conll"),
+            tokenize(text, properties, chunkSize));
+      }
+    }
+  }
+
+  @Test
+  public void testWrappedParagraphs() throws IOException {
+    for (final String hardParagraph : new String[] { "no", "yes" }) {
+      final Properties properties = LanguageFixturesTest.getProperties("en");
+      properties.setProperty("hardParagraph", hardParagraph);
+      final String expected = new Annotate(new BufferedReader(
+          new StringReader(WRAPPED_TEXT)), properties)
+          .tokenizeToCoNLLOffsets();
+      for (final int chunkSize : CHUNK_SIZES) {
+        assertEquals("hardParagraph " + hardParagraph + " with chunks of "
+            + chunkSize, expected, tokenize(WRAPPED_TEXT, properties,
+            chunkSize));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.tok;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.lang.LanguagePacks;
+
+/**
+ * The {@link TokenizerPipeline} writes what the whole text tokenization does,
+ * whatever the chunk size and number of workers.
+ */
+public class TokenizerPipelineTest {
+
+  private static final int[] CHUNK_SIZES = { 64, 1000,
+      TokenizerPipeline.DEFAULT_CHUNK_SIZE };
+
+  @Test
+  public void testCoNLLOffsets() throws IOException {
+    for (final String lang : LanguagePacks.getLanguages()) {
+      final String text = LanguageFixturesTest.readFixture(lang + ".txt");
+      final Properties properties = LanguageFixturesTest.getProperties(lang);
+      for (final int chunkSize : CHUNK_SIZES) {
+        final StringWriter writer = new StringWriter();
+        new TokenizerPipeline(properties, 3, 2, chunkSize).tokenize(
+            new StringReader(text), Annotate.toCoNLL(writer, true));
+        assertEquals(lang + " with chunks of " + chunkSize,
+            LanguageFixturesTest.readFixture(lang + ".conll"),
+            writer.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testText() throws IOException {
+    for (final String lang : LanguagePacks.getLanguages()) {
+      final String text = LanguageFixturesTest.readFixture(lang + ".txt");
+      final Properties properties = LanguageFixturesTest.getProperties(lang);
+      final String expected = new Annotate(new BufferedReader(
+          new StringReader(text)), properties).tokenizeToText();
+      final StringWriter writer = new StringWriter();
+      new TokenizerPipeline(properties, 2, 1, 64).tokenize(new StringReader(
+          text), Annotate.toText(writer));
+      assertEquals(lang, expected, writer.toString());
+    }
+  }
+
+  @Test
+  public void testWrappedParagraphs() throws IOException {
+    final String text = TokenizedSentenceIteratorTest.WRAPPED_TEXT;
+    for (final String hardParagraph : new String[] { "no", "yes" }) {
+      final Properties properties = LanguageFixturesTest.getProperties("en");
+      properties.setProperty("hardParagraph", hardParagraph);
+      final String expected = new Annotate(new BufferedReader(
+          new StringReader(text)), properties).tokenizeToCoNLLOffsets();
+      for (final int chunkSize : new int[] { 1, 7, 64 }) {
+        final StringWriter writer = new StringWriter();
+        new TokenizerPipeline(properties, 3, 2, chunkSize).tokenize(
+            new StringReader(text), Annotate.toCoNLL(writer, true));
+        assertEquals("hardParagraph " + hardParagraph + " with chunks of "
+            + chunkSize, expected, writer.toString());
+      }
+    }
+  }
+
+}